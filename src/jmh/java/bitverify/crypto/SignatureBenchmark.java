@@ -0,0 +1,67 @@
+package bitverify.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares signing and verifying an entry hash with the RSA-4096 keys entries have always used
+ * against the ECDSA (secp256r1) keys. Run with: gradle jmh -Pjmh.args='SignatureBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SignatureBenchmark {
+	private AsymmetricCipherKeyPair rsaKeyPair;
+	private AsymmetricCipherKeyPair ecKeyPair;
+	private byte[] hash;
+	private byte[] rsaSignature;
+	private byte[] ecSignature;
+
+	@Setup
+	public void setup() throws Exception {
+		rsaKeyPair = Asymmetric.generateNewKeyPair();
+		ecKeyPair = Asymmetric.generateNewECKeyPair();
+		hash = Hash.hashString("a document to sign");
+		rsaSignature = Asymmetric.signHash(hash, rsaKeyPair.getPrivate());
+		ecSignature = Asymmetric.signHash(hash, ecKeyPair.getPrivate());
+	}
+
+	@Benchmark
+	public byte[] signRSA() throws Exception {
+		return Asymmetric.signHash(hash, rsaKeyPair.getPrivate());
+	}
+
+	@Benchmark
+	public byte[] signEC() throws Exception {
+		return Asymmetric.signHash(hash, ecKeyPair.getPrivate());
+	}
+
+	@Benchmark
+	public boolean verifyRSA() {
+		return Asymmetric.verifyHashSignature(hash, rsaSignature, rsaKeyPair.getPublic());
+	}
+
+	@Benchmark
+	public boolean verifyEC() {
+		return Asymmetric.verifyHashSignature(hash, ecSignature, ecKeyPair.getPublic());
+	}
+
+	@Benchmark
+	public AsymmetricCipherKeyPair generateEC() {
+		return Asymmetric.generateNewECKeyPair();
+	}
+}
@@ -1,9 +1,10 @@
 package bitverify;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -30,6 +31,7 @@ import bitverify.network.NewEntryEvent;
 import bitverify.persistence.DataStore;
 import bitverify.persistence.DatabaseIterator;
 import bitverify.persistence.DatabaseStore;
+import bitverify.verification.BulkVerifier;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 
 public class Node {
@@ -43,6 +45,7 @@ public class Node {
 			"List all blocks",
 			"Quick add predef. entry",
 			"Print out my public ID",
+			"Verify all files in a directory",
 			"Exit",
 			}; // see mapping in handleUserInput
 	private boolean isMining = false;
@@ -162,6 +165,9 @@ public class Node {
 				printPublicID();
 				break;
 			case 9:
+				verifyDirectory();
+				break;
+			case 10:
 				exitProgram();
 				return false;
 		}
@@ -187,7 +193,6 @@ public class Node {
 	private void addEntry() {
 		// Get input from user
 		//TODO Input validation
-		FileInputStream inputStream = null;
 		byte[] hash = null;
 		while (hash == null) {
 			System.out.println("Enter file path:");
@@ -195,8 +200,10 @@ public class Node {
 			File inputFile = new File(filePath);
 			
 			try {
-				inputStream = new FileInputStream(inputFile);
-				hash = Hash.hashStream(inputStream);
+				hash = FileHasher.hashFile(inputFile, (bytesHashed, totalBytes, bytesPerSecond) ->
+						System.out.print(String.format("\rHashed %d%% (%.1f MB/s)",
+								bytesHashed * 100 / totalBytes, bytesPerSecond / (1 << 20))));
+				System.out.println();
 			} catch (IOException e1) {
 				System.out.println(String.format("'%s' is not a valid file", filePath));
 			}
@@ -225,6 +232,34 @@ public class Node {
 		} 
 	}
 	
+	private void verifyDirectory() {
+		System.out.println("Enter directory path:");
+		Path directory = Paths.get(mScanner.nextLine());
+		
+		BulkVerifier verifier = new BulkVerifier(mDatabase);
+		try {
+			BulkVerifier.Summary summary = verifier.verify(directory, result -> {
+				String status;
+				if (result.getError() != null)
+					status = "ERROR      ";
+				else if (result.isConfirmed())
+					status = "CONFIRMED  ";
+				else if (result.isMatched())
+					status = "UNCONFIRMED";
+				else
+					status = "NOT FOUND  ";
+				System.out.println(status + " " + result.getFile());
+			});
+			System.out.println(String.format("%d files: %d confirmed, %d unconfirmed, %d not found, %d could not be read",
+					summary.getFiles(), summary.getConfirmed(), summary.getMatched() - summary.getConfirmed(),
+					summary.getUnmatched(), summary.getErrors()));
+		} catch (IOException e) {
+			System.out.println(String.format("'%s' is not a valid directory", directory));
+		} catch (SQLException e) {
+			System.out.println("Error looking up files. Try again...");
+		}
+	}
+	
 	private void quickAddPredefinedEntry() {
 		byte[] hash = Base64.getDecoder().decode("LwwOujrMsbB26le3uZ3aa/XN025Pp+Xd/jdFJVTSE3M=");
 		String fileName = "cl-spring-370.jpg";
@@ -289,7 +324,7 @@ public class Node {
 		    	entryCount++;
 		        Entry entry = di.current();
 		        System.out.printf("entryID: %s, UploaderID: %s\n",
-						entry.getEntryID().toString(), Base64.getEncoder().encodeToString(entry.getUploaderID()) );
+						entry.getEntryID().toString(), getKeyString(entry.getUploaderKey(), entry.getUploaderID()) );
 		    }
 		    System.out.println("There are "+entryCount+" confirmed entries.");
 		    System.out.println("######################################");
@@ -386,6 +421,23 @@ public class Node {
 		return null;
 	}
 	
+	/**
+	 * Entries refer to their uploaders' and receivers' keys by key reference, so look up the key to show the user.
+	 * @param key		the key, if the entry has it already, or null
+	 * @param keyID		the uploader or receiver ID from the entry, which may be a key reference
+	 * @return the key in base 64, or the ID if the key is not in the key dictionary
+	 */
+	public String getKeyString(byte[] key, byte[] keyID) {
+		if (key == null && mDatabase != null && Asymmetric.isKeyReference(keyID)) {
+			try {
+				key = mDatabase.getKey(keyID);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		return Base64.getEncoder().encodeToString(key != null ? key : keyID);
+	}
+	
 	private void listUnconfirmedEntries() {
 		try {
 			List<Entry> entries = mDatabase.getUnconfirmedEntries();
@@ -394,7 +446,7 @@ public class Node {
 			for (int i=0; i<entries.size(); i++){
 		        System.out.printf("entryID: %s, UploaderID: %s\n",
 		        		entries.get(i).getEntryID().toString(),
-		        		Base64.getEncoder().encodeToString(entries.get(i).getUploaderID()) );
+		        		getKeyString(entries.get(i).getUploaderKey(), entries.get(i).getUploaderID()) );
 		    }
 			System.out.println("There are "+entries.size()+" unconfirmed entries.");
 			System.out.println("######################################");
@@ -469,7 +521,8 @@ public class Node {
 			List<Identity> identities = mDatabase.getIdentities();
 			if (identities.size() == 0) {
 				informUserOfProgress("Generating new key identity...");
-				AsymmetricCipherKeyPair keyPair = Asymmetric.generateNewKeyPair();
+				// EC keys are generated almost instantly, and make much smaller entries than RSA keys
+				AsymmetricCipherKeyPair keyPair = Asymmetric.generateNewECKeyPair();
 				mIdentity = new Identity("default", keyPair);
 				mDatabase.insertIdentity(mIdentity);
 			}
@@ -503,7 +556,7 @@ public class Node {
 	private void setupDatabase() {
 		informUserOfProgress("Setting up database...");
 		try {
-			mDatabase = new DatabaseStore("jdbc:h2:file:bitverify");
+			mDatabase = new DatabaseStore("jdbc:h2:file:bitverify", new File("blocks"));
 		} catch (SQLException e) {
 			System.out.println("Error setting up database...");
 			e.printStackTrace();
@@ -15,6 +15,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 import bitverify.network.BlockID;
 import com.j256.ormlite.field.DataType;
@@ -31,9 +32,21 @@ import com.squareup.otto.Bus;
 public class Block {
 	
 	public static final int TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS = 11;
-	private static final long TIME_INVAR_2_TIME_BUFFER_INTO_THE_FUTURE = 10 * 60 * 1000; //we allow blocks to have a timestamp couple minutes into the future
+	static final long TIME_INVAR_2_TIME_BUFFER_INTO_THE_FUTURE = 10 * 60 * 1000; //we allow blocks to have a timestamp couple minutes into the future
 	public static final long GENESIS_TIMESTAMP = 1455745984018l;
 	
+	// original block format: the entries hash is a double hash of all the serialized entries, the header has no version
+	public static final int VERSION_FLAT_ENTRIES = 1;
+	// the entries hash is the root of an EntryMerkleTree, the version is appended to the header
+	public static final int VERSION_MERKLE_ENTRIES = 2;
+	// the version that newly created blocks use
+	public static final int CURRENT_VERSION = VERSION_MERKLE_ENTRIES;
+	
+	private static final int HEADER_LENGTH_FLAT_ENTRIES = 2 * Hash.HASH_LENGTH + 16;
+	
+	// chains at least this long have their headers hashed in parallel before being checked
+	static final int PARALLEL_VERIFY_THRESHOLD = 1024;
+	
     // Block header
     @DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY(32)")
     private byte[] prevBlockHash;
@@ -45,6 +58,8 @@ public class Block {
     private int bitsTarget;
     @DatabaseField
     private int nonce = 0;
+    @DatabaseField(columnDefinition = "INTEGER DEFAULT 1")
+    private int version = VERSION_FLAT_ENTRIES;
 
     // for benefit of database
     @DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY(32)", uniqueIndex = true)
@@ -56,6 +71,11 @@ public class Block {
 
     private List<Entry> entries;
     private boolean verifiedEntries;
+    // Merkle tree of the entries of a version 2 block, built when first needed
+    private EntryMerkleTree entriesTree;
+    // the serialized header, and whether blockID is its hash. Both are kept until the header is changed.
+    private byte[] headerBytes;
+    private boolean headerHashed;
 
     /**
      * The empty package-visible constructor is required for the database.
@@ -83,6 +103,7 @@ public class Block {
         this.bitsTarget = target;
         this.timeStamp = timestamp;
         this.nonce = nonce;
+        this.version = CURRENT_VERSION;
 
         Collections.sort(entriesList);
         this.entries = entriesList;
@@ -91,7 +112,28 @@ public class Block {
 
         this.blockID = this.hashHeader();
     }
-    
+
+    /**
+     * Used by BlockTemplate, which keeps its entries sorted and has already built their Merkle tree.
+     *
+     * @param prevBlockHash the hash of the block this one follows
+     * @param sortedEntries the entries of the block, already in sorted order
+     * @param entriesTree   the Merkle tree of sortedEntries
+     */
+    Block(byte[] prevBlockHash, long timestamp, int target, int nonce, List<Entry> sortedEntries, EntryMerkleTree entriesTree) {
+        this.prevBlockHash = prevBlockHash;
+        this.bitsTarget = target;
+        this.timeStamp = timestamp;
+        this.nonce = nonce;
+        this.version = VERSION_MERKLE_ENTRIES;
+
+        this.entries = sortedEntries;
+        this.entriesHash = entriesTree.getRoot();
+        this.verifiedEntries = true;
+
+        this.blockID = this.hashHeader();
+    }
+
 
     /**
      * This constructor will only be used by the deserialize method. That is why the timestamp is manually entered as well as
@@ -103,12 +145,14 @@ public class Block {
      * @param timeStamp   time since epoch that was originally created by the miner.
      * @param bitsTarget  The integer value that mining calculates should be the number of zeros required to 'mine' this block.
      * @param nonce       The changing value that is the free parameter input value to our hash that must reach the target zeros.
+     * @param version     The block format version, which decides how the entries hash is calculated.
      */
-    private Block(byte[] prevHash, byte[] entriesHash, long timeStamp, int bitsTarget, int nonce) {
+    private Block(byte[] prevHash, byte[] entriesHash, long timeStamp, int bitsTarget, int nonce, int version) {
         this.prevBlockHash = prevHash;
         this.bitsTarget = bitsTarget;
         this.timeStamp = timeStamp;
         this.nonce = nonce;
+        this.version = version;
         
         this.entriesHash = entriesHash;
         this.verifiedEntries = false;
@@ -127,7 +171,7 @@ public class Block {
         long timeStamp = GENESIS_TIMESTAMP;
         int target = Miner.packTarget("00000fa1e3800000000000000000000000000000000000000000000000000000");
         int nonce = 10136621;
-        Block resultBlock = new Block(prevHash,entryHash,timeStamp,target,nonce);
+        Block resultBlock = new Block(prevHash,entryHash,timeStamp,target,nonce,VERSION_FLAT_ENTRIES);
         resultBlock.setEntriesList(Collections.emptyList());
         resultBlock.verifiedEntries = true;
         return resultBlock;
@@ -138,12 +182,20 @@ public class Block {
      * When a node receives, what is believed to be the correct entries, this method will set their values and also check
      * to make sure they haven't been tampered with throughout the sending process.
      *
+     * A list containing the same entry more than once is always rejected: the Merkle tree ignores repeated leaves,
+     * so it would otherwise match the hash of the list without the repeats.
+     *
      * @param entryList List of entries that should correspond to the current block
      * @return a boolean to indicate if the entered entries are the same as the ones indicated in the hash of the deserialized block.
      */
     public boolean setEntriesList(List<Entry> entryList) {
         Collections.sort(entryList);
         entries = entryList;
+        entriesTree = null;
+        for (int i = 1; i < entryList.size(); i++) {
+            if (entryList.get(i - 1).compareTo(entryList.get(i)) == 0)
+                return false;
+        }
         byte[] newEntriesHash = hashEntries();
         if (Arrays.equals(this.entriesHash, newEntriesHash)) {
             this.verifiedEntries = true;
@@ -152,13 +204,36 @@ public class Block {
         return false;
     }
 
+    /**
+     * @return the entries hash for this block's entries list, calculated as this block's version requires
+     */
     public byte[] hashEntries() {
+        if (version >= VERSION_MERKLE_ENTRIES) {
+            entriesTree = new EntryMerkleTree(entries);
+            return entriesTree.getRoot();
+        }
         byte[] entriesSerial = serializeEntries();
         byte[] firstHash = Hash.hashBytes(entriesSerial);
         byte[] secondHash = Hash.hashBytes(firstHash);
         return secondHash;
     }
 
+    /**
+     * Creates a copy of this block that shares its (immutable) entries list, so that the copy's
+     * header can be modified independently, e.g. by a mining thread searching its own nonce range.
+     *
+     * @return a new block with the same header fields and entries as this one
+     */
+    public Block copy() {
+        Block copy = new Block(prevBlockHash, entriesHash, timeStamp, bitsTarget, nonce, version);
+        copy.entries = entries;
+        copy.entriesTree = entriesTree;
+        copy.verifiedEntries = verifiedEntries;
+        copy.height = height;
+        copy.active = active;
+        return copy;
+    }
+
     /**
      * adds one to the nonce value for the miner.
      */
@@ -166,6 +241,7 @@ public class Block {
     	//If we have mined all nonce values without a successful mine, update the timestamp and try again
         if (nonce == -1) this.timeStamp = System.currentTimeMillis();
         nonce += 1;
+        headerChanged();
     }
 
     /**
@@ -185,103 +261,56 @@ public class Block {
             return Miner.blockHashMeetDifficulty(onlyBlock);
         } else {
         	if (bus!=null) bus.post(new LogEvent("chain has " + blockList.size() + " blocks", LogEventSource.BLOCK, Level.FINER));
-            Block prevBlock = blockList.get(0);
-            Block currentBlock;
-            long currentBlockTime;
-            byte[] prevBlockHash = prevBlock.hashHeader();
-            byte[] currentBlockPrevHash;
-            boolean matchingHash;
-            boolean validNonce;
-            
-            boolean timeInvar0;
-            
-            long[] prevBlockTimes = new long[TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS];
-            long medianTime = 0;
-            boolean timeInvar1;
-            
-            boolean timeInvar2;
-            long currentSysTime = System.currentTimeMillis();
-
+            Block[] blocks = blockList.toArray(new Block[listLen]);
+            // hash every header exactly once up front, the checks below only use these hashes
+            byte[][] headerHashes = hashHeaders(blocks);
+            ChainVerifier verifier = new ChainVerifier(blocks[FIRST], headerHashes[FIRST], bus);
             for (int i = 1; i < listLen; i++) {
-                currentBlock = blockList.get(i);
-                currentBlockTime = currentBlock.getTimeStamp();
-                currentBlockPrevHash = currentBlock.getPrevBlockHash();
-                matchingHash = Arrays.equals(prevBlockHash, currentBlockPrevHash);
-                validNonce = Miner.blockHashMeetDifficulty(currentBlock);
-                
-                //time invariant 0: not older than genesis block
-                timeInvar0 = (currentBlockTime >= GENESIS_TIMESTAMP);
-                
-                //time invariant 1: currentBlockTime > median of prev TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS block times
-                if (i>=11){ //only check if there are enough previous blocks
-                	for (int jBlocksBack=1; jBlocksBack<=TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS; jBlocksBack++){
-                		prevBlockTimes[jBlocksBack-1] = blockList.get(i-jBlocksBack).getTimeStamp();
-                    }
-                	Arrays.sort(prevBlockTimes);
-                	medianTime = prevBlockTimes[TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS/2];
-                    timeInvar1 = (currentBlockTime > medianTime);
-                } else {
-                	//invariant automatically holds if not enough blocks yet
-                	timeInvar1 = true;
-                }
-                
-                //time invariant 2: future times are not allowed
-                timeInvar2 = (currentBlockTime < currentSysTime + TIME_INVAR_2_TIME_BUFFER_INTO_THE_FUTURE);
-                if (bus!=null) {
-	                if (!matchingHash)
-	                    bus.post(new LogEvent("chain validation failed: child-parent hashes didn't match", LogEventSource.BLOCK, Level.FINER));
-	                if (!validNonce)
-	                    bus.post(new LogEvent("chain validation failed: block hash did not meet its difficulty", LogEventSource.BLOCK, Level.FINER));
-	                if (!timeInvar0) {
-	                    bus.post(new LogEvent("chain validation failed: time invariant 0 test failed", LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("genesis block timestamp is " + new Date(GENESIS_TIMESTAMP), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("time invariant should be positive: " + (currentBlockTime - medianTime), LogEventSource.BLOCK, Level.FINER));
-	                }
-	                if (!timeInvar1) {
-	                    bus.post(new LogEvent("chain validation failed: time invariant 1 test failed", LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("median of prev "+TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS+" timestamps was "
-	                    		+ new Date(medianTime), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("next block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("time invariant should be positive: " + (currentBlockTime - medianTime), LogEventSource.BLOCK, Level.FINER));
-	                }
-	                if (!timeInvar2) {
-	                    bus.post(new LogEvent("chain validation failed: time invariant 2 test failed", LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("current system time plus allowance buffer was" +
-	                    		new Date(currentSysTime + TIME_INVAR_2_TIME_BUFFER_INTO_THE_FUTURE), LogEventSource.BLOCK, Level.FINER));
-	                    bus.post(new LogEvent("time invariant should be positive: " + (currentBlockTime - medianTime), LogEventSource.BLOCK, Level.FINER));
-	                }
-                }
-                if (!matchingHash || !validNonce || !timeInvar0 || !timeInvar1 || !timeInvar2) {
+                if (!verifier.add(blocks[i], headerHashes[i]))
                     return false;
-                }
-
-                prevBlock = currentBlock;
-                prevBlockHash = prevBlock.hashHeader();
             }
         }
         return true;
     }
 
+    /**
+     * Hashes the header of every block, spreading the work over the common fork-join pool when there are enough of them.
+     * As with hashHeader(), each block's ID is updated to match its hash.
+     *
+     * @param blocks the blocks to hash
+     * @return the header hashes, in the same order as the blocks
+     */
+    private static byte[][] hashHeaders(Block[] blocks) {
+        byte[][] headerHashes = new byte[blocks.length][];
+        if (blocks.length >= PARALLEL_VERIFY_THRESHOLD) {
+            IntStream.range(0, blocks.length).parallel().forEach(i -> headerHashes[i] = blocks[i].hashHeader());
+        } else {
+            for (int i = 0; i < blocks.length; i++)
+                headerHashes[i] = blocks[i].hashHeader();
+        }
+        return headerHashes;
+    }
+
     /**
      * Calucaltes the hash of this block's header. Also updates the blockID to match the calculated hash as they should always be consistent.
-     * @return the header hash as a byte array
+     * The hash is only recalculated after the header has changed.
+     * @return the header hash as a byte array, which must not be modified
      */
     public byte[] hashHeader() {
-        ByteArrayOutputStream header = new ByteArrayOutputStream();
-        try {
-            serializeHeader(header);
-        } catch (IOException e) {
-            // we are in control of creating the stream here so this will never happen, but just in case...
-            e.printStackTrace();
+        if (!headerHashed) {
+            byte[] firstHash = Hash.hashBytes(serializeHeader());
+            blockID = Hash.hashBytes(firstHash);
+            headerHashed = true;
         }
-        byte[] firstHash = Hash.hashBytes(header.toByteArray());
-        byte[] secondHash = Hash.hashBytes(firstHash);
-        blockID = secondHash;
         return blockID;
     }
 
+    // called by every method that changes a field of the header
+    private void headerChanged() {
+        headerBytes = null;
+        headerHashed = false;
+    }
+
     /**
      * @param data the byte array that should contain the data for a valid block.
      * @return the unverified block corresponding to the given byte array
@@ -289,11 +318,12 @@ public class Block {
      */
     public static Block deserialize(byte[] data) throws IOException {
         ByteArrayInputStream in = new ByteArrayInputStream(data);
-        return Block.deserialize(in);
+        // version 1 headers have no version number, so they are told apart by their length
+        return Block.deserialize(in, data.length != HEADER_LENGTH_FLAT_ENTRIES);
     }
 
 
-    private static Block deserialize(InputStream in) throws IOException {
+    private static Block deserialize(InputStream in, boolean hasVersion) throws IOException {
         // DataInputStream allows us to read in primitives in binary form.
         try (DataInputStream d = new DataInputStream(in)) {
             // establish a pair of 32-byte buffers to read in our hashes as byte arrays
@@ -301,8 +331,17 @@ public class Block {
             d.readFully(previousBlockHash);
             byte[] entriesHash = new byte[Hash.HASH_LENGTH];
             d.readFully(entriesHash);
-            // instantiate while reading in the remaining fields - timestamp, bitsTarget , nonce
-            return new Block(previousBlockHash, entriesHash, d.readLong(), d.readInt(), d.readInt());
+            // read in the remaining fields - timestamp, bitsTarget , nonce, version
+            long timeStamp = d.readLong();
+            int bitsTarget = d.readInt();
+            int nonce = d.readInt();
+            int version = VERSION_FLAT_ENTRIES;
+            if (hasVersion) {
+                version = d.readInt();
+                if (version <= VERSION_FLAT_ENTRIES || version > CURRENT_VERSION)
+                    throw new IOException("Unsupported block version " + version);
+            }
+            return new Block(previousBlockHash, entriesHash, timeStamp, bitsTarget, nonce, version);
         }
     }
 
@@ -323,18 +362,20 @@ public class Block {
     }
 
     /**
-     * @return byte array to be sent over the network and later unpacked
-     * @throws IOException
+     * @return byte array to be sent over the network and later unpacked. It is shared until the header changes, so must not be modified.
      */
     public byte[] serializeHeader() {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            serializeHeader(out);
-        } catch (IOException e) {
-            // this will never happen with a byte array stream
-            e.printStackTrace();
+        if (headerBytes == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_LENGTH_FLAT_ENTRIES + 4);
+            try {
+                serializeHeader(out);
+            } catch (IOException e) {
+                // this will never happen with a byte array stream
+                e.printStackTrace();
+            }
+            headerBytes = out.toByteArray();
         }
-        return out.toByteArray();
+        return headerBytes;
     }
 
     private void serializeHeader(OutputStream out) throws IOException {
@@ -344,6 +385,8 @@ public class Block {
             d.writeLong(timeStamp);
             d.writeInt(bitsTarget);
             d.writeInt(nonce);
+            if (version > VERSION_FLAT_ENTRIES)
+                d.writeInt(version);
         }
     }
 
@@ -357,6 +400,12 @@ public class Block {
 
     public void setNonce(int nonce) {
         this.nonce = nonce;
+        headerChanged();
+    }
+
+    public void setTimeStamp(long timeStamp) {
+        this.timeStamp = timeStamp;
+        headerChanged();
     }
     
     @Override
@@ -368,14 +417,14 @@ public class Block {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(blockID);
+        return Arrays.hashCode(hashHeader());
     }
     
     
 //  GETTER METHODS
 
     public byte[] getBlockID() {
-        return blockID;
+        return hashHeader();
     }
 
     public byte[] getPrevBlockHash() {
@@ -402,6 +451,28 @@ public class Block {
         return nonce;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Creates a proof that an entry is in this block, which can be checked against the block's entries hash
+     * without the rest of the entries.
+     *
+     * @param e the entry to prove is in this block
+     * @return the proof, or null if the entry is not in this block or this block's version has no Merkle entries hash
+     * @throws IllegalStateException if this block's entries are not known
+     */
+    public MerkleProof getInclusionProof(Entry e) {
+        if (version < VERSION_MERKLE_ENTRIES)
+            return null;
+        if (!verifiedEntries)
+            throw new IllegalStateException("the entries of this block have not been set");
+        if (entriesTree == null)
+            entriesTree = new EntryMerkleTree(entries);
+        return entriesTree.getProof(e);
+    }
+
     public boolean isActive() {
         return active;
     }
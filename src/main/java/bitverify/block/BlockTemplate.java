@@ -0,0 +1,75 @@
+package bitverify.block;
+
+import bitverify.entries.Entry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * The entries that will go into the next block to be mined. Entries are kept sorted, together with the Merkle tree
+ * of the block's entries hash, so that a new entry can be added in O(log n) time without re-reading the unconfirmed
+ * entries from the database or re-serializing and re-hashing all of them. Not thread safe.
+ */
+public class BlockTemplate {
+    // entries in block order
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    private final EntryMerkleTree entriesTree = new EntryMerkleTree();
+    private boolean changed;
+
+    /**
+     * @param entries the entries to start the template with, usually all the unconfirmed entries
+     */
+    public BlockTemplate(Collection<Entry> entries) {
+        for (Entry e : entries) {
+            if (this.entries.add(e))
+                entriesTree.insert(e);
+        }
+    }
+
+    /**
+     * Add a newly received entry to the template.
+     * @param e the entry
+     * @return true if the entry was added, false if it was already in the template
+     */
+    public boolean addEntry(Entry e) {
+        if (!entries.add(e))
+            return false;
+        entriesTree.insert(e);
+        changed = true;
+        return true;
+    }
+
+    /**
+     * @return whether entries have been added since the last block was created from this template
+     */
+    public boolean hasChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the number of entries in the template
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the entries hash of a block containing exactly the entries in the template
+     */
+    public byte[] getEntriesHash() {
+        return entriesTree.getRoot();
+    }
+
+    /**
+     * Create a block to mine containing the entries in the template.
+     * @param prevBlockHash the hash of the block this one will follow
+     * @param timeStamp     the timestamp for the new block
+     * @param target        the packed target for the new block
+     * @return the new block, with a nonce of 0
+     */
+    public Block createBlock(byte[] prevBlockHash, long timeStamp, int target) {
+        changed = false;
+        return new Block(prevBlockHash, timeStamp, target, 0, new ArrayList<>(entries), entriesTree);
+    }
+}
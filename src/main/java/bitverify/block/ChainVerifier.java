@@ -0,0 +1,180 @@
+package bitverify.block;
+
+import bitverify.LogEvent;
+import bitverify.LogEventSource;
+import bitverify.mining.Target;
+import com.squareup.otto.Bus;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.logging.Level;
+
+/**
+ * Verifies a chain of block headers one header at a time, so that headers can be checked as they arrive rather than
+ * once the whole chain is in memory. Only the hash of the last header and the timestamps of the last
+ * TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS headers are kept. The target is only unpacked again when it changes, so
+ * adding a valid header whose hash has already been calculated does not allocate.
+ *
+ * The checks are the same as Block.verifyChain: each header must follow the previous one, meet its own target, and
+ * satisfy the three time invariants. The first (anchor) block is trusted.
+ * Once a header has failed verification, the verifier rejects everything added after it. Not thread safe.
+ */
+public class ChainVerifier {
+    private static final int MEDIAN_WINDOW = Block.TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS;
+    private static final long TIME_BUFFER_INTO_THE_FUTURE = Block.TIME_INVAR_2_TIME_BUFFER_INTO_THE_FUTURE;
+
+    private final Bus bus;
+
+    private byte[] lastHash;
+    private long headersVerified;
+    private boolean valid = true;
+
+    // the unpacked target of the last header added, which the next header usually shares
+    private int packedTarget;
+    private Target target;
+
+    // timestamps of the most recent blocks, in the order they were added. The oldest is overwritten first.
+    private final long[] recentTimes = new long[MEDIAN_WINDOW];
+    // the same timestamps in ascending order, so the median is always the middle element
+    private final long[] sortedTimes = new long[MEDIAN_WINDOW];
+    private int timesCount;
+    private int nextTimeSlot;
+
+    /**
+     * @param anchor the trusted block that the first header added should follow
+     * @param bus    the event bus to log verification failures to, or null
+     */
+    public ChainVerifier(Block anchor, Bus bus) {
+        this(anchor, anchor.hashHeader(), bus);
+    }
+
+    /**
+     * @param anchor     the trusted block that the first header added should follow
+     * @param anchorHash the header hash of the anchor, if it has already been calculated
+     * @param bus        the event bus to log verification failures to, or null
+     */
+    public ChainVerifier(Block anchor, byte[] anchorHash, Bus bus) {
+        this.bus = bus;
+        this.lastHash = anchorHash;
+        addTime(anchor.getTimeStamp());
+    }
+
+    /**
+     * Verify the next header in the chain.
+     * @param block the header, which should follow the last header added
+     * @return true if the chain is still valid
+     */
+    public boolean add(Block block) {
+        return add(block, block.hashHeader());
+    }
+
+    /**
+     * Verify the next header in the chain.
+     * @param block      the header, which should follow the last header added
+     * @param headerHash the header hash of the block, if it has already been calculated
+     * @return true if the chain is still valid
+     */
+    public boolean add(Block block, byte[] headerHash) {
+        if (!valid)
+            return false;
+
+        long currentBlockTime = block.getTimeStamp();
+        boolean matchingHash = Arrays.equals(lastHash, block.getPrevBlockHash());
+        if (target == null || block.getTarget() != packedTarget) {
+            packedTarget = block.getTarget();
+            target = new Target(packedTarget);
+        }
+        boolean validNonce = target.isMetBy(headerHash);
+
+        //time invariant 0: not older than genesis block
+        boolean timeInvar0 = (currentBlockTime >= Block.GENESIS_TIMESTAMP);
+
+        //time invariant 1: currentBlockTime > median of prev TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS block times
+        long medianTime = 0;
+        boolean timeInvar1;
+        if (timesCount == MEDIAN_WINDOW) { //only check if there are enough previous blocks
+            medianTime = sortedTimes[MEDIAN_WINDOW / 2];
+            timeInvar1 = (currentBlockTime > medianTime);
+        } else {
+            //invariant automatically holds if not enough blocks yet
+            timeInvar1 = true;
+        }
+
+        //time invariant 2: future times are not allowed
+        long currentSysTime = System.currentTimeMillis();
+        boolean timeInvar2 = (currentBlockTime < currentSysTime + TIME_BUFFER_INTO_THE_FUTURE);
+
+        if (bus != null) {
+            if (!matchingHash)
+                bus.post(new LogEvent("chain validation failed: child-parent hashes didn't match", LogEventSource.BLOCK, Level.FINER));
+            if (!validNonce)
+                bus.post(new LogEvent("chain validation failed: block hash did not meet its difficulty", LogEventSource.BLOCK, Level.FINER));
+            if (!timeInvar0) {
+                bus.post(new LogEvent("chain validation failed: time invariant 0 test failed", LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("genesis block timestamp is " + new Date(Block.GENESIS_TIMESTAMP), LogEventSource.BLOCK, Level.FINER));
+            }
+            if (!timeInvar1) {
+                bus.post(new LogEvent("chain validation failed: time invariant 1 test failed", LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("median of prev " + MEDIAN_WINDOW + " timestamps was "
+                        + new Date(medianTime), LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("next block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("time invariant should be positive: " + (currentBlockTime - medianTime), LogEventSource.BLOCK, Level.FINER));
+            }
+            if (!timeInvar2) {
+                bus.post(new LogEvent("chain validation failed: time invariant 2 test failed", LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("block timestamp was " + new Date(currentBlockTime), LogEventSource.BLOCK, Level.FINER));
+                bus.post(new LogEvent("current system time plus allowance buffer was" +
+                        new Date(currentSysTime + TIME_BUFFER_INTO_THE_FUTURE), LogEventSource.BLOCK, Level.FINER));
+            }
+        }
+        if (!matchingHash || !validNonce || !timeInvar0 || !timeInvar1 || !timeInvar2) {
+            valid = false;
+            return false;
+        }
+
+        lastHash = headerHash;
+        addTime(currentBlockTime);
+        headersVerified++;
+        return true;
+    }
+
+    /**
+     * @return false if any header added so far has failed verification
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return the header hash of the last valid header added (or the anchor), which the next header should follow
+     */
+    public byte[] getLastHash() {
+        return lastHash;
+    }
+
+    /**
+     * @return the number of headers added that passed verification, not counting the anchor
+     */
+    public long getHeadersVerified() {
+        return headersVerified;
+    }
+
+    // slide the window of recent timestamps along, keeping the sorted copy in order
+    private void addTime(long time) {
+        if (timesCount == MEDIAN_WINDOW) {
+            int oldest = Arrays.binarySearch(sortedTimes, 0, timesCount, recentTimes[nextTimeSlot]);
+            System.arraycopy(sortedTimes, oldest + 1, sortedTimes, oldest, timesCount - oldest - 1);
+            timesCount--;
+        }
+        recentTimes[nextTimeSlot] = time;
+        nextTimeSlot = (nextTimeSlot + 1) % MEDIAN_WINDOW;
+
+        int position = Arrays.binarySearch(sortedTimes, 0, timesCount, time);
+        if (position < 0)
+            position = -position - 1;
+        System.arraycopy(sortedTimes, position, sortedTimes, position + 1, timesCount - position);
+        sortedTimes[position] = time;
+        timesCount++;
+    }
+}
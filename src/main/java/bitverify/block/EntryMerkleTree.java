@@ -0,0 +1,204 @@
+package bitverify.block;
+
+import bitverify.crypto.Hash;
+import bitverify.entries.Entry;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Merkle tree over the entries of a version 2 block, whose root is the block's entries hash.
+ *
+ * The tree is a treap: every node holds one entry's leaf hash, nodes are in order of leaf hash (a binary search tree)
+ * and each node's priority, the hash of its leaf hash, is greater than its children's (a heap). This gives a single
+ * tree shape for any set of entries, whatever order they were added in, and an expected depth of O(log n), so an
+ * entry can be inserted and the root updated by rehashing only the nodes on its path.
+ *
+ * leaf hash  = H(0x00 || serialized entry)
+ * node hash  = H(0x01 || left child hash || leaf hash || right child hash)
+ * empty tree = 32 zero bytes
+ *
+ * Not thread safe.
+ */
+public class EntryMerkleTree {
+    static final byte LEAF_PREFIX = 0x00;
+    static final byte NODE_PREFIX = 0x01;
+    static final byte[] EMPTY_HASH = new byte[Hash.HASH_LENGTH];
+
+    private static class Node {
+        private final byte[] leafHash;
+        private final byte[] priority;
+        private Node left;
+        private Node right;
+        private byte[] hash;
+
+        private Node(byte[] leafHash) {
+            this.leafHash = leafHash;
+            this.priority = Hash.hashBytes(leafHash);
+            rehash();
+        }
+
+        private void rehash() {
+            hash = nodeHash(hashOf(left), leafHash, hashOf(right));
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    public EntryMerkleTree() {
+    }
+
+    /**
+     * @param entries the entries to build the tree from
+     */
+    public EntryMerkleTree(Collection<Entry> entries) {
+        for (Entry e : entries) {
+            insert(e);
+        }
+    }
+
+    /**
+     * @param e the entry
+     * @return the hash of the entry used as its leaf in the tree
+     */
+    public static byte[] leafHash(Entry e) {
+        byte[] serialized = e.serialize();
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(LEAF_PREFIX);
+        digest.update(serialized, 0, serialized.length);
+        byte[] result = new byte[Hash.HASH_LENGTH];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    static byte[] nodeHash(byte[] left, byte[] leafHash, byte[] right) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(NODE_PREFIX);
+        digest.update(left, 0, left.length);
+        digest.update(leafHash, 0, leafHash.length);
+        digest.update(right, 0, right.length);
+        byte[] result = new byte[Hash.HASH_LENGTH];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    private static byte[] hashOf(Node n) {
+        return n == null ? EMPTY_HASH : n.hash;
+    }
+
+    // unsigned lexicographic comparison of two hashes
+    static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int x = a[i] & 0xff;
+            int y = b[i] & 0xff;
+            if (x != y)
+                return x < y ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Add an entry to the tree, updating the root in expected O(log n) time.
+     * @param e the entry
+     * @return true if the entry was added, false if it was already in the tree
+     */
+    public boolean insert(Entry e) {
+        return insert(leafHash(e));
+    }
+
+    /**
+     * @param leafHash the leaf hash of the entry to add, as given by leafHash(Entry)
+     * @return true if the leaf was added, false if it was already in the tree
+     */
+    public boolean insert(byte[] leafHash) {
+        int oldSize = size;
+        root = insert(root, leafHash);
+        return size != oldSize;
+    }
+
+    private Node insert(Node n, byte[] leafHash) {
+        if (n == null) {
+            size++;
+            return new Node(leafHash);
+        }
+        int c = compare(leafHash, n.leafHash);
+        if (c == 0)
+            return n;
+        if (c < 0) {
+            n.left = insert(n.left, leafHash);
+            if (compare(n.left.priority, n.priority) > 0)
+                return rotateRight(n);
+        } else {
+            n.right = insert(n.right, leafHash);
+            if (compare(n.right.priority, n.priority) > 0)
+                return rotateLeft(n);
+        }
+        n.rehash();
+        return n;
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        n.rehash();
+        l.rehash();
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        n.rehash();
+        r.rehash();
+        return r;
+    }
+
+    /**
+     * @return the root hash of the tree, the entries hash of a block containing these entries
+     */
+    public byte[] getRoot() {
+        return hashOf(root).clone();
+    }
+
+    /**
+     * @return the number of entries in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param e the entry to prove is in the tree
+     * @return an inclusion proof for the entry, or null if it is not in the tree
+     */
+    public MerkleProof getProof(Entry e) {
+        byte[] leafHash = leafHash(e);
+        // record the path from the root down to the entry's node
+        List<Node> path = new ArrayList<>();
+        Node n = root;
+        while (n != null) {
+            path.add(n);
+            int c = compare(leafHash, n.leafHash);
+            if (c == 0)
+                break;
+            n = c < 0 ? n.left : n.right;
+        }
+        if (n == null)
+            return null;
+
+        // then list the steps back up from the entry to the root
+        List<MerkleProof.Step> steps = new ArrayList<>();
+        for (int i = path.size() - 2; i >= 0; i--) {
+            Node parent = path.get(i);
+            boolean fromLeft = parent.left == path.get(i + 1);
+            byte[] sibling = hashOf(fromLeft ? parent.right : parent.left);
+            steps.add(new MerkleProof.Step(fromLeft, parent.leafHash, sibling));
+        }
+        return new MerkleProof(leafHash, hashOf(n.left), hashOf(n.right), steps);
+    }
+}
@@ -0,0 +1,77 @@
+package bitverify.block;
+
+import bitverify.crypto.Hash;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+/**
+ * Hashes the header of a single block for many different nonces without allocating.
+ * The first 64 bytes of a serialized header (prevBlockHash and entriesHash) fill exactly one SHA-256 block,
+ * so the digest state after them (the midstate) is computed once and restored for every nonce.
+ * Only the tail (timestamp, target, nonce and, from version 2, the version) and the second hash are computed per nonce.
+ * Not thread safe - each mining thread should have its own instance.
+ */
+public class HeaderHasher {
+    private static final int TAIL_LENGTH_FLAT_ENTRIES = 16;
+    private static final int NONCE_OFFSET = 12;
+    private static final int VERSION_OFFSET = 16;
+
+    // digest state after the prevBlockHash and entriesHash have been hashed
+    private final SHA256Digest midstate = new SHA256Digest();
+    private final SHA256Digest digest;
+
+    // reused buffers for the header tail and both rounds of hashing
+    private final byte[] tail;
+    private final byte[] firstHash = new byte[Hash.HASH_LENGTH];
+    private final byte[] secondHash = new byte[Hash.HASH_LENGTH];
+
+    /**
+     * @param block the block whose header will be hashed. Later changes to the block are not seen by the hasher.
+     */
+    public HeaderHasher(Block block) {
+        midstate.update(block.getPrevBlockHash(), 0, Hash.HASH_LENGTH);
+        midstate.update(block.getEntriesHash(), 0, Hash.HASH_LENGTH);
+        digest = new SHA256Digest(midstate);
+        if (block.getVersion() > Block.VERSION_FLAT_ENTRIES) {
+            tail = new byte[TAIL_LENGTH_FLAT_ENTRIES + 4];
+            writeInt(block.getVersion(), VERSION_OFFSET);
+        } else {
+            tail = new byte[TAIL_LENGTH_FLAT_ENTRIES];
+        }
+        setTimeStamp(block.getTimeStamp());
+        writeInt(block.getTarget(), 8);
+        writeInt(block.getNonce(), NONCE_OFFSET);
+    }
+
+    /**
+     * Change the timestamp used in the header, e.g. when all the nonce values have been tried.
+     * @param timeStamp the new timestamp
+     */
+    public void setTimeStamp(long timeStamp) {
+        writeInt((int) (timeStamp >>> 32), 0);
+        writeInt((int) timeStamp, 4);
+    }
+
+    /**
+     * Calculates the double hash of the header with the given nonce, the same as Block.hashHeader() would.
+     * @param nonce the nonce to hash the header with
+     * @return the header hash. The array is reused by the next call, so copy it if it needs to be kept.
+     */
+    public byte[] hash(int nonce) {
+        writeInt(nonce, NONCE_OFFSET);
+        digest.reset(midstate);
+        digest.update(tail, 0, tail.length);
+        // doFinal also resets the digest ready for the second hash
+        digest.doFinal(firstHash, 0);
+        digest.update(firstHash, 0, Hash.HASH_LENGTH);
+        digest.doFinal(secondHash, 0);
+        return secondHash;
+    }
+
+    // big-endian, matching DataOutputStream
+    private void writeInt(int value, int offset) {
+        tail[offset] = (byte) (value >>> 24);
+        tail[offset + 1] = (byte) (value >>> 16);
+        tail[offset + 2] = (byte) (value >>> 8);
+        tail[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,130 @@
+package bitverify.block;
+
+import bitverify.crypto.Hash;
+import bitverify.entries.Entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Proof that an entry is in a version 2 block, checked against the block's entries hash alone.
+ * It holds the hashes of the entry's node's children, then for each ancestor up to the root, which side the path
+ * came from, the ancestor's leaf hash and the hash of its other child. Its size grows with the depth of the
+ * entry in the EntryMerkleTree, which is O(log n) on average.
+ */
+public class MerkleProof {
+    // upper bound on steps when deserializing, far deeper than any real tree
+    private static final int MAX_STEPS = 1024;
+
+    static class Step {
+        private final boolean fromLeft;
+        private final byte[] leafHash;
+        private final byte[] siblingHash;
+
+        Step(boolean fromLeft, byte[] leafHash, byte[] siblingHash) {
+            this.fromLeft = fromLeft;
+            this.leafHash = leafHash;
+            this.siblingHash = siblingHash;
+        }
+    }
+
+    private final byte[] leafHash;
+    private final byte[] leftHash;
+    private final byte[] rightHash;
+    private final List<Step> steps;
+
+    MerkleProof(byte[] leafHash, byte[] leftHash, byte[] rightHash, List<Step> steps) {
+        this.leafHash = leafHash;
+        this.leftHash = leftHash;
+        this.rightHash = rightHash;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @param entry       the entry that should be in the block
+     * @param entriesHash the entries hash of the block
+     * @return true if the proof shows that the entry is in a block with this entries hash
+     */
+    public boolean verify(Entry entry, byte[] entriesHash) {
+        return Arrays.equals(leafHash, EntryMerkleTree.leafHash(entry)) && verify(entriesHash);
+    }
+
+    /**
+     * @param entriesHash the entries hash of the block
+     * @return true if the proof leads from its leaf to this entries hash
+     */
+    public boolean verify(byte[] entriesHash) {
+        byte[] hash = EntryMerkleTree.nodeHash(leftHash, leafHash, rightHash);
+        for (Step s : steps) {
+            if (s.fromLeft)
+                hash = EntryMerkleTree.nodeHash(hash, s.leafHash, s.siblingHash);
+            else
+                hash = EntryMerkleTree.nodeHash(s.siblingHash, s.leafHash, hash);
+        }
+        return Arrays.equals(hash, entriesHash);
+    }
+
+    /**
+     * @return the leaf hash of the entry this proof is for
+     */
+    public byte[] getLeafHash() {
+        return leafHash.clone();
+    }
+
+    /**
+     * @return byte array to be sent over the network and later unpacked
+     */
+    public byte[] serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream d = new DataOutputStream(out)) {
+            d.write(leafHash);
+            d.write(leftHash);
+            d.write(rightHash);
+            d.writeInt(steps.size());
+            for (Step s : steps) {
+                d.writeBoolean(s.fromLeft);
+                d.write(s.leafHash);
+                d.write(s.siblingHash);
+            }
+        } catch (IOException e) {
+            // this will never happen with a byte array stream
+            e.printStackTrace();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data a serialized proof
+     * @return the proof
+     * @throws IOException if the data is not a valid serialized proof
+     */
+    public static MerkleProof deserialize(byte[] data) throws IOException {
+        try (DataInputStream d = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte[] leafHash = readHash(d);
+            byte[] leftHash = readHash(d);
+            byte[] rightHash = readHash(d);
+            int count = d.readInt();
+            if (count < 0 || count > MAX_STEPS)
+                throw new IOException("Invalid number of steps in Merkle proof: " + count);
+            List<Step> steps = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                boolean fromLeft = d.readBoolean();
+                steps.add(new Step(fromLeft, readHash(d), readHash(d)));
+            }
+            return new MerkleProof(leafHash, leftHash, rightHash, steps);
+        }
+    }
+
+    private static byte[] readHash(DataInputStream d) throws IOException {
+        byte[] hash = new byte[Hash.HASH_LENGTH];
+        d.readFully(hash);
+        return hash;
+    }
+}
@@ -1,22 +1,48 @@
 package bitverify.crypto;
 
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.sec.SECNamedCurves;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.encodings.OAEPEncoding;
 import org.bouncycastle.crypto.engines.RSAEngine;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
 import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.crypto.params.ECNamedDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
 import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.encoders.Hex;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.crypto.util.PrivateKeyFactory;
 import org.bouncycastle.crypto.util.PrivateKeyInfoFactory;
@@ -27,6 +53,30 @@ public class Asymmetric {
 	
 	private static final int RSAKeySize = 4096;
 	
+	// the curve for ECDSA keys. Keys record the curve by name, so they stay small when encoded.
+	private static final ASN1ObjectIdentifier ECCurve = SECObjectIdentifiers.secp256r1;
+	private static final ECNamedDomainParameters ECParameters;
+	static {
+		X9ECParameters x9 = SECNamedCurves.getByOID(ECCurve);
+		ECParameters = new ECNamedDomainParameters(ECCurve, x9.getCurve(), x9.getG(), x9.getN(), x9.getH(), x9.getSeed());
+	}
+	
+	// decoded public keys by the contents of their byte keys, so that repeat uploaders' keys are only parsed once.
+	// private keys are never cached.
+	private static final int publicKeyCacheSize = 8192;
+	private static final Map<ByteBuffer, AsymmetricKeyParameter> publicKeyCache = new LinkedHashMap<ByteBuffer, AsymmetricKeyParameter>(16, 0.75f, true){
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, AsymmetricKeyParameter> eldest){
+			return size() > publicKeyCacheSize;
+		}
+	};
+	private static final AtomicLong publicKeyCacheHits = new AtomicLong();
+	private static final AtomicLong publicKeyCacheMisses = new AtomicLong();
+	
+	// first byte of a key reference, after the public (0) and private (1) byte key flags
+	private static final byte KEY_REFERENCE_FLAG = 2;
+	public static final int KEY_REFERENCE_LENGTH = 1 + Hash.HASH_LENGTH;
+	
 	private static byte[] _encryptBytes(boolean isEncrypting, byte[] data, AsymmetricKeyParameter key) throws InvalidCipherTextException{
 		RSAEngine engine = new RSAEngine();
 		OAEPEncoding cipher = new OAEPEncoding(engine);
@@ -34,7 +84,17 @@ public class Asymmetric {
 		return cipher.processBlock(data, 0, data.length);
 	}
 	
+	/**
+	 * Encrypts data with an RSA key, or to the holder of an EC public key.
+	 * EC encryption agrees a key with a new ephemeral EC key pair (ECDH), and encrypts the data with it symmetrically.
+	 * The ephemeral public key, compressed, comes before the encrypted data.
+	 */
 	public static byte[] encryptBytes(byte[] data, AsymmetricKeyParameter key) throws InvalidCipherTextException, DataSizeException{
+		if (isECKey(key)){
+			if (key.isPrivate())
+				throw new IllegalArgumentException("data is encrypted to an EC public key");
+			return encryptBytesEC(data, (ECPublicKeyParameters) key);
+		}
 		if (data.length >= (RSAKeySize-384)/8+7){
 			throw new DataSizeException("data too long to encrypt with RSA, use symmetric encryption instead");
 		}
@@ -42,9 +102,54 @@ public class Asymmetric {
 	}
 	
 	public static byte[] decryptBytes(byte[] data, AsymmetricKeyParameter key) throws InvalidCipherTextException{
+		if (isECKey(key)){
+			if (!key.isPrivate())
+				throw new IllegalArgumentException("data encrypted to an EC key is decrypted with its private key");
+			return decryptBytesEC(data, (ECPrivateKeyParameters) key);
+		}
 		return _encryptBytes(false, data, key);
 	}
 	
+	private static byte[] encryptBytesEC(byte[] data, ECPublicKeyParameters key) throws InvalidCipherTextException{
+		AsymmetricCipherKeyPair ephemeral = generateNewECKeyPair(key.getParameters());
+		byte[] ephemeralPoint = ((ECPublicKeyParameters) ephemeral.getPublic()).getQ().getEncoded(true);
+		byte[] encrypted = Symmetric.encryptBytes(data, agreeKey((ECPrivateKeyParameters) ephemeral.getPrivate(), key, ephemeralPoint));
+		
+		byte[] ret = new byte[ephemeralPoint.length + encrypted.length];
+		System.arraycopy(ephemeralPoint, 0, ret, 0, ephemeralPoint.length);
+		System.arraycopy(encrypted, 0, ret, ephemeralPoint.length, encrypted.length);
+		return ret;
+	}
+	
+	private static byte[] decryptBytesEC(byte[] data, ECPrivateKeyParameters key) throws InvalidCipherTextException{
+		ECDomainParameters params = key.getParameters();
+		// a compressed point is a sign byte followed by the x coordinate
+		int pointLength = 1 + (params.getCurve().getFieldSize() + 7) / 8;
+		if (data.length <= pointLength)
+			throw new InvalidCipherTextException("data too short to have been encrypted to an EC key");
+		byte[] ephemeralPoint = Arrays.copyOf(data, pointLength);
+		ECPoint q;
+		try {
+			q = params.getCurve().decodePoint(ephemeralPoint);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCipherTextException("invalid ephemeral key");
+		}
+		byte[] symKey = agreeKey(key, new ECPublicKeyParameters(q, params), ephemeralPoint);
+		return Symmetric.decryptBytes(Arrays.copyOfRange(data, pointLength, data.length), symKey);
+	}
+	
+	/**
+	 * @return the symmetric key for one EC encryption: the hash of the ECDH shared secret and the ephemeral public key
+	 */
+	private static byte[] agreeKey(ECPrivateKeyParameters privateKey, ECPublicKeyParameters publicKey, byte[] ephemeralPoint){
+		ECDHBasicAgreement agreement = new ECDHBasicAgreement();
+		agreement.init(privateKey);
+		byte[] secret = BigIntegers.asUnsignedByteArray(agreement.getFieldSize(), agreement.calculateAgreement(publicKey));
+		byte[] hashInput = Arrays.copyOf(secret, secret.length + ephemeralPoint.length);
+		System.arraycopy(ephemeralPoint, 0, hashInput, secret.length, ephemeralPoint.length);
+		return Hash.hashBytes(hashInput);
+	}
+	
 	public static String encryptHexString(String hexString, AsymmetricKeyParameter key) throws InvalidCipherTextException, DataSizeException{
 		byte[] data = Hex.decode(hexString);
 		data = encryptBytes(data,key);
@@ -97,6 +202,93 @@ public class Asymmetric {
 		return keyPair;
 	}
 	
+	/**
+	 * Generates a new ECDSA key pair on the secp256r1 curve.
+	 * Takes well under a second, and the keys and signatures are much smaller than RSA ones.
+	 * Data is encrypted to EC keys by agreeing a symmetric key (ECDH), see encryptBytes.
+	 */
+	public static AsymmetricCipherKeyPair generateNewECKeyPair(){
+		return generateNewECKeyPair(ECParameters);
+	}
+	
+	private static AsymmetricCipherKeyPair generateNewECKeyPair(ECDomainParameters params){
+		SecureRandom randomNumberGenerator;
+		try {
+			randomNumberGenerator = SecureRandom.getInstance("SHA1PRNG");
+		} catch (NoSuchAlgorithmException e) {
+			randomNumberGenerator = new SecureRandom();
+		}
+		
+		ECKeyPairGenerator keyPairGenerator = new ECKeyPairGenerator();
+		keyPairGenerator.init(new ECKeyGenerationParameters(params, randomNumberGenerator));
+		return keyPairGenerator.generateKeyPair();
+	}
+	
+	public static boolean isECKey(AsymmetricKeyParameter key){
+		return key instanceof ECKeyParameters;
+	}
+	
+	/**
+	 * Signs a hash with a private key.
+	 * RSA keys encrypt the hash, as entries have always been signed. ECDSA keys give a DER-encoded (r, s) signature,
+	 * with k derived from the key and hash (RFC 6979) rather than from a random number generator.
+	 */
+	public static byte[] signHash(byte[] hash, AsymmetricKeyParameter privateKey) throws InvalidCipherTextException, DataSizeException{
+		if (!isECKey(privateKey))
+			return encryptBytes(hash, privateKey);
+		
+		ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+		signer.init(true, privateKey);
+		BigInteger[] rs = signer.generateSignature(hash);
+		// use the lower of s and n - s, both are valid, so that each entry has only one valid signature
+		BigInteger n = ((ECKeyParameters) privateKey).getParameters().getN();
+		BigInteger s = rs[1].compareTo(n.shiftRight(1)) > 0 ? n.subtract(rs[1]) : rs[1];
+		ASN1EncodableVector v = new ASN1EncodableVector();
+		v.add(new ASN1Integer(rs[0]));
+		v.add(new ASN1Integer(s));
+		try {
+			return new DERSequence(v).getEncoded();
+		} catch (IOException e){
+			//should never happen
+			throw new RuntimeException();
+		}
+	}
+	
+	/**
+	 * Checks a signature made by signHash.
+	 * @return true if the signature is of the hash, by the private key matching publicKey
+	 */
+	public static boolean verifyHashSignature(byte[] hash, byte[] signature, AsymmetricKeyParameter publicKey){
+		if (!isECKey(publicKey)){
+			try {
+				return Arrays.equals(hash, decryptBytes(signature, publicKey));
+			} catch (InvalidCipherTextException e) {
+				return false;
+			}
+		}
+		
+		BigInteger r, s;
+		try {
+			ASN1Sequence seq = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(signature));
+			if (seq.size() != 2)
+				return false;
+			r = ASN1Integer.getInstance(seq.getObjectAt(0)).getValue();
+			s = ASN1Integer.getInstance(seq.getObjectAt(1)).getValue();
+			// only accept the encoding signHash makes, so a signature can't be altered and stay valid
+			if (!Arrays.equals(signature, seq.getEncoded("DER")))
+				return false;
+		} catch (IOException | IllegalArgumentException e) {
+			return false;
+		}
+		ECDomainParameters params = ((ECKeyParameters) publicKey).getParameters();
+		if (s.compareTo(params.getN().shiftRight(1)) > 0)
+			return false;
+		
+		ECDSASigner signer = new ECDSASigner();
+		signer.init(false, publicKey);
+		return signer.verifySignature(hash, r, s);
+	}
+	
 	public static AsymmetricCipherKeyPair getKeyPairFromKeys(AsymmetricKeyParameter publicKey, AsymmetricKeyParameter privateKey){
 		return new AsymmetricCipherKeyPair(publicKey, privateKey);
 	}
@@ -213,12 +405,33 @@ public class Asymmetric {
 		return ret;
 	}
 	
+	/**
+	 * Decodes a key from the format produced by keyToByteKey.
+	 * Public keys are cached, so decoding the same public key again is cheap.
+	 */
 	public static AsymmetricKeyParameter byteKeyToKey(byte[] key) throws KeyDecodingException{
 		try {
 			if (key[0] == 1){ //private
 				return PrivateKeyFactory.createKey(	Arrays.copyOfRange(key, 1, key.length) );
 			} else if (key[0] == 0) { //public
-				return PublicKeyFactory.createKey(	Arrays.copyOfRange(key, 1, key.length) );
+				ByteBuffer cacheKey = ByteBuffer.wrap(key);
+				AsymmetricKeyParameter publicKey;
+				synchronized (publicKeyCache){
+					publicKey = publicKeyCache.get(cacheKey);
+				}
+				if (publicKey != null){
+					publicKeyCacheHits.incrementAndGet();
+					return publicKey;
+				}
+				publicKeyCacheMisses.incrementAndGet();
+				publicKey = PublicKeyFactory.createKey(	Arrays.copyOfRange(key, 1, key.length) );
+				synchronized (publicKeyCache){
+					// copy the key so the caller can't change the cache entry afterwards
+					publicKeyCache.put(ByteBuffer.wrap(key.clone()), publicKey);
+				}
+				return publicKey;
+			} else if (key[0] == KEY_REFERENCE_FLAG) {
+				throw new KeyDecodingException("byteKey is a key reference, the key it refers to must be looked up first.");
 			} else {
 				throw new KeyDecodingException("Invalid byteKey. First byte is corrupted.");
 			}
@@ -227,6 +440,50 @@ public class Asymmetric {
 		}
 	}
 	
+	/**
+	 * A key reference stands in for a public byte key where the whole key would be repeated many times, e.g. in entries.
+	 * It is a flag byte followed by the hash of the byte key, so the key it refers to can be checked once found.
+	 * @param publicKey a public byte key
+	 * @return the key reference, KEY_REFERENCE_LENGTH bytes long
+	 */
+	public static byte[] getKeyReference(byte[] publicKey){
+		if (publicKey.length == 0 || publicKey[0] != 0)
+			throw new IllegalArgumentException("only public byte keys have key references");
+		byte[] ref = new byte[KEY_REFERENCE_LENGTH];
+		ref[0] = KEY_REFERENCE_FLAG;
+		System.arraycopy(Hash.hashBytes(publicKey), 0, ref, 1, Hash.HASH_LENGTH);
+		return ref;
+	}
+	
+	public static boolean isKeyReference(byte[] key){
+		return key.length == KEY_REFERENCE_LENGTH && key[0] == KEY_REFERENCE_FLAG;
+	}
+	
+	/**
+	 * @param key       a byte key or key reference, e.g. from an entry
+	 * @param publicKey a public byte key
+	 * @return true if key is publicKey, or is a reference to it
+	 */
+	public static boolean isSameKey(byte[] key, byte[] publicKey){
+		if (isKeyReference(key))
+			return publicKey.length > 0 && publicKey[0] == 0 && Arrays.equals(key, getKeyReference(publicKey));
+		return Arrays.equals(key, publicKey);
+	}
+	
+	/**
+	 * @return the number of times byteKeyToKey found a public key in its cache
+	 */
+	public static long getPublicKeyCacheHits(){
+		return publicKeyCacheHits.get();
+	}
+	
+	/**
+	 * @return the number of times byteKeyToKey had to decode a public key
+	 */
+	public static long getPublicKeyCacheMisses(){
+		return publicKeyCacheMisses.get();
+	}
+	
 	public static boolean isValidKey(String key){
 		try {
 			stringKeyToKey(key);
@@ -0,0 +1,169 @@
+package bitverify.crypto;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Hashes files to get document hashes. Files are memory mapped a region at a time rather than read through a heap
+ * buffer, and hashed with the JDK's SHA-256, which is much faster than the BouncyCastle digest for large inputs.
+ *
+ * hashFile gives the plain SHA-256 of the file, the same as Hash.hashStream, so it matches existing document hashes.
+ * treeHashFile is an opt-in alternative that splits the file into TREE_CHUNK_SIZE chunks and hashes them on all cores:
+ *
+ * leaf hash = H(0x00 || chunk)
+ * node hash = H(0x01 || left hash || right hash)
+ *
+ * Each level pairs up the hashes of the level below, and an odd one out is carried up unchanged. The root is the hash
+ * of the last level. An empty file has a single, empty chunk. Because of the prefixes, a tree hash can't be mistaken
+ * for the plain hash of a file.
+ */
+public class FileHasher {
+	/** The size of the chunks a file is split into for a tree hash. */
+	public static final int TREE_CHUNK_SIZE = 1 << 20;
+	// how much of the file is mapped at once, and how often progress is reported. A whole number of tree chunks.
+	static final int MAP_REGION_SIZE = 16 << 20;
+	private static final int CHUNKS_PER_REGION = MAP_REGION_SIZE / TREE_CHUNK_SIZE;
+	private static final byte LEAF_PREFIX = 0x00;
+	private static final byte NODE_PREFIX = 0x01;
+
+	public interface ProgressListener {
+		/**
+		 * Called as the file is hashed. For a tree hash this is called from the hashing threads.
+		 * @param bytesHashed the number of bytes of the file hashed so far
+		 * @param totalBytes the size of the file
+		 * @param bytesPerSecond the average speed since hashing started
+		 */
+		void progress(long bytesHashed, long totalBytes, double bytesPerSecond);
+	}
+
+	/**
+	 * @return the SHA-256 hash of the file
+	 */
+	public static byte[] hashFile(File file) throws IOException {
+		return hashFile(file, null);
+	}
+
+	/**
+	 * @param listener told how much of the file has been hashed, or null
+	 * @return the SHA-256 hash of the file
+	 */
+	public static byte[] hashFile(File file, ProgressListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			Progress progress = new Progress(size, listener);
+			MessageDigest digest = newDigest();
+			for (long position = 0; position < size; position += MAP_REGION_SIZE) {
+				long length = Math.min(MAP_REGION_SIZE, size - position);
+				digest.update(channel.map(MapMode.READ_ONLY, position, length));
+				progress.add(length);
+			}
+			return digest.digest();
+		}
+	}
+
+	/**
+	 * @return the tree hash of the file
+	 */
+	public static byte[] treeHashFile(File file) throws IOException {
+		return treeHashFile(file, null);
+	}
+
+	/**
+	 * @param listener told how much of the file has been hashed, or null. Must be thread safe.
+	 * @return the tree hash of the file, with the chunks hashed in parallel
+	 */
+	public static byte[] treeHashFile(File file, ProgressListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0)
+				return leafHash(ByteBuffer.allocate(0));
+
+			Progress progress = new Progress(size, listener);
+			byte[][] leaves = new byte[(int) ((size + TREE_CHUNK_SIZE - 1) / TREE_CHUNK_SIZE)][];
+			int regions = (int) ((size + MAP_REGION_SIZE - 1) / MAP_REGION_SIZE);
+			try {
+				IntStream.range(0, regions).parallel().forEach(region -> {
+					long position = (long) region * MAP_REGION_SIZE;
+					long length = Math.min(MAP_REGION_SIZE, size - position);
+					ByteBuffer mapped;
+					try {
+						mapped = channel.map(MapMode.READ_ONLY, position, length);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					for (int offset = 0; offset < length; offset += TREE_CHUNK_SIZE) {
+						mapped.limit((int) Math.min(offset + TREE_CHUNK_SIZE, length));
+						mapped.position(offset);
+						leaves[region * CHUNKS_PER_REGION + offset / TREE_CHUNK_SIZE] = leafHash(mapped);
+					}
+					progress.add(length);
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return rootHash(leaves);
+		}
+	}
+
+	private static byte[] leafHash(ByteBuffer chunk) {
+		MessageDigest digest = newDigest();
+		digest.update(LEAF_PREFIX);
+		digest.update(chunk);
+		return digest.digest();
+	}
+
+	private static byte[] rootHash(byte[][] level) {
+		while (level.length > 1) {
+			byte[][] next = new byte[(level.length + 1) / 2][];
+			for (int i = 0; i < level.length / 2; i++) {
+				MessageDigest digest = newDigest();
+				digest.update(NODE_PREFIX);
+				digest.update(level[2 * i]);
+				digest.update(level[2 * i + 1]);
+				next[i] = digest.digest();
+			}
+			if (level.length % 2 == 1)
+				next[next.length - 1] = level[level.length - 1];
+			level = next;
+		}
+		return level[0];
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class Progress {
+		private final long totalBytes;
+		private final ProgressListener listener;
+		private final long startTime = System.nanoTime();
+		private final AtomicLong bytesHashed = new AtomicLong();
+
+		private Progress(long totalBytes, ProgressListener listener) {
+			this.totalBytes = totalBytes;
+			this.listener = listener;
+		}
+
+		private void add(long bytes) {
+			long hashed = bytesHashed.addAndGet(bytes);
+			if (listener == null)
+				return;
+			double seconds = (System.nanoTime() - startTime) / 1e9;
+			listener.progress(hashed, totalBytes, seconds > 0 ? hashed / seconds : 0);
+		}
+	}
+}
@@ -19,6 +19,10 @@ public class Identity {
 	
 	private static final long NUM_OF_ENCRYPTION_ROUNDS = 1000;
 	private static final long NUM_OF_MASTERPW_HASH_ROUNDS = 500000;
+	
+	// the kinds of key pair an identity can hold. Identities stored before the key type was recorded are RSA.
+	public static final int KEY_TYPE_RSA = 0;
+	public static final int KEY_TYPE_EC = 1;
 
 	@DatabaseField(generatedId = true)
 	private int id;
@@ -30,6 +34,9 @@ public class Identity {
 	@DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY")
 	private byte[] publicKey;
 
+	@DatabaseField
+	private int keyType = KEY_TYPE_RSA;
+
 	private byte[] decryptedPrivateKey = null; //do not persist to DB
 
 	@DatabaseField
@@ -44,6 +51,15 @@ public class Identity {
 	private Identity(String description, byte[] publicKey){
 		this.setDescription(description);
 		this.publicKey = publicKey;
+		this.keyType = keyTypeOf(publicKey);
+	}
+	
+	private static int keyTypeOf(byte[] publicKey){
+		try {
+			return Asymmetric.isECKey(Asymmetric.byteKeyToKey(publicKey)) ? KEY_TYPE_EC : KEY_TYPE_RSA;
+		} catch (KeyDecodingException e) {
+			throw new IllegalArgumentException("Invalid public key");
+		}
 	}
 	
 	private Identity(String description, byte[] publicKey, byte[] privateKey, boolean needsEncryption){
@@ -205,6 +221,13 @@ public class Identity {
 		return decryptedPrivateKey;
 	}
 	
+	/**
+	 * @return KEY_TYPE_RSA or KEY_TYPE_EC
+	 */
+	public int getKeyType(){
+		return keyType;
+	}
+	
 	public boolean getNeedsEncryption(){
 		return needsEncryption;
 	}
@@ -3,6 +3,8 @@ package bitverify.entries;
 import java.io.*;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import com.j256.ormlite.field.DataType;
@@ -13,7 +15,6 @@ import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
-import org.bouncycastle.util.encoders.Hex;
 
 import bitverify.crypto.Asymmetric;
 import bitverify.crypto.DataSizeException;
@@ -30,12 +31,17 @@ public class Entry implements Comparable<Entry> {
 	private UUID entryID;
 
 	// we should store hashes and keys as byte arrays.
+	// new entries refer to keys by key references (see Asymmetric.getKeyReference), older ones contain the whole keys.
 	@DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY")
 	private byte[] entryHashSigned;
 	@DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY")
 	private byte[] uploaderID;
 	@DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY")
 	private byte[] receiverID = new byte[0];
+	
+	// the whole public keys that uploaderID and receiverID refer to, once known. Not persisted or serialized.
+	private byte[] uploaderKey;
+	private byte[] receiverKey;
 
 	@DatabaseField
 	private long entryTimeStamp;
@@ -77,12 +83,28 @@ public class Entry implements Comparable<Entry> {
 	
 	// <-- metadata
 	
+	// the serialized entry and the hash it was signed over. A finalised entry doesn't change, so these are
+	// worked out once (or kept from the bytes it was deserialized from). Not persisted.
+	private byte[] serialized;
+	private byte[] entryHash;
+	
+	// entries whose signatures have already been checked, so an entry received more than once
+	// (e.g. on its own and again in a block) only has its signature verified the first time
+	private static final int verifiedSignatureCacheSize = 16384;
+	private static final Map<SignatureCacheKey, Boolean> verifiedSignatures = new LinkedHashMap<SignatureCacheKey, Boolean>(16, 0.75f, true){
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SignatureCacheKey, Boolean> eldest){
+			return size() > verifiedSignatureCacheSize;
+		}
+	};
+	
 	private void _constructEntryCore(AsymmetricCipherKeyPair uploaderKeyPair,
 			byte[] docHash, String docLink, String docName, String docDescription,
 			String docGeoLocation, long docTimeStamp) throws KeyDecodingException{
 		entryID = UUID.randomUUID();
 		entryTimeStamp = System.currentTimeMillis();
-		this.uploaderID = Asymmetric.keyToByteKey( uploaderKeyPair.getPublic() );
+		this.uploaderKey = Asymmetric.keyToByteKey( uploaderKeyPair.getPublic() );
+		this.uploaderID = Asymmetric.getKeyReference(uploaderKey);
 		setMetadataFields(docHash, docLink, docName, docDescription,
 				docGeoLocation, docTimeStamp);
 	}
@@ -118,10 +140,11 @@ public class Entry implements Comparable<Entry> {
 			 String docGeoLocation, long docTimeStamp) throws KeyDecodingException, IOException{
 		_constructEntryCore(uploaderKeyPair, docHash, docLink, docName, docDescription, docGeoLocation, docTimeStamp);
 	
-		if (!Asymmetric.isValidKey(receiverID)){
+		if (!Asymmetric.isValidKey(receiverID) || receiverID[0] != 0){
 			throw new KeyDecodingException();
 		}
-		this.receiverID = receiverID;
+		this.receiverKey = receiverID;
+		this.receiverID = Asymmetric.getKeyReference(receiverID);
 		
 		//and finally:
 		finalise(uploaderKeyPair);
@@ -137,6 +160,11 @@ public class Entry implements Comparable<Entry> {
 		this.metadataBytes = metadataBytes;
 		this.encryptedSymmetricKey = encryptedSymmetricKey;
 		
+		if (!Asymmetric.isKeyReference(uploaderID))
+			this.uploaderKey = uploaderID;
+		if (isPrivatelyShared() && !Asymmetric.isKeyReference(receiverID))
+			this.receiverKey = receiverID;
+		
 		if (!isPrivatelyShared()){
 			deserializeMetadata(metadataBytes);
 		}
@@ -150,8 +178,7 @@ public class Entry implements Comparable<Entry> {
 			try {
 					byte[] symKey = Symmetric.generateKey();
 					metadataBytes = Symmetric.encryptBytes(metadataBytes, symKey);
-					AsymmetricKeyParameter receiverKey = Asymmetric.byteKeyToKey(receiverID);
-					encryptedSymmetricKey = Asymmetric.encryptBytes(symKey, receiverKey);
+					encryptedSymmetricKey = Asymmetric.encryptBytes(symKey, Asymmetric.byteKeyToKey(receiverKey));
 				
 			} catch (DataSizeException | InvalidCipherTextException e) { //should never happen
 				e.printStackTrace();
@@ -167,9 +194,7 @@ public class Entry implements Comparable<Entry> {
 		if (!isPrivatelyShared()) return;
 		if (decryptHasBeenCalled) return;
 		
-		String providedPublicKey = Asymmetric.keyToStringKey(receiverKeyPair.getPublic());
-		String expectedPublicKey = Asymmetric.byteKeyToStringKey(receiverID);
-		if (!providedPublicKey.equals(expectedPublicKey)){
+		if (!isThisEntryJustForMe(receiverKeyPair)){
 			throw new NotMatchingKeyException();
 		}
 		
@@ -186,7 +211,7 @@ public class Entry implements Comparable<Entry> {
 	 * Call this to figure out whether you are the sole receiver of the entry
 	 */
 	public boolean isThisEntryJustForMe(byte[] myPublicKey){
-		return Arrays.equals(myPublicKey, receiverID);
+		return isPrivatelyShared() && Asymmetric.isSameKey(receiverID, myPublicKey);
 	}
 	
 	/**
@@ -238,9 +263,16 @@ public class Entry implements Comparable<Entry> {
 		}
 	}
 	
+	/**
+	 * Deserializes an entry. If data holds exactly one entry the entry keeps it as its serialized form,
+	 * so data must not be modified afterwards.
+	 */
 	public static Entry deserialize(byte[] data) throws IOException {
 		ByteArrayInputStream in = new ByteArrayInputStream(data);
-		return Entry.deserialize(in);
+		Entry entry = Entry.deserialize(in);
+		if (in.available() == 0)
+			entry.serialized = data;
+		return entry;
 	}
 	
 	private void _serialize(OutputStream out, boolean includeHash) throws IOException {
@@ -274,18 +306,25 @@ public class Entry implements Comparable<Entry> {
 	}
 	
 	public void serialize(OutputStream out) throws IOException {
-		_serialize(out, true);
+		out.write(serialize());
+		out.flush();
 	}
 	
+	/**
+	 * @return the serialized entry. The array is shared with the entry, so it must not be modified.
+	 */
 	public byte[] serialize() {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		try {
-			serialize(out);
-		} catch (IOException e) {
-			// we are in control of creating the stream here so this will never happen, but just in case...
-			e.printStackTrace();
+		if (serialized == null){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				_serialize(out, true);
+			} catch (IOException e) {
+				// we are in control of creating the stream here so this will never happen, but just in case...
+				e.printStackTrace();
+			}
+			serialized = out.toByteArray();
 		}
-		return out.toByteArray();
+		return serialized;
 	}
 	
 	private void serializeForHashing(OutputStream out) throws IOException {
@@ -293,21 +332,24 @@ public class Entry implements Comparable<Entry> {
 	}
 
 	private byte[] hashEntry() {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		try {
-			serializeForHashing(out);
-		} catch (IOException e) {
-			// we are in control of creating the stream here so this will never happen, but just in case...
-			e.printStackTrace();
+		if (entryHash == null){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				serializeForHashing(out);
+			} catch (IOException e) {
+				// we are in control of creating the stream here so this will never happen, but just in case...
+				e.printStackTrace();
+			}
+			byte[] serialisedEntry = out.toByteArray();
+			entryHash = Hash.hashBytes(serialisedEntry);
 		}
-		byte[] serialisedEntry = out.toByteArray();
-		return Hash.hashBytes(serialisedEntry);
+		return entryHash;
 	}
 	
 	private void hashAndSignEntry(AsymmetricKeyParameter privKey) throws IOException{
 		byte[] entryHash = hashEntry();
 		try {
-			entryHashSigned = Asymmetric.encryptBytes(entryHash, privKey);
+			entryHashSigned = Asymmetric.signHash(entryHash, privKey);
 		} catch (InvalidCipherTextException | DataSizeException e) {
 			//this should never happen
 			e.printStackTrace();
@@ -315,28 +357,40 @@ public class Entry implements Comparable<Entry> {
 		}
 	}
 	
+	/**
+	 * Checks the entry was signed by its uploader. Entries that have passed before are not checked again:
+	 * the result is remembered against a hash of the whole serialized entry, signature included,
+	 * so a copy of the entry that differs in any way is still verified.
+	 */
 	public boolean testEntryHashSignature() {
+		SignatureCacheKey key = new SignatureCacheKey(entryID, Hash.hashBytes(serialize()));
+		synchronized (verifiedSignatures){
+			if (verifiedSignatures.get(key) != null) return true;
+		}
+		if (!verifyEntryHashSignature()) return false;
+		synchronized (verifiedSignatures){
+			verifiedSignatures.put(key, Boolean.TRUE);
+		}
+		return true;
+	}
+	
+	private boolean verifyEntryHashSignature() {
+		// the uploader's key has to be looked up before the signature can be checked
+		if (getUploaderKey() == null)
+			return false;
 		//calculate hash
 		byte[] calculatedEntryHash = hashEntry();
 		//decode stored hash
 		AsymmetricKeyParameter uploaderPubKey;
 		try {
-			uploaderPubKey = Asymmetric.byteKeyToKey(uploaderID);
+			uploaderPubKey = Asymmetric.byteKeyToKey(getUploaderKey());
 		} catch (KeyDecodingException e) {
 			e.printStackTrace();
 			System.err.println("Cannot decode public key stored in entry.");
 			return false;
 		}
-		byte[] decodedEntryHash;
-		try {
-			decodedEntryHash = Asymmetric.decryptBytes(entryHashSigned, uploaderPubKey);
-		} catch (InvalidCipherTextException e) {
-			return false;
-		}
-		//compare the two
-		String calcHash = Hex.toHexString(calculatedEntryHash);
-		String decodedHash = Hex.toHexString(decodedEntryHash);
-		return calcHash.equals(decodedHash);
+		//check the stored signature is of the calculated hash
+		return Asymmetric.verifyHashSignature(calculatedEntryHash, entryHashSigned, uploaderPubKey);
 	}
 	
 	public boolean isPrivatelyShared(){
@@ -362,6 +416,35 @@ public class Entry implements Comparable<Entry> {
 	public byte[] getReceiverID(){
 		return receiverID;
 	}
+	
+	/**
+	 * Gets the uploader's whole public byte key. 
+	 * @return the key, or null if the entry only has a reference to it that has not been resolved with setUploaderKey
+	 */
+	public byte[] getUploaderKey(){
+		return Asymmetric.isKeyReference(uploaderID) ? uploaderKey : uploaderID;
+	}
+	
+	/**
+	 * Resolves the reference to the uploader's key, e.g. with a key from the key dictionary.
+	 * @param key the uploader's public byte key
+	 * @return true if the key is the one the entry refers to
+	 */
+	public boolean setUploaderKey(byte[] key){
+		if (!Asymmetric.isSameKey(uploaderID, key))
+			return false;
+		uploaderKey = key;
+		return true;
+	}
+	
+	/**
+	 * Gets the receiver's whole public byte key.
+	 * @return the key, or null if the entry is not privately shared or only has an unresolved reference to the key
+	 */
+	public byte[] getReceiverKey(){
+		if (!isPrivatelyShared()) return null;
+		return Asymmetric.isKeyReference(receiverID) ? receiverKey : receiverID;
+	}
 
 
 	public void setConfirmed(boolean confirmed) {
@@ -483,4 +566,26 @@ public class Entry implements Comparable<Entry> {
 	}
 
 // <------------------------------------ metadata methods
+	
+	private static final class SignatureCacheKey {
+		private final UUID entryID;
+		private final byte[] entryDigest;
+		
+		private SignatureCacheKey(UUID entryID, byte[] entryDigest){
+			this.entryID = entryID;
+			this.entryDigest = entryDigest;
+		}
+		
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof SignatureCacheKey)) return false;
+			SignatureCacheKey other = (SignatureCacheKey) o;
+			return entryID.equals(other.entryID) && Arrays.equals(entryDigest, other.entryDigest);
+		}
+		
+		@Override
+		public int hashCode(){
+			return 31 * entryID.hashCode() + Arrays.hashCode(entryDigest);
+		}
+	}
 }
@@ -0,0 +1,92 @@
+package bitverify.entries;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the signatures of a batch of entries, such as the entries of a received block, in parallel.
+ * The work is done on the verifier's own fixed pool of daemon threads, so it does not hold up network threads.
+ * If the pool's queue is full, the thread submitting a batch verifies the rest of it itself.
+ */
+public class EntrySignatureVerifier {
+	private static final int QUEUE_CAPACITY = 1024;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a verifier with one thread per processor.
+	 */
+	public EntrySignatureVerifier() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads the number of threads to verify signatures on
+	 */
+	public EntrySignatureVerifier(int threads) {
+		ThreadFactory daemonThreadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "signature verifier");
+			thread.setDaemon(true);
+			return thread;
+		};
+		// run on the caller when the queue is full, but don't silently drop work after shutdown
+		RejectedExecutionHandler callerRuns = (runnable, executor) -> {
+			if (executor.isShutdown())
+				throw new RejectedExecutionException("signature verifier has been shut down");
+			runnable.run();
+		};
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(QUEUE_CAPACITY), daemonThreadFactory, callerRuns);
+	}
+
+	/**
+	 * Start verifying the signatures of the given entries.
+	 * @param entries the entries to verify
+	 * @return a future that completes with true once every signature has been verified, or with false as soon as
+	 * one is found to be invalid. Entries that have not been checked by then are skipped.
+	 */
+	public CompletableFuture<Boolean> verify(Collection<Entry> entries) {
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		if (entries.isEmpty()) {
+			result.complete(true);
+			return result;
+		}
+
+		AtomicInteger remaining = new AtomicInteger(entries.size());
+		for (Entry e : entries) {
+			if (result.isDone())
+				break;
+			try {
+				executor.execute(() -> {
+					if (result.isDone())
+						return;
+					try {
+						if (!e.testEntryHashSignature())
+							result.complete(false);
+						else if (remaining.decrementAndGet() == 0)
+							result.complete(true);
+					} catch (RuntimeException ex) {
+						result.completeExceptionally(ex);
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				result.completeExceptionally(ex);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Stop the verifier's threads once the batches already submitted have been verified.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
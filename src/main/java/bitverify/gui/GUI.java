@@ -4,7 +4,7 @@ import bitverify.LogEvent;
 import bitverify.LogEventSource;
 import bitverify.Node;
 import bitverify.block.Block;
-import bitverify.crypto.Hash;
+import bitverify.crypto.FileHasher;
 import bitverify.crypto.Identity;
 import bitverify.crypto.KeyDecodingException;
 import bitverify.entries.Entry;
@@ -12,7 +12,6 @@ import bitverify.persistence.DatabaseIterator;
 
 import java.awt.GridLayout;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.SQLException;
@@ -544,8 +543,7 @@ public class GUI extends Application {
 		    	// Try to hash the source file. Display message if failed
 		    	byte [] hash = null;
 				try {
-					FileInputStream inputStream = new FileInputStream(sourceFile);
-					hash = Hash.hashStream(inputStream);
+					hash = FileHasher.hashFile(sourceFile);
 				} catch (IOException e1) {
 					errorText.setFill(Color.RED);
 					errorText.setText(String.format("File '%s' does not exist", docText.getText()));
@@ -921,16 +919,13 @@ public class GUI extends Application {
 	
 	private void updateHashTextAndTable(File selectedFile, Text hashText, ObservableList<Entry> data) {
 		try {
-			FileInputStream inputStream = new FileInputStream(selectedFile);
-			byte [] hash = Hash.hashStream(inputStream);
+			byte [] hash = FileHasher.hashFile(selectedFile);
 			hashText.setText("Hash: " + Base64.toBase64String(hash));
 
 			if (mNode != null) {
 				List<Entry> entries = mNode.getEntrySearchByHash(hash);
 				data.setAll(entries);
 			}
-			
-			inputStream.close();
 		} catch (IOException e1) {
 			hashText.setText(String.format("File '%s' does not exist", selectedFile.getAbsolutePath()));
 			data.clear();
@@ -1004,18 +999,19 @@ public class GUI extends Application {
     	TableColumn<Entry, String> descriptionColumn = getTableColumn("Description", "docDescription");
     	TableColumn<Entry, String> downloadColumn = getTableColumn("Link", "docLink");
     	
-    	// These columns are byte arrays, so we have to do them a little differently
+    	// These columns are byte arrays, so we have to do them a little differently.
+    	// Entries only refer to the receiver's and uploader's keys, so the keys are looked up.
     	TableColumn<Entry, String> receiverColumn = new TableColumn<Entry, String>();
     	receiverColumn.setText("Receiver");
     	receiverColumn.setPrefWidth(75);
     	receiverColumn.setCellValueFactory(
-    		      cellData -> new ReadOnlyStringWrapper(Base64.toBase64String((cellData.getValue().getReceiverID()))));
+    		      cellData -> new ReadOnlyStringWrapper(mNode.getKeyString(cellData.getValue().getReceiverKey(), cellData.getValue().getReceiverID())));
     	
     	TableColumn<Entry, String> uploaderColumn = new TableColumn<Entry, String>();
     	uploaderColumn.setText("Uploader");
     	uploaderColumn.setPrefWidth(75);
     	uploaderColumn.setCellValueFactory(
-    		      cellData -> new ReadOnlyStringWrapper(Base64.toBase64String((cellData.getValue().getUploaderID()))));
+    		      cellData -> new ReadOnlyStringWrapper(mNode.getKeyString(cellData.getValue().getUploaderKey(), cellData.getValue().getUploaderID())));
     	
     	TableColumn<Entry, String> hashColumn = new TableColumn<Entry, String>();
     	hashColumn.setText("Hash");
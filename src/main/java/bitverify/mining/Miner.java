@@ -6,16 +6,26 @@ import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import com.squareup.otto.Bus;
 import com.squareup.otto.Subscribe;
 import com.squareup.otto.ThreadEnforcer;
 
+import bitverify.ExceptionLogEvent;
 import bitverify.LogEvent;
 import bitverify.LogEventSource;
 import bitverify.block.Block;
+import bitverify.block.BlockTemplate;
+import bitverify.block.HeaderHasher;
+import bitverify.network.BlockID;
 import bitverify.network.NewBlockEvent;
 import bitverify.network.NewEntryEvent;
 import bitverify.network.NewMiningProofEvent;
@@ -70,10 +80,28 @@ public class Miner implements Runnable{
 	
 	//Proof of mining (we multiply the success target by the scale)
 	private static int miningProofDifficultyScale = 0x2;	//For actual system use rather than demoing it might be 0x800;
-	private int currentMiningProofTarget;
 	
-	//The block we are currently mining
-	private Block blockMining;
+	//The template we are currently mining, replaced as a whole so that all mining threads abandon it at once
+	private volatile MiningTemplate currentTemplate;
+	
+	//Notified whenever the current template is replaced or mining stops, mining threads with nothing to do wait on it
+	private final Object templateMonitor = new Object();
+	
+	//Set when a new template could not be created, so that the refresh loop tries again instead of leaving the
+	//mining threads waiting on a solved template
+	private volatile boolean templateNeeded;
+	
+	//The number of threads searching for a nonce, each one searching its own share of the nonce space
+	private final int miningThreads;
+	
+	//The unconfirmed entries to go in the next block, new entries are added to it as they arrive
+	private BlockTemplate blockTemplate;
+	
+	//The minimum time, in milliseconds, between switching the mining threads to a block containing newly received entries
+	private volatile long templateRefreshInterval = 1000;
+	
+	//The largest nonce value, the nonce is treated as an unsigned 32 bit value when dividing it between threads
+	private static final long maxNonce = 0xffffffffL;
 	
 	//Constant making calculations easier to read
 	private static final int bitsInByte = 8;
@@ -81,6 +109,15 @@ public class Miner implements Runnable{
 	//Whether to print the current target (when we first start the miner, except when the target is immediately changed)
 	private static boolean printTarget = true;
 	
+	//Targets required of the children of recently seen blocks, so verifying a block's difficulty is usually just a lookup
+	private static final int targetCacheSize = 4096;
+	private static final Map<TargetCacheKey, Integer> targetCache = new LinkedHashMap<TargetCacheKey, Integer>(16, 0.75f, true){
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TargetCacheKey, Integer> eldest){
+			return size() > targetCacheSize;
+		}
+	};
+	
 	/**
      * Constructor for creating a miner, used for creating new blocks
      *
@@ -90,7 +127,23 @@ public class Miner implements Runnable{
      * @throws IOException
      */
 	public Miner(Bus eventBus, DataStore dataStore) throws SQLException, IOException{
+		this(eventBus, dataStore, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+     * Constructor for creating a miner that uses a given number of mining threads
+     *
+     * @param eventBus		instance of the event bus for sending successful blocks/proof of mining 
+     * @param dataStore		instance of the database for the miner
+     * @param miningThreads	the number of threads to search for a valid nonce with
+     * @throws SQLException
+     * @throws IOException
+     */
+	public Miner(Bus eventBus, DataStore dataStore, int miningThreads) throws SQLException, IOException{
+		if (miningThreads < 1)
+			throw new IllegalArgumentException("There must be at least one mining thread");
 		this.dataStore = dataStore;
+		this.miningThreads = miningThreads;
 		
 		//Set up the event bus
 		this.eventBus = eventBus;
@@ -114,6 +167,11 @@ public class Miner implements Runnable{
 		Miner.adjustTargetFrequency = adjustTargetFrequency;
 		Miner.idealMiningTime = idealMiningTime;
 		Miner.miningProofDifficultyScale = miningProofDifficultyScale;
+		
+		//Targets calculated with the old constants no longer apply
+		synchronized (targetCache){
+			targetCache.clear();
+		}
 	}
 	
 	/**
@@ -123,7 +181,7 @@ public class Miner implements Runnable{
      * @return whether the block's hash meets its target
      */
 	public static boolean blockHashMeetDifficulty(Block block){
-		return mineSuccess(Hex.toHexString(block.hashHeader()),block.getTarget());
+		return new Target(block.getTarget()).isMetBy(block.hashHeader());
 	}
 	
 	/**
@@ -136,7 +194,7 @@ public class Miner implements Runnable{
      * @return whether the block's hash meets its proof of mining target
      */
 	public static boolean miningProofMeetDifficulty(Block block){
-		return mineSuccess(Hex.toHexString(block.hashHeader()),calculateMiningProofTarget(block.getTarget()));
+		return new Target(calculateMiningProofTarget(block.getTarget())).isMetBy(block.hashHeader());
 	}
 	
 	/**
@@ -151,8 +209,7 @@ public class Miner implements Runnable{
      * @throws SQLException
      */
 	public static boolean checkBlockDifficulty(DataStore dataStore, Block block, Block parent, Bus eventBus) throws SQLException{
-		//Pass new event bus so output is not displayed in Miner output, since we are verifying not calculating a new target
-		int targetShouldBe = calculatePackedTarget(dataStore, parent, new Bus(ThreadEnforcer.ANY));
+		int targetShouldBe = requiredPackedTarget(dataStore, parent);
 		
 		return targetCorrect(targetShouldBe,block.getTarget());
 	}
@@ -169,12 +226,45 @@ public class Miner implements Runnable{
      * @throws SQLException
      */
 	public static boolean checkMiningProofDifficulty(DataStore dataStore, Block block, Block parent, Bus eventBus) throws SQLException{
-		//Pass new event bus so output is not displayed in Miner output, since we are verifying not calculating a new target
-		int proofTargetShouldBe = calculateMiningProofTarget(calculatePackedTarget(dataStore, parent, new Bus(ThreadEnforcer.ANY)));
+		int proofTargetShouldBe = calculateMiningProofTarget(requiredPackedTarget(dataStore, parent));
 		
 		return targetCorrect(proofTargetShouldBe,block.getTarget());
 	}
 	
+	/**
+     * Find the target that the child of a block must have, from the cache if we have seen the block recently,
+     * and otherwise by calculating it (and caching the result).
+     * 
+     * @param dataStore		instance of the database to use in this static method
+     * @param parent		the parent of the block whose target we want
+     * @return the packed target that the block should have
+     * @throws SQLException
+     */
+	private static int requiredPackedTarget(DataStore dataStore, Block parent) throws SQLException{
+		TargetCacheKey key = new TargetCacheKey(parent);
+		synchronized (targetCache){
+			Integer target = targetCache.get(key);
+			if (target != null) return target;
+		}
+		
+		//Pass new event bus so output is not displayed in Miner output, since we are verifying not calculating a new target
+		int target = calculatePackedTarget(dataStore, parent, new Bus(ThreadEnforcer.ANY));
+		cacheTarget(parent, target);
+		return target;
+	}
+	
+	/**
+     * Remember the target that the child of a block must have
+     * 
+     * @param parent	the parent block
+     * @param target	the packed target its children must have
+     */
+	private static void cacheTarget(Block parent, int target){
+		synchronized (targetCache){
+			targetCache.put(new TargetCacheKey(parent), target);
+		}
+	}
+	
 	
 	/**
      * Determine whether a hash meets the target's difficulty (it is numerically less than the target)
@@ -184,12 +274,18 @@ public class Miner implements Runnable{
      * @return whether the unpacked 256 bit hash is less than the unpacked 256 bit target
      */
 	public static boolean mineSuccess(String hash, int packedT){
-		String target = unpackTarget(packedT);
-		
-		//BigInteger.compareTo returns -1 if this BigInteger is less than the argument BigInteger
-		boolean lessThan = ((new BigInteger(hash,16)).compareTo(new BigInteger(target,16)) == -1);
-		
-		return lessThan;
+		return mineSuccess(Hex.decode(stringFormat(hash)), packedT);
+	}
+	
+	/**
+     * Determine whether a hash meets the target's difficulty (it is numerically less than the target)
+     * 
+     * @param hash		the 32 byte hash we compare against the target
+     * @param packedT	the packed representation of the target
+     * @return whether the 256 bit hash is less than the unpacked 256 bit target
+     */
+	public static boolean mineSuccess(byte[] hash, int packedT){
+		return new Target(packedT).isMetBy(hash);
 	}
 	
 	/**
@@ -200,11 +296,10 @@ public class Miner implements Runnable{
      * @return whether the actual target is less than or equal to what it should be
      */
 	public static boolean targetCorrect(int targetShouldBe, int targetActual){
-		String target = unpackTarget(targetShouldBe);
-		String actual = unpackTarget(targetActual);
+		//Usually the target is exactly the one required
+		if (targetShouldBe == targetActual) return true;
 		
-		//BigInteger.compareTo returns -1 if this BigInteger is less than the argument BigInteger
-		int comparison = (new BigInteger(actual,16)).compareTo(new BigInteger(target,16));
+		int comparison = new Target(targetActual).compareTo(new Target(targetShouldBe));
 		
 		//The target must be less than or equal to required target
 		if ((comparison == -1) || (comparison == 0)){
@@ -216,72 +311,91 @@ public class Miner implements Runnable{
 	}
 	
 	/**
-     * Perform mining in a separate thread, we repeatedly incrementing the block's nonce and check its hash
+     * Perform mining in a separate thread. The nonce space is divided between 'miningThreads' worker threads,
+     * and this method blocks until mining is stopped.
      */
 	@Override
 	public void run(){
-		String result;
-		
 		mining = true;
 		
-		try {
-			//every time the miner is started, start mining on a new block
-			//this also checks for unconfirmed entries to be placed in the block
-			newMiningBlock();
-		} catch (IOException e){
-			e.printStackTrace();
-		} catch (SQLException e) {
-			e.printStackTrace();
+		//every time the miner is started, start mining on a new block
+		//this also checks for unconfirmed entries to be placed in the block
+		replaceTemplate();
+		
+		//Daemon threads, so that the application can exit without stopping the miner first
+		ExecutorService workers = Executors.newFixedThreadPool(miningThreads, runnable -> {
+			Thread thread = new Thread(runnable, "miner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i=0; i<miningThreads; i++){
+			workers.execute(new MiningWorker(i));
 		}
+		workers.shutdown();
 		
-		while (mining){
-			try{
-				result = Hex.toHexString(blockMining.hashHeader());
-				//Successful mine
-				if (mineSuccess(result, blockMining.getTarget())){
-					//Check subchain vailidity, before fully accepting the mined block
-					//This ensures that honest workers don't corrupt their chain with e.g. bad timestamps
-					int subchainLength = Block.TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS;
-					List<Block> subchain = dataStore.getNMostRecentBlocks(subchainLength);
-					Collections.reverse(subchain); //we want the "oldest" block to be at index 0
-					subchain.add(blockMining);
-					boolean subchainIsValid = Block.verifyChain(subchain, null);
-					
-					if (subchainIsValid){
-						Block successfulBlock = blockMining;
-						eventBus.post(new LogEvent("Successful block mine",LogEventSource.MINING,Level.INFO));
-						eventBus.post(new LogEvent("Block Hash:		"+result,LogEventSource.MINING,Level.INFO));
-						eventBus.post(new LogEvent("Block id:	  	"+ Base64.getEncoder().encodeToString(successfulBlock.getBlockID()),LogEventSource.MINING,Level.INFO));
-						//Add the successful block to the blockchain (the database will ensure the entries in it are no longer unconfirmed)
-						dataStore.insertBlock(successfulBlock);
-						//Pass successful block to application logic for broadcasting to the network
-						eventBus.post(new BlockFoundEvent(successfulBlock));
-					} else {
-						eventBus.post(new LogEvent("Block was almost mined - but subchain validity test FAILED",LogEventSource.MINING,Level.INFO));
-						eventBus.post(new LogEvent("Are you trying to cheat the system?",LogEventSource.MINING,Level.INFO));
-						eventBus.post(new LogEvent("Recreating MiningBlock... maybe this solves the inconsistency",LogEventSource.MINING,Level.INFO));
-					}
-					newMiningBlock();
-				}
-				//Proof of mining
-				else if (mineSuccess(result, currentMiningProofTarget)){
-					//Application logic must broadcast to peers
-					//Must maintain a list of peers in database that have received proof from
-					//Reject incoming entries from public IPs not from the list
-					eventBus.post(new NewMiningProofEvent(blockMining));
-					//eventBus.post(new LogEvent("Successful proof of mining",LogEventSource.MINING,Level.INFO));
-					//eventBus.post(new LogEvent("Proof Block Hash:	"+result,LogEventSource.MINING,Level.INFO));
-				}
-				
-				//Increment the header's nonce to generate a new hash
-				blockMining.incrementNonce();
-				}
-			catch (SQLException e){
-				e.printStackTrace();
+		try {
+			//While the workers run, pick up any newly received entries at most once every refresh interval
+			while (!workers.awaitTermination(templateRefreshInterval, TimeUnit.MILLISECONDS)){
+				if (templateNeeded)
+					replaceTemplate();
+				else
+					refreshMiningBlock();
 			}
-			catch (IOException e){
-				e.printStackTrace();
+		} catch (InterruptedException e) {
+			stopMining();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+     * Handle a block found by one of the mining threads. Only the first thread to solve a template gets here.
+     * This does not hold the miner's lock, so new entries can still be received while the block is stored and announced.
+     * 
+     * @param blockMined	the block whose hash meets its target
+     * @throws SQLException
+     * @throws IOException
+     */
+	private void blockFound(Block blockMined) throws SQLException, IOException{
+		try {
+			//Check subchain vailidity, before fully accepting the mined block
+			//This ensures that honest workers don't corrupt their chain with e.g. bad timestamps
+			int subchainLength = Block.TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS;
+			List<Block> subchain = dataStore.getNMostRecentBlockHeaders(subchainLength);
+			Collections.reverse(subchain); //we want the "oldest" block to be at index 0
+			subchain.add(blockMined);
+			boolean subchainIsValid = Block.verifyChain(subchain, null);
+			
+			if (subchainIsValid){
+				eventBus.post(new LogEvent("Successful block mine",LogEventSource.MINING,Level.INFO));
+				eventBus.post(new LogEvent("Block Hash:		"+Hex.toHexString(blockMined.hashHeader()),LogEventSource.MINING,Level.INFO));
+				eventBus.post(new LogEvent("Block id:	  	"+ Base64.getEncoder().encodeToString(blockMined.getBlockID()),LogEventSource.MINING,Level.INFO));
+				//Add the successful block to the blockchain (the database will ensure the entries in it are no longer unconfirmed)
+				dataStore.insertBlock(blockMined);
+				//Pass successful block to application logic for broadcasting to the network
+				eventBus.post(new BlockFoundEvent(blockMined));
+			} else {
+				eventBus.post(new LogEvent("Block was almost mined - but subchain validity test FAILED",LogEventSource.MINING,Level.INFO));
+				eventBus.post(new LogEvent("Are you trying to cheat the system?",LogEventSource.MINING,Level.INFO));
+				eventBus.post(new LogEvent("Recreating MiningBlock... maybe this solves the inconsistency",LogEventSource.MINING,Level.INFO));
 			}
+		} finally {
+			//Always move every thread on to a new block, even if storing this one failed
+			replaceTemplate();
+		}
+	}
+	
+	/**
+     * Start mining a new block on the end of the chain. If it can't be created, the mining threads keep waiting
+     * and run() tries again after the next template refresh interval.
+     */
+	private void replaceTemplate(){
+		try {
+			newMiningBlock();
+			templateNeeded = false;
+		} catch (SQLException | IOException | RuntimeException e){
+			templateNeeded = true;
+			eventBus.post(new ExceptionLogEvent("Could not create a new block to mine, will try again",
+					LogEventSource.MINING, Level.WARNING, e));
 		}
 	}
 	
@@ -289,19 +403,53 @@ public class Miner implements Runnable{
      * Create a new mining block with the specified entries.
      * We calculate its target by looking at the blockchain and associate it with the block at the end of the chain.
      * The timestamp is also assigned.
+     * The unconfirmed entries are reloaded from the database, since the chain may have confirmed some of them.
+     * Replacing the current template makes every mining thread abandon the previous block.
      * 
      * @throws SQLException
      * @throws IOException
      */
-	public void newMiningBlock() throws SQLException, IOException{
+	public synchronized void newMiningBlock() throws SQLException, IOException{
 		Block mostRecentBlock = dataStore.getMostRecentBlock();
 		//Create the next block to mine, passing the most recently mined block
 		int target = calculatePackedTarget(dataStore, mostRecentBlock, eventBus);
+		cacheTarget(mostRecentBlock, target);
 		
 		//Keep track of the current proof of mining target (instead of storing it in the block)
-		this.currentMiningProofTarget = Miner.calculateMiningProofTarget(target);
+		int miningProofTarget = Miner.calculateMiningProofTarget(target);
 
-		blockMining = new Block(mostRecentBlock, System.currentTimeMillis(),target, 0, dataStore.getUnconfirmedEntries());
+		blockTemplate = new BlockTemplate(dataStore.getUnconfirmedEntries());
+		Block blockMining = blockTemplate.createBlock(mostRecentBlock.hashHeader(), System.currentTimeMillis(), target);
+		setCurrentTemplate(new MiningTemplate(blockMining, miningProofTarget));
+	}
+	
+	/**
+     * Switch the mining threads to a block with the same parent and target as the current one,
+     * but containing any entries received since it was created. Does nothing if there are no new entries,
+     * or if the current block has been solved (it is being stored and a block with a new parent will follow).
+     */
+	private synchronized void refreshMiningBlock(){
+		MiningTemplate template = currentTemplate;
+		if (template == null || template.solved.get() || blockTemplate == null || !blockTemplate.hasChanged())
+			return;
+		
+		int target = template.block.getTarget();
+		Block blockMining = blockTemplate.createBlock(template.block.getPrevBlockHash(), System.currentTimeMillis(), target);
+		setCurrentTemplate(new MiningTemplate(blockMining, Miner.calculateMiningProofTarget(target)));
+		eventBus.post(new LogEvent("Mining block updated, it now has "+blockTemplate.size()+" entries",LogEventSource.MINING,Level.INFO));
+	}
+	
+	/**
+     * Set the minimum time between switching to a block containing newly received entries.
+     * New entries are added to the next block straight away, but restarting the nonce search for every entry would
+     * waste the work done on the current block.
+     * 
+     * @param millis	the interval in milliseconds
+     */
+	public void setTemplateRefreshInterval(long millis){
+		if (millis < 1)
+			throw new IllegalArgumentException("The refresh interval must be positive");
+		templateRefreshInterval = millis;
 	}
 	
 	/**
@@ -309,20 +457,54 @@ public class Miner implements Runnable{
      */
 	public void stopMining(){
 		mining = false;
+		synchronized (templateMonitor){
+			templateMonitor.notifyAll();
+		}
 	}
 	
 	/**
-     * Subscribe to new entry events on bus. We create a new block to mine with the new entry.
+     * Replace the template the mining threads are working on, waking any threads waiting for a new one.
+     * 
+     * @param template	the template to mine next
+     */
+	private void setCurrentTemplate(MiningTemplate template){
+		synchronized (templateMonitor){
+			currentTemplate = template;
+			templateMonitor.notifyAll();
+		}
+	}
+	
+	/**
+     * Wait until the current template is no longer the given one, or mining stops.
+     * 
+     * @param template	the template the calling thread has finished with
+     */
+	private void awaitNewTemplate(MiningTemplate template){
+		synchronized (templateMonitor){
+			while (mining && currentTemplate == template){
+				try {
+					templateMonitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+     * Subscribe to new entry events on bus. We add the new entry to the next block to mine,
+     * the mining threads switch to it within the template refresh interval.
      * 
      *  @param e	the event that is created when a entry has been received
-     *  @throws SQLException
-     * 	@throws IOException
      */
     @Subscribe
-    public void onNewEntryEvent(NewEntryEvent e) throws IOException, SQLException {
-    	//Add entry from pool to block we are mining (by creating a new block)
+    public synchronized void onNewEntryEvent(NewEntryEvent e) {
+    	//Add entry from pool to block we are mining
     	eventBus.post(new LogEvent("Miner detected new entry in unconfirmed pool",LogEventSource.MINING,Level.INFO));
-    	newMiningBlock();
+    	//If we have not started mining yet, the entry will be loaded from the database when we do
+    	if (blockTemplate != null)
+    		blockTemplate.addEntry(e.getNewEntry());
     }
     
     /**
@@ -427,7 +609,7 @@ public class Miner implements Runnable{
 		// e.g. we don't want to calculate times b1 to b3, then b4 to b6, as the b3 to b4 time is a security risk
 		// (since the block chain no longer ensures subsequent blocks have later time stamps)
 		if (((blocksCount + 1) % (adjustTargetFrequency + 1) == 1) && (blocksCount > 1)) {
-			List<Block> nMostRecent = ds.getNMostRecentBlocks(adjustTargetFrequency + 2, block);
+			List<Block> nMostRecent = ds.getNMostRecentBlockHeaders(adjustTargetFrequency + 2, block);
 			
 			//We require that the timestamp for n blocks ago is earlier than the most recent
 			long mostRecentTime = nMostRecent.get(0).getTimeStamp();
@@ -511,4 +693,124 @@ public class Miner implements Runnable{
 		return s;
 	}
 	
+	/**
+     * Key for the target cache. The height is included as well as the block ID, since the target calculation depends on it.
+     */
+	private static final class TargetCacheKey {
+		private final BlockID blockID;
+		private final long height;
+		
+		private TargetCacheKey(Block block){
+			this.blockID = new BlockID(block.getBlockID());
+			this.height = block.getHeight();
+		}
+		
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof TargetCacheKey)) return false;
+			TargetCacheKey other = (TargetCacheKey) o;
+			return height == other.height && blockID.equals(other.blockID);
+		}
+		
+		@Override
+		public int hashCode(){
+			return 31 * blockID.hashCode() + Long.hashCode(height);
+		}
+	}
+	
+	/**
+     * A block to mine together with its unpacked success and proof of mining targets.
+     * The first mining thread to solve the template claims it, so only one winning block is ever reported for it.
+     */
+	private static class MiningTemplate {
+		private final Block block;
+		private final Target blockTarget;
+		private final Target miningProofTarget;
+		private final AtomicBoolean solved = new AtomicBoolean(false);
+		
+		private MiningTemplate(Block block, int miningProofTarget){
+			this.block = block;
+			this.blockTarget = new Target(block.getTarget());
+			this.miningProofTarget = new Target(miningProofTarget);
+		}
+	}
+	
+	/**
+     * Searches the nonces offset, offset + miningThreads, offset + 2 * miningThreads, ... of the current template
+     * using its own copy of the block header. Once its share of the nonce space is exhausted the timestamp is updated
+     * and the search starts again. Once the template has been solved the worker waits for the next one.
+     */
+	private class MiningWorker implements Runnable {
+		private final int offset;
+		
+		private MiningWorker(int offset){
+			this.offset = offset;
+		}
+		
+		@Override
+		public void run(){
+			byte[] result;
+			
+			while (mining && !Thread.currentThread().isInterrupted()){
+				MiningTemplate template = currentTemplate;
+				//Another thread found this block (or there is no block yet), there is nothing to search until it is replaced
+				if (template == null || template.solved.get()){
+					awaitNewTemplate(template);
+					continue;
+				}
+				Block header = template.block.copy();
+				//Hashes the header from the precomputed midstate, without allocating
+				HeaderHasher hasher = new HeaderHasher(header);
+				long nonce = offset;
+				
+				//Stop as soon as the template is replaced (a block was found here or elsewhere, or there is a new entry)
+				while (mining && template == currentTemplate){
+					try{
+						result = hasher.hash((int) nonce);
+						//Successful mine
+						if (template.blockTarget.isMetBy(result)){
+							//Only the first thread to solve this template reports its block
+							if (template.solved.compareAndSet(false, true)){
+								header.setNonce((int) nonce);
+								blockFound(header);
+							}
+							break;
+						}
+						//Proof of mining
+						else if (template.miningProofTarget.isMetBy(result)){
+							//Application logic must broadcast to peers
+							//Must maintain a list of peers in database that have received proof from
+							//Reject incoming entries from public IPs not from the list
+							header.setNonce((int) nonce);
+							eventBus.post(new NewMiningProofEvent(header.copy()));
+						}
+						
+						//Move to our next nonce to generate a new hash
+						nonce += miningThreads;
+						if (nonce > maxNonce){
+							//If we have mined all our nonce values without a successful mine, update the timestamp and try again
+							long timeStamp = System.currentTimeMillis();
+							header.setTimeStamp(timeStamp);
+							hasher.setTimeStamp(timeStamp);
+							nonce = offset;
+						}
+					}
+					catch (SQLException e){
+						e.printStackTrace();
+					}
+					catch (IOException e){
+						e.printStackTrace();
+					}
+					catch (RuntimeException e){
+						//Keep this thread alive, but don't spin on a template it can't mine: wait for the next one
+						eventBus.post(new ExceptionLogEvent("Unexpected exception while mining",
+								LogEventSource.MINING, Level.SEVERE, e));
+						awaitNewTemplate(template);
+						break;
+					}
+				}
+			}
+		}
+	}
+	
 }
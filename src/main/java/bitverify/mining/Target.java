@@ -0,0 +1,81 @@
+package bitverify.mining;
+
+import java.util.Arrays;
+
+import bitverify.crypto.Hash;
+
+/**
+ * An unpacked 256 bit mining target, stored as 32 big-endian bytes so that hashes can be compared
+ * against it directly without building hex strings or BigIntegers.
+ *
+ * Unpacking follows Miner.unpackTarget: the packed form 0xeemmmmmm represents m * 2 ^ (8 * (e - 3)),
+ * targets above 0x20ffffff are treated as 0x20ffffff, and any bits shifted below the lowest byte are lost.
+ */
+public final class Target implements Comparable<Target> {
+
+	private static final int maxPackedTarget = 0x20ffffff;
+	private static final int sizeMantissa = 3;
+
+	private final byte[] target = new byte[Hash.HASH_LENGTH];
+
+	/**
+     * Unpack a target from its packed representation
+     *
+     * @param packedTarget	the packed representation of the target
+     */
+	public Target(int packedTarget){
+		if (packedTarget > maxPackedTarget) packedTarget = maxPackedTarget;
+
+		int exponent = packedTarget >> 24;
+		//The mantissa bytes (most significant first) end up exponent-1, exponent-2 and exponent-3 bytes from the least significant end
+		for (int i=0; i<sizeMantissa; i++){
+			int bytesFromEnd = exponent - 1 - i;
+			if (bytesFromEnd >= 0 && bytesFromEnd < target.length){
+				target[target.length - 1 - bytesFromEnd] = (byte) (packedTarget >>> (8 * (sizeMantissa - 1 - i)));
+			}
+		}
+	}
+
+	/**
+     * Determine whether a hash meets this target (it is numerically less than the target)
+     *
+     * @param hash	the 32 byte hash, most significant byte first
+     * @return whether the hash is less than the target
+     */
+	public boolean isMetBy(byte[] hash){
+		for (int i=0; i<target.length; i++){
+			int h = hash[i] & 0xff;
+			int t = target[i] & 0xff;
+			if (h != t) return h < t;
+		}
+		//Equal to the target
+		return false;
+	}
+
+	/**
+     * @return the 32 byte big-endian representation of the target
+     */
+	public byte[] toByteArray(){
+		return target.clone();
+	}
+
+	@Override
+	public int compareTo(Target other){
+		for (int i=0; i<target.length; i++){
+			int a = target[i] & 0xff;
+			int b = other.target[i] & 0xff;
+			if (a != b) return a < b ? -1 : 1;
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		return o instanceof Target && compareTo((Target) o) == 0;
+	}
+
+	@Override
+	public int hashCode(){
+		return Arrays.hashCode(target);
+	}
+}
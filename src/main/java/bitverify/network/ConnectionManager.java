@@ -12,7 +12,9 @@ import bitverify.ExceptionLogEvent;
 import bitverify.LogEvent;
 import bitverify.LogEventSource;
 import bitverify.block.Block;
+import bitverify.block.ChainVerifier;
 import bitverify.entries.Entry;
+import bitverify.entries.EntrySignatureVerifier;
 import bitverify.mining.Miner;
 import bitverify.network.proto.MessageProto.BlockMessage;
 import bitverify.persistence.DataStore;
@@ -426,6 +428,7 @@ public class ConnectionManager {
         //
         private final BlocksInFlightCounter blocksInFlightCounter = new BlocksInFlightCounter();
         private final Object insertBlockMonitor = new Object();
+        private final EntrySignatureVerifier signatureVerifier = new EntrySignatureVerifier();
 
         public BlockProtocol() {
             bus.register(this);
@@ -495,9 +498,11 @@ public class ConnectionManager {
         private boolean blockDownload(PeerHandler peer, boolean distribute) {
             try {
                 List<byte[]> fromBlockIDs = dataStore.getActiveBlocksSample(MAX_HEADERS);
+                // carries the chain verified so far from one headers reply to the next, so each header is only checked once
+                ChainVerifier verifier = null;
                 while (true) {
                     log("sending get headers message", Level.FINE);
-                    HeadersFuture h = new HeadersFuture(peer, fromBlockIDs, bus);
+                    HeadersFuture h = new HeadersFuture(peer, fromBlockIDs, verifier, bus);
                     h.run();
                     List<Block> receivedHeaders;
                     try {
@@ -524,18 +529,30 @@ public class ConnectionManager {
                         return true;
                     } else {
                         log("received headers reply with " + receivedHeaders.size() + " headers", Level.FINE);
-                        byte[] firstPredecessorID = receivedHeaders.get(0).getPrevBlockHash();
-                        // first header must follow some older block we have on our primary chain
-                        Block firstPredecessor = dataStore.getBlock(firstPredecessorID);
-                        if (firstPredecessor == null) {
-                            log("received headers were not accepted because we don't have the previous block. Choosing a new peer.", Level.FINE);
-                            return false;
-                        }
-                        if (!firstPredecessor.isActive()) {
-                            log("received headers were not accepted because the previous block is not active. Choosing a new peer.", Level.FINE);
-                            return false;
+                        boolean chainValid;
+                        if (verifier == null) {
+                            byte[] firstPredecessorID = receivedHeaders.get(0).getPrevBlockHash();
+                            // first header must follow some older block we have on our primary chain
+                            Block firstPredecessor = dataStore.getBlockHeader(firstPredecessorID);
+                            if (firstPredecessor == null) {
+                                log("received headers were not accepted because we don't have the previous block. Choosing a new peer.", Level.FINE);
+                                return false;
+                            }
+                            if (!firstPredecessor.isActive()) {
+                                log("received headers were not accepted because the previous block is not active. Choosing a new peer.", Level.FINE);
+                                return false;
+                            }
+                            verifier = new ChainVerifier(firstPredecessor, firstPredecessorID, bus);
+                            for (Block b : receivedHeaders) {
+                                if (!verifier.add(b))
+                                    break;
+                            }
+                            chainValid = verifier.isValid();
+                        } else {
+                            // later replies were verified against the chain so far as they were received
+                            chainValid = h.isChainValid();
                         }
-                        if (!Block.verifyChain(receivedHeaders, bus)) {
+                        if (!chainValid) {
                             // choose a new peer and try again
                             log("received headers were not accepted because the chain was invalid. Choosing a new peer.", Level.FINE);
                             return false;
@@ -663,6 +680,9 @@ public class ConnectionManager {
 
             byte[] blockBytes = message.getBlockBytes().toByteArray();
 
+            boolean shouldDecrementBlocksInFlight = false;
+            // once receiveBlock is on its way, it is the one to decrement blocksInFlightCounter
+            boolean blockHandedOver = false;
             try {
                 // deserialize block
                 Block block = Block.deserialize(blockBytes);
@@ -671,7 +691,6 @@ public class ConnectionManager {
 
                 // see if we requested this block from this peer
                 boolean blockWasExpected = peer.getBlocksInFlight().remove(new BlockID(block.getBlockID()));
-                boolean shouldDecrementBlocksInFlight = false;
                 if (blockWasExpected) {
                     log("there are now " + peer.getBlocksInFlight().size() + " blocks in flight from peer " + peer.getPeerAddress(), Level.FINER);
                     log("timer restarted - in flight block received from peer " + peer.getPeerAddress(), Level.FINE);
@@ -699,10 +718,10 @@ public class ConnectionManager {
                 for (ByteString string : entryBytesList) {
                     entryList.add(Entry.deserialize(string.toByteArray()));
                 }
-
                 log("Block " + new BlockID(block.getBlockID()) + " was received with " + entryList.size() + " entries; entry hash is " + Base64.getEncoder().encodeToString(block.getEntriesHash()), Level.FINER);
 
-                // check entries are valid
+                // check entries are valid. The entries hash covers the key references, so a peer can't make us
+                // ask it for keys of entries that aren't the block's
                 if (!block.setEntriesList(entryList)) {
                     log("block was rejected because entries hash didn't match block header field; ID " + new BlockID(block.getBlockID()), Level.FINE);
                     bus.post(new LogEvent("entries hash comparison failed for block " + new BlockID(block.getBlockID())
@@ -713,10 +732,64 @@ public class ConnectionManager {
                     return;
                 }
 
+                // entries refer to their uploaders' keys, which we may have to ask the peer for.
+                // Carry on once we have them, rather than holding an executor thread while the peer replies
+                final boolean decrementBlocksInFlight = shouldDecrementBlocksInFlight;
+                peer.resolveUploaderKeys(entryList).whenComplete((resolved, error) -> {
+                    if (error != null || !resolved) {
+                        try {
+                            if (error != null)
+                                log("the keys of block " + new BlockID(block.getBlockID()) + "'s uploaders could not be resolved", Level.WARNING, error);
+                            else
+                                log("block was rejected because the keys of its entries' uploaders could not be found; ID " + new BlockID(block.getBlockID()), Level.FINE);
+                        } finally {
+                            if (decrementBlocksInFlight)
+                                blocksInFlightCounter.decrement();
+                        }
+                        return;
+                    }
+                    try {
+                        receiveBlock(peer, block, entryList, blockWasExpected, decrementBlocksInFlight);
+                    } catch (SQLException | RuntimeException ex) {
+                        log("Exception while processing a received block: " + ex.getMessage(), Level.SEVERE, ex);
+                    }
+                });
+                blockHandedOver = true;
+            } catch (IOException ioe) {
+                // error in the serialised block or entries received, so discard the block.
+                log("block was rejected because of an error deserializing it: " + ioe, Level.FINE);
+            } finally {
+                if (!blockHandedOver && shouldDecrementBlocksInFlight)
+                    blocksInFlightCounter.decrement();
+            }
+        }
+
+        /**
+         * Verify a block whose entries match its header and whose entries' uploader keys are all known,
+         * and store it (or keep it as an orphan) if it is valid.
+         */
+        private void receiveBlock(PeerHandler peer, Block block, List<Entry> entryList, boolean blockWasExpected,
+                                  boolean shouldDecrementBlocksInFlight) throws SQLException {
+            try {
+                // only verify the signatures once the entries are known to be the block's, so a peer can't make us
+                // verify entries that were never mined. Entries we already received on their own were verified then,
+                // so only the new ones cost anything. Wait outside insertBlockMonitor, so other blocks can be inserted meanwhile
+                boolean signaturesValid;
+                try {
+                    signaturesValid = signatureVerifier.verify(entryList).join();
+                } catch (CompletionException ex) {
+                    log("the signatures of block " + new BlockID(block.getBlockID()) + " could not be verified", Level.WARNING, ex);
+                    signaturesValid = false;
+                }
+                if (!signaturesValid) {
+                    log("block was rejected because an entry had an invalid signature; ID " + new BlockID(block.getBlockID()), Level.FINE);
+                    return;
+                }
+
                 // synchronize here because otherwise an orphan's parent may be inserted between the call to getBlock and the orphanBlocks.put operation.
                 synchronized (insertBlockMonitor) {
                     // get the parent block
-                    Block parent = dataStore.getBlock(block.getPrevBlockHash());
+                    Block parent = dataStore.getBlockHeader(block.getPrevBlockHash());
                     if (parent == null) {
                         log("block is an orphan and therefore wasn't added to database; ID " + new BlockID(block.getBlockID()), Level.FINE);
                         // keep block in memory and try to store it once its parent has been downloaded.
@@ -776,14 +849,12 @@ public class ConnectionManager {
 
                     }
                 }
+            } finally {
+                // however the block turned out, the download it was part of has moved on
                 if (shouldDecrementBlocksInFlight)
                     blocksInFlightCounter.decrement();
 
                 log("total blocks in flight: " + blocksInFlightCounter.get(), Level.FINE);
-
-            } catch (IOException ioe) {
-                // error in the serialised block or entries received, so discard the block.
-                log("block was rejected because of an error deserializing it: " + ioe, Level.FINE);
             }
         }
 
@@ -3,6 +3,7 @@ package bitverify.network;
 import bitverify.LogEvent;
 import bitverify.LogEventSource;
 import bitverify.block.Block;
+import bitverify.block.ChainVerifier;
 import bitverify.network.proto.MessageProto.*;
 import com.google.protobuf.ByteString;
 import com.j256.ormlite.logger.Log;
@@ -20,15 +21,27 @@ import java.util.logging.Level;
 
 /**
  * Handles sending a single request for headers to a peer, then awaiting the response.
+ * If given a ChainVerifier, the headers are verified as they are deserialized, continuing the chain it has verified so far.
  */
 public class HeadersFuture extends ProtocolFuture<List<Block>> {
     private final PeerHandler peer;
     private final List<byte[]> fromBlockIDs;
+    private final ChainVerifier verifier;
+    private volatile boolean chainValid = true;
 
     public HeadersFuture(PeerHandler peer, List<byte[]> fromBlockIDs, Bus bus) {
+        this(peer, fromBlockIDs, null, bus);
+    }
+
+    /**
+     * @param verifier the verifier for the chain received so far, which the headers received should continue, or null
+     *                 to not verify the headers
+     */
+    public HeadersFuture(PeerHandler peer, List<byte[]> fromBlockIDs, ChainVerifier verifier, Bus bus) {
         super(bus);
         this.peer = peer;
         this.fromBlockIDs = fromBlockIDs;
+        this.verifier = verifier;
     }
 
     @Override
@@ -66,8 +79,15 @@ public class HeadersFuture extends ProtocolFuture<List<Block>> {
         List<Block> headers = new ArrayList<>(serializedHeaders.size());
 
         try {
-            for (ByteString bytes : serializedHeaders)
-                headers.add(Block.deserialize(bytes.toByteArray()));
+            for (ByteString bytes : serializedHeaders) {
+                Block header = Block.deserialize(bytes.toByteArray());
+                // no point reading the rest once the chain is broken
+                if (verifier != null && !verifier.add(header)) {
+                    chainValid = false;
+                    break;
+                }
+                headers.add(header);
+            }
             result = headers;
         } catch (IOException ex) {
             // a header was invalidly formatted, we will discard the sequence and re-request from another peer
@@ -76,5 +96,11 @@ public class HeadersFuture extends ProtocolFuture<List<Block>> {
         // notify that we got a response (even if it was rubbish)
         resultLatch.countDown();
     }
-}
 
+    /**
+     * @return false if a ChainVerifier was given and the headers received did not continue its chain validly
+     */
+    public boolean isChainValid() {
+        return chainValid;
+    }
+}
@@ -0,0 +1,104 @@
+package bitverify.network;
+
+import bitverify.crypto.Asymmetric;
+import bitverify.network.proto.MessageProto.*;
+import com.google.protobuf.ByteString;
+import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles sending a single request for public keys to a peer, then awaiting the response.
+ * The result is the keys the peer sent that we asked for; the peer may not have all of them.
+ * The reply can also be awaited without holding a thread, see request.
+ */
+public class KeysFuture extends ProtocolFuture<List<byte[]>> {
+    // completes requests that time out. Daemon, so that it doesn't keep the application running.
+    private static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "keys-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PeerHandler peer;
+    private final Set<ByteBuffer> keyReferences = new HashSet<>();
+    private final CompletableFuture<List<byte[]>> reply = new CompletableFuture<>();
+
+    public KeysFuture(PeerHandler peer, List<byte[]> keyReferences, Bus bus) {
+        super(bus);
+        this.peer = peer;
+        for (byte[] ref : keyReferences)
+            this.keyReferences.add(ByteBuffer.wrap(ref));
+    }
+
+    @Override
+    public void run() {
+        GetKeysMessage.Builder getKeysMessageBuilder = GetKeysMessage.newBuilder();
+        for (ByteBuffer ref : keyReferences)
+            getKeysMessageBuilder.addKeyReferences(ByteString.copyFrom(ref.array()));
+
+        Message m = Message.newBuilder()
+                .setType(Message.Type.GET_KEYS)
+                .setGetKeys(getKeysMessageBuilder.build())
+                .build();
+
+        // if peer is shut down, return null straight away
+        bus.register(this);
+        if (!peer.send(m))
+            complete(null);
+    }
+
+    /**
+     * Send the request, without waiting for the reply.
+     * @return a future completed with the keys the peer sent that we asked for, or with null if the peer is shut down
+     * or doesn't reply in time
+     */
+    public CompletableFuture<List<byte[]>> request(long timeout, TimeUnit unit) {
+        run();
+        ScheduledFuture<?> timer = timeouts.schedule(() -> complete(null), timeout, unit);
+        return reply.whenComplete((keys, ex) -> timer.cancel(false));
+    }
+
+    // the reply, a timeout and a failure to send may race, only the first of them counts
+    private void complete(List<byte[]> keys) {
+        if (reply.complete(keys)) {
+            bus.unregister(this);
+            result = keys;
+            resultLatch.countDown();
+        }
+    }
+
+    @Subscribe
+    public void onKeysMessage(KeysMessageEvent e) {
+        if (e.getPeer() != peer)
+            return;
+
+        List<byte[]> keys = new ArrayList<>();
+        boolean emptyReply = e.getKeysMessage().getKeysCount() == 0;
+        for (ByteString bytes : e.getKeysMessage().getKeysList()) {
+            byte[] key = bytes.toByteArray();
+            try {
+                if (keyReferences.contains(ByteBuffer.wrap(Asymmetric.getKeyReference(key))))
+                    keys.add(key);
+            } catch (IllegalArgumentException ex) {
+                // not a public key, so not one we asked for
+            }
+        }
+        // a reply with only other keys is for another request to the same peer
+        if (keys.isEmpty() && !emptyReply)
+            return;
+
+        // deregister now we've got our response
+        complete(keys);
+    }
+}
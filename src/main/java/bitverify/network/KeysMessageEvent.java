@@ -0,0 +1,22 @@
+package bitverify.network;
+
+import bitverify.network.proto.MessageProto;
+
+public class KeysMessageEvent {
+
+    private final MessageProto.KeysMessage keysMessage;
+    private final PeerHandler peer;
+
+    public KeysMessageEvent(MessageProto.KeysMessage m, PeerHandler peer) {
+        keysMessage = m;
+        this.peer = peer;
+    }
+
+    public MessageProto.KeysMessage getKeysMessage() {
+        return keysMessage;
+    }
+
+    public PeerHandler getPeer() {
+        return peer;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
@@ -14,11 +15,13 @@ import bitverify.ExceptionLogEvent;
 import bitverify.LogEvent;
 import bitverify.LogEventSource;
 import bitverify.block.Block;
+import bitverify.crypto.Asymmetric;
 import bitverify.entries.Entry;
 import bitverify.network.proto.MessageProto;
 import bitverify.network.proto.MessageProto.*;
 import bitverify.persistence.DataStore;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.squareup.otto.Bus;
 
 
@@ -42,6 +45,9 @@ public class PeerHandler {
     private static final int MAX_SIMULTANEOUS_BLOCKS_PER_PEER = 20;
     private static final int BLOCK_TIMEOUT_SECONDS = 10;
     private static final int SETUP_TIMEOUT_SECONDS = 10;
+    private static final int KEYS_TIMEOUT_SECONDS = 10;
+    // at most how many keys to send in reply to a GetKeys message
+    private static final int MAX_KEYS_PER_MESSAGE = 1000;
 
     private ArrayBlockingQueue<BlockID> blocksInFlight = new ArrayBlockingQueue<>(MAX_SIMULTANEOUS_BLOCKS_PER_PEER);
     private RestartableTimer blockTimer;
@@ -247,6 +253,72 @@ public class PeerHandler {
     }
 
 
+    /**
+     * Looks up the uploader keys of entries that only have references to them, first in our key dictionary and then by
+     * asking this peer. Keys that the peer sends are added to the dictionary. Doesn't wait for the peer to reply: the
+     * result is completed on the executor once it does, or once the request times out.
+     * @param entries the entries, which are given the keys found
+     * @return a future completed with true if every entry's uploader key is now known
+     * @throws SQLException
+     */
+    CompletableFuture<Boolean> resolveUploaderKeys(List<Entry> entries) throws SQLException {
+        Map<ByteBuffer, List<Entry>> missing = new HashMap<>();
+        for (Entry e : entries) {
+            if (e.getUploaderKey() == null)
+                missing.computeIfAbsent(ByteBuffer.wrap(e.getUploaderID()), k -> new ArrayList<>()).add(e);
+        }
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(true);
+
+        List<byte[]> references = new ArrayList<>(missing.size());
+        for (ByteBuffer ref : missing.keySet())
+            references.add(ref.array());
+        for (byte[] key : dataStore.getKeys(references)) {
+            List<Entry> waiting = missing.remove(ByteBuffer.wrap(Asymmetric.getKeyReference(key)));
+            if (waiting != null) {
+                for (Entry e : waiting)
+                    e.setUploaderKey(key);
+            }
+        }
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(true);
+
+        references.clear();
+        for (ByteBuffer ref : missing.keySet())
+            references.add(ref.array());
+        log("asking peer " + peerAddress + " for " + references.size() + " keys", Level.FINE);
+        // the peer replies with at most MAX_KEYS_PER_MESSAGE keys, so ask for them in requests no bigger than that
+        List<CompletableFuture<List<byte[]>>> requests = new ArrayList<>();
+        for (int i = 0; i < references.size(); i += MAX_KEYS_PER_MESSAGE) {
+            List<byte[]> chunk = references.subList(i, Math.min(i + MAX_KEYS_PER_MESSAGE, references.size()));
+            requests.add(new KeysFuture(this, chunk, bus).request(KEYS_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()])).thenApplyAsync(v -> {
+            try {
+                for (CompletableFuture<List<byte[]>> request : requests) {
+                    List<byte[]> keys = request.join();
+                    if (keys == null)
+                        return false;
+                    for (byte[] key : keys) {
+                        // the future only returns keys matching references we asked for, but they must also be usable keys
+                        if (!Asymmetric.isValidKey(key))
+                            continue;
+                        List<Entry> waiting = missing.remove(ByteBuffer.wrap(Asymmetric.getKeyReference(key)));
+                        if (waiting == null)
+                            continue;
+                        dataStore.insertKey(key);
+                        for (Entry e : waiting)
+                            e.setUploaderKey(key);
+                    }
+                }
+            } catch (SQLException e) {
+                log("Database exception while storing keys from peer " + peerAddress + ": " + e.getMessage(), Level.SEVERE, e);
+                return false;
+            }
+            return missing.isEmpty();
+        }, executorService);
+    }
+
     class PeerReceive implements Runnable {
 
         @Override
@@ -283,6 +355,12 @@ public class PeerHandler {
                                 case HEADERS:
                                     handleHeaders(message.getHeaders());
                                     break;
+                                case GET_KEYS:
+                                    handleGetKeys(message.getGetKeys());
+                                    break;
+                                case KEYS:
+                                    handleKeys(message.getKeys());
+                                    break;
                                 default:
                                     log("Network message went unhandled, type " + message.getType().toString(), Level.WARNING);
                                     break;
@@ -306,21 +384,53 @@ public class PeerHandler {
             Entry entry;
             try {
                 entry = Entry.deserialize(bytes);
-                // check the validity of the entry
-                if (entry.testEntryHashSignature()) {
-                    log("received valid entry " + entry.getEntryID() + " from peer " + peerAddress, Level.FINE);
-                    dataStore.insertEntry(entry);
-                    // raise a NewEntryEvent on the event bus
-                    bus.post(new NewEntryEvent(entry));
-                } else {
-                    log("received invalid entry " + entry.getEntryID() + " from peer " + peerAddress, Level.FINE);
-                }
             } catch (IOException e) {
                 log("Corrupt entry received and rejected", Level.INFO, e);
+                return;
             }
+            // carry on once we have the uploader's key, which we may have to wait for the peer to send
+            resolveUploaderKeys(Collections.singletonList(entry)).thenAccept(resolved -> {
+                if (!resolved) {
+                    log("could not get the uploader's key for entry " + entry.getEntryID() + " from peer " + peerAddress, Level.FINE);
+                    return;
+                }
+                try {
+                    // check the validity of the entry
+                    if (entry.testEntryHashSignature()) {
+                        log("received valid entry " + entry.getEntryID() + " from peer " + peerAddress, Level.FINE);
+                        // raise a NewEntryEvent on the event bus, unless we already had the entry
+                        if (dataStore.insertEntry(entry))
+                            bus.post(new NewEntryEvent(entry));
+                    } else {
+                        log("received invalid entry " + entry.getEntryID() + " from peer " + peerAddress, Level.FINE);
+                    }
+                } catch (SQLException e) {
+                    log("Database exception while processing an incoming message: " + e.getMessage(), Level.SEVERE, e);
+                }
+            });
         }
 
         private void handleGetBlock(GetBlockMessage message) throws SQLException {
+            // send the block straight from the block files if it is in them
+            BlockMessage stored = null;
+            try {
+                ByteBuffer bytes = dataStore.getSerializedBlock(message.getBlockID().toByteArray());
+                if (bytes != null)
+                    stored = BlockMessage.parseFrom(ByteString.copyFrom(bytes));
+            } catch (SQLException | InvalidProtocolBufferException e) {
+                log("stored block could not be read, so sending it from the database: " + e.getMessage(), Level.WARNING, e);
+            }
+            if (stored != null) {
+                // the stored bytes are an encoded BlockMessage, so the block and its entries needn't be serialized again
+                Message m = Message.newBuilder()
+                        .setType(Message.Type.BLOCK)
+                        .setBlock(stored)
+                        .build();
+                log("Sending stored block message to " + peerAddress + " in response to get block for " + Base64.getEncoder().encodeToString(message.getBlockID().toByteArray()), Level.FINE);
+                send(m);
+                return;
+            }
+
             Block b = dataStore.getBlock(message.getBlockID().toByteArray());
             if (b == null) {
                 log("Sending block not found message to " + peerAddress + " in response to get block for " + Base64.getEncoder().encodeToString(message.getBlockID().toByteArray()), Level.FINE);
@@ -392,6 +502,31 @@ public class PeerHandler {
             bus.post(new HeadersMessageEvent(message, PeerHandler.this));
         }
 
+        private void handleGetKeys(GetKeysMessage message) throws SQLException {
+            List<byte[]> references = new ArrayList<>();
+            for (ByteString bytes : message.getKeyReferencesList()) {
+                byte[] ref = bytes.toByteArray();
+                if (Asymmetric.isKeyReference(ref))
+                    references.add(ref);
+            }
+            KeysMessage.Builder kb = KeysMessage.newBuilder();
+            for (byte[] key : dataStore.getKeys(references)) {
+                if (kb.getKeysCount() >= MAX_KEYS_PER_MESSAGE)
+                    break;
+                kb.addKeys(ByteString.copyFrom(key));
+            }
+            Message m = Message.newBuilder()
+                    .setType(Message.Type.KEYS)
+                    .setKeys(kb.build())
+                    .build();
+            send(m);
+            log("Sent keys message with " + kb.getKeysCount() + " of " + message.getKeyReferencesCount() + " keys requested", Level.FINE);
+        }
+
+        private void handleKeys(KeysMessage message) {
+            bus.post(new KeysMessageEvent(message, PeerHandler.this));
+        }
+
 
         private void handleGetHeaders(GetHeadersMessage message) throws SQLException {
             try {
@@ -403,7 +538,7 @@ public class PeerHandler {
                     if (dataStore.isBlockOnActiveChain(blockID)) {
 
                         // send the blocks following it
-                        List<Block> blocks = dataStore.getActiveBlocksAfter(blockID, ConnectionManager.BlockProtocol.MAX_HEADERS);
+                        List<Block> blocks = dataStore.getActiveBlockHeadersAfter(blockID, ConnectionManager.BlockProtocol.MAX_HEADERS);
 
                         HeadersMessage.Builder hb = HeadersMessage.newBuilder();
                         for (Block block : blocks)
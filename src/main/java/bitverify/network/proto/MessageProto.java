@@ -163,6 +163,32 @@ public final class MessageProto {
      * <code>optional .BlockNotFoundMessage blockNotFound = 12;</code>
      */
     bitverify.network.proto.MessageProto.BlockNotFoundMessageOrBuilder getBlockNotFoundOrBuilder();
+
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    boolean hasGetKeys();
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    bitverify.network.proto.MessageProto.GetKeysMessage getGetKeys();
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder getGetKeysOrBuilder();
+
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    boolean hasKeys();
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    bitverify.network.proto.MessageProto.KeysMessage getKeys();
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    bitverify.network.proto.MessageProto.KeysMessageOrBuilder getKeysOrBuilder();
   }
   /**
    * Protobuf type {@code Message}
@@ -370,6 +396,32 @@ public final class MessageProto {
               bitField0_ |= 0x00000800;
               break;
             }
+            case 106: {
+              bitverify.network.proto.MessageProto.GetKeysMessage.Builder subBuilder = null;
+              if (((bitField0_ & 0x00001000) == 0x00001000)) {
+                subBuilder = getKeys_.toBuilder();
+              }
+              getKeys_ = input.readMessage(bitverify.network.proto.MessageProto.GetKeysMessage.PARSER, extensionRegistry);
+              if (subBuilder != null) {
+                subBuilder.mergeFrom(getKeys_);
+                getKeys_ = subBuilder.buildPartial();
+              }
+              bitField0_ |= 0x00001000;
+              break;
+            }
+            case 114: {
+              bitverify.network.proto.MessageProto.KeysMessage.Builder subBuilder = null;
+              if (((bitField0_ & 0x00002000) == 0x00002000)) {
+                subBuilder = keys_.toBuilder();
+              }
+              keys_ = input.readMessage(bitverify.network.proto.MessageProto.KeysMessage.PARSER, extensionRegistry);
+              if (subBuilder != null) {
+                subBuilder.mergeFrom(keys_);
+                keys_ = subBuilder.buildPartial();
+              }
+              bitField0_ |= 0x00002000;
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -458,6 +510,14 @@ public final class MessageProto {
        * <code>BLOCK_NOT_FOUND = 11;</code>
        */
       BLOCK_NOT_FOUND(10, 11),
+      /**
+       * <code>GET_KEYS = 12;</code>
+       */
+      GET_KEYS(11, 12),
+      /**
+       * <code>KEYS = 13;</code>
+       */
+      KEYS(12, 13),
       ;
 
       /**
@@ -504,6 +564,14 @@ public final class MessageProto {
        * <code>BLOCK_NOT_FOUND = 11;</code>
        */
       public static final int BLOCK_NOT_FOUND_VALUE = 11;
+      /**
+       * <code>GET_KEYS = 12;</code>
+       */
+      public static final int GET_KEYS_VALUE = 12;
+      /**
+       * <code>KEYS = 13;</code>
+       */
+      public static final int KEYS_VALUE = 13;
 
 
       public final int getNumber() { return value; }
@@ -521,6 +589,8 @@ public final class MessageProto {
           case 9: return GET_BLOCK;
           case 10: return VERSION_ACK;
           case 11: return BLOCK_NOT_FOUND;
+          case 12: return GET_KEYS;
+          case 13: return KEYS;
           default: return null;
         }
       }
@@ -819,6 +889,48 @@ public final class MessageProto {
       return blockNotFound_;
     }
 
+    public static final int GETKEYS_FIELD_NUMBER = 13;
+    private bitverify.network.proto.MessageProto.GetKeysMessage getKeys_;
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    public boolean hasGetKeys() {
+      return ((bitField0_ & 0x00001000) == 0x00001000);
+    }
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    public bitverify.network.proto.MessageProto.GetKeysMessage getGetKeys() {
+      return getKeys_;
+    }
+    /**
+     * <code>optional .GetKeysMessage getKeys = 13;</code>
+     */
+    public bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder getGetKeysOrBuilder() {
+      return getKeys_;
+    }
+
+    public static final int KEYS_FIELD_NUMBER = 14;
+    private bitverify.network.proto.MessageProto.KeysMessage keys_;
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    public boolean hasKeys() {
+      return ((bitField0_ & 0x00002000) == 0x00002000);
+    }
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    public bitverify.network.proto.MessageProto.KeysMessage getKeys() {
+      return keys_;
+    }
+    /**
+     * <code>optional .KeysMessage keys = 14;</code>
+     */
+    public bitverify.network.proto.MessageProto.KeysMessageOrBuilder getKeysOrBuilder() {
+      return keys_;
+    }
+
     private void initFields() {
       type_ = bitverify.network.proto.MessageProto.Message.Type.HEADERS;
       headers_ = bitverify.network.proto.MessageProto.HeadersMessage.getDefaultInstance();
@@ -832,6 +944,8 @@ public final class MessageProto {
       getBlock_ = bitverify.network.proto.MessageProto.GetBlockMessage.getDefaultInstance();
       versionAck_ = bitverify.network.proto.MessageProto.VersionAck.getDefaultInstance();
       blockNotFound_ = bitverify.network.proto.MessageProto.BlockNotFoundMessage.getDefaultInstance();
+      getKeys_ = bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance();
+      keys_ = bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -928,6 +1042,12 @@ public final class MessageProto {
       if (((bitField0_ & 0x00000800) == 0x00000800)) {
         output.writeMessage(12, blockNotFound_);
       }
+      if (((bitField0_ & 0x00001000) == 0x00001000)) {
+        output.writeMessage(13, getKeys_);
+      }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        output.writeMessage(14, keys_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -985,6 +1105,14 @@ public final class MessageProto {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(12, blockNotFound_);
       }
+      if (((bitField0_ & 0x00001000) == 0x00001000)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(13, getKeys_);
+      }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(14, keys_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -1105,6 +1233,8 @@ public final class MessageProto {
           getGetBlockFieldBuilder();
           getVersionAckFieldBuilder();
           getBlockNotFoundFieldBuilder();
+          getGetKeysFieldBuilder();
+          getKeysFieldBuilder();
         }
       }
       private static Builder create() {
@@ -1181,6 +1311,18 @@ public final class MessageProto {
           blockNotFoundBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000800);
+        if (getKeysBuilder_ == null) {
+          getKeys_ = bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance();
+        } else {
+          getKeysBuilder_.clear();
+        }
+        bitField0_ = (bitField0_ & ~0x00001000);
+        if (keysBuilder_ == null) {
+          keys_ = bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance();
+        } else {
+          keysBuilder_.clear();
+        }
+        bitField0_ = (bitField0_ & ~0x00002000);
         return this;
       }
 
@@ -1301,6 +1443,22 @@ public final class MessageProto {
         } else {
           result.blockNotFound_ = blockNotFoundBuilder_.build();
         }
+        if (((from_bitField0_ & 0x00001000) == 0x00001000)) {
+          to_bitField0_ |= 0x00001000;
+        }
+        if (getKeysBuilder_ == null) {
+          result.getKeys_ = getKeys_;
+        } else {
+          result.getKeys_ = getKeysBuilder_.build();
+        }
+        if (((from_bitField0_ & 0x00002000) == 0x00002000)) {
+          to_bitField0_ |= 0x00002000;
+        }
+        if (keysBuilder_ == null) {
+          result.keys_ = keys_;
+        } else {
+          result.keys_ = keysBuilder_.build();
+        }
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1353,6 +1511,12 @@ public final class MessageProto {
         if (other.hasBlockNotFound()) {
           mergeBlockNotFound(other.getBlockNotFound());
         }
+        if (other.hasGetKeys()) {
+          mergeGetKeys(other.getGetKeys());
+        }
+        if (other.hasKeys()) {
+          mergeKeys(other.getKeys());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -2737,6 +2901,238 @@ public final class MessageProto {
         return blockNotFoundBuilder_;
       }
 
+      private bitverify.network.proto.MessageProto.GetKeysMessage getKeys_ = bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance();
+      private com.google.protobuf.SingleFieldBuilder<
+          bitverify.network.proto.MessageProto.GetKeysMessage, bitverify.network.proto.MessageProto.GetKeysMessage.Builder, bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder> getKeysBuilder_;
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public boolean hasGetKeys() {
+        return ((bitField0_ & 0x00001000) == 0x00001000);
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public bitverify.network.proto.MessageProto.GetKeysMessage getGetKeys() {
+        if (getKeysBuilder_ == null) {
+          return getKeys_;
+        } else {
+          return getKeysBuilder_.getMessage();
+        }
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public Builder setGetKeys(bitverify.network.proto.MessageProto.GetKeysMessage value) {
+        if (getKeysBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          getKeys_ = value;
+          onChanged();
+        } else {
+          getKeysBuilder_.setMessage(value);
+        }
+        bitField0_ |= 0x00001000;
+        return this;
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public Builder setGetKeys(
+          bitverify.network.proto.MessageProto.GetKeysMessage.Builder builderForValue) {
+        if (getKeysBuilder_ == null) {
+          getKeys_ = builderForValue.build();
+          onChanged();
+        } else {
+          getKeysBuilder_.setMessage(builderForValue.build());
+        }
+        bitField0_ |= 0x00001000;
+        return this;
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public Builder mergeGetKeys(bitverify.network.proto.MessageProto.GetKeysMessage value) {
+        if (getKeysBuilder_ == null) {
+          if (((bitField0_ & 0x00001000) == 0x00001000) &&
+              getKeys_ != bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance()) {
+            getKeys_ =
+              bitverify.network.proto.MessageProto.GetKeysMessage.newBuilder(getKeys_).mergeFrom(value).buildPartial();
+          } else {
+            getKeys_ = value;
+          }
+          onChanged();
+        } else {
+          getKeysBuilder_.mergeFrom(value);
+        }
+        bitField0_ |= 0x00001000;
+        return this;
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public Builder clearGetKeys() {
+        if (getKeysBuilder_ == null) {
+          getKeys_ = bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance();
+          onChanged();
+        } else {
+          getKeysBuilder_.clear();
+        }
+        bitField0_ = (bitField0_ & ~0x00001000);
+        return this;
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public bitverify.network.proto.MessageProto.GetKeysMessage.Builder getGetKeysBuilder() {
+        bitField0_ |= 0x00001000;
+        onChanged();
+        return getGetKeysFieldBuilder().getBuilder();
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      public bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder getGetKeysOrBuilder() {
+        if (getKeysBuilder_ != null) {
+          return getKeysBuilder_.getMessageOrBuilder();
+        } else {
+          return getKeys_;
+        }
+      }
+      /**
+       * <code>optional .GetKeysMessage getKeys = 13;</code>
+       */
+      private com.google.protobuf.SingleFieldBuilder<
+          bitverify.network.proto.MessageProto.GetKeysMessage, bitverify.network.proto.MessageProto.GetKeysMessage.Builder, bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder> 
+          getGetKeysFieldBuilder() {
+        if (getKeysBuilder_ == null) {
+          getKeysBuilder_ = new com.google.protobuf.SingleFieldBuilder<
+              bitverify.network.proto.MessageProto.GetKeysMessage, bitverify.network.proto.MessageProto.GetKeysMessage.Builder, bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder>(
+                  getGetKeys(),
+                  getParentForChildren(),
+                  isClean());
+          getKeys_ = null;
+        }
+        return getKeysBuilder_;
+      }
+
+      private bitverify.network.proto.MessageProto.KeysMessage keys_ = bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance();
+      private com.google.protobuf.SingleFieldBuilder<
+          bitverify.network.proto.MessageProto.KeysMessage, bitverify.network.proto.MessageProto.KeysMessage.Builder, bitverify.network.proto.MessageProto.KeysMessageOrBuilder> keysBuilder_;
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public boolean hasKeys() {
+        return ((bitField0_ & 0x00002000) == 0x00002000);
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public bitverify.network.proto.MessageProto.KeysMessage getKeys() {
+        if (keysBuilder_ == null) {
+          return keys_;
+        } else {
+          return keysBuilder_.getMessage();
+        }
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public Builder setKeys(bitverify.network.proto.MessageProto.KeysMessage value) {
+        if (keysBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          keys_ = value;
+          onChanged();
+        } else {
+          keysBuilder_.setMessage(value);
+        }
+        bitField0_ |= 0x00002000;
+        return this;
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public Builder setKeys(
+          bitverify.network.proto.MessageProto.KeysMessage.Builder builderForValue) {
+        if (keysBuilder_ == null) {
+          keys_ = builderForValue.build();
+          onChanged();
+        } else {
+          keysBuilder_.setMessage(builderForValue.build());
+        }
+        bitField0_ |= 0x00002000;
+        return this;
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public Builder mergeKeys(bitverify.network.proto.MessageProto.KeysMessage value) {
+        if (keysBuilder_ == null) {
+          if (((bitField0_ & 0x00002000) == 0x00002000) &&
+              keys_ != bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance()) {
+            keys_ =
+              bitverify.network.proto.MessageProto.KeysMessage.newBuilder(keys_).mergeFrom(value).buildPartial();
+          } else {
+            keys_ = value;
+          }
+          onChanged();
+        } else {
+          keysBuilder_.mergeFrom(value);
+        }
+        bitField0_ |= 0x00002000;
+        return this;
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public Builder clearKeys() {
+        if (keysBuilder_ == null) {
+          keys_ = bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance();
+          onChanged();
+        } else {
+          keysBuilder_.clear();
+        }
+        bitField0_ = (bitField0_ & ~0x00002000);
+        return this;
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public bitverify.network.proto.MessageProto.KeysMessage.Builder getKeysBuilder() {
+        bitField0_ |= 0x00002000;
+        onChanged();
+        return getKeysFieldBuilder().getBuilder();
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      public bitverify.network.proto.MessageProto.KeysMessageOrBuilder getKeysOrBuilder() {
+        if (keysBuilder_ != null) {
+          return keysBuilder_.getMessageOrBuilder();
+        } else {
+          return keys_;
+        }
+      }
+      /**
+       * <code>optional .KeysMessage keys = 14;</code>
+       */
+      private com.google.protobuf.SingleFieldBuilder<
+          bitverify.network.proto.MessageProto.KeysMessage, bitverify.network.proto.MessageProto.KeysMessage.Builder, bitverify.network.proto.MessageProto.KeysMessageOrBuilder> 
+          getKeysFieldBuilder() {
+        if (keysBuilder_ == null) {
+          keysBuilder_ = new com.google.protobuf.SingleFieldBuilder<
+              bitverify.network.proto.MessageProto.KeysMessage, bitverify.network.proto.MessageProto.KeysMessage.Builder, bitverify.network.proto.MessageProto.KeysMessageOrBuilder>(
+                  getKeys(),
+                  getParentForChildren(),
+                  isClean());
+          keys_ = null;
+        }
+        return keysBuilder_;
+      }
+
       // @@protoc_insertion_point(builder_scope:Message)
     }
 
@@ -6579,54 +6975,47 @@ public final class MessageProto {
     // @@protoc_insertion_point(class_scope:EntryMessage)
   }
 
-  public interface PeersOrBuilder extends
-      // @@protoc_insertion_point(interface_extends:Peers)
+  public interface GetKeysMessageOrBuilder extends
+      // @@protoc_insertion_point(interface_extends:GetKeysMessage)
       com.google.protobuf.MessageOrBuilder {
 
     /**
-     * <code>repeated .NetAddress address = 1;</code>
-     */
-    java.util.List<bitverify.network.proto.MessageProto.NetAddress> 
-        getAddressList();
-    /**
-     * <code>repeated .NetAddress address = 1;</code>
-     */
-    bitverify.network.proto.MessageProto.NetAddress getAddress(int index);
-    /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    int getAddressCount();
+    java.util.List<com.google.protobuf.ByteString> getKeyReferencesList();
     /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    java.util.List<? extends bitverify.network.proto.MessageProto.NetAddressOrBuilder> 
-        getAddressOrBuilderList();
+    int getKeyReferencesCount();
     /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    bitverify.network.proto.MessageProto.NetAddressOrBuilder getAddressOrBuilder(
-        int index);
+    com.google.protobuf.ByteString getKeyReferences(int index);
   }
   /**
-   * Protobuf type {@code Peers}
+   * Protobuf type {@code GetKeysMessage}
+   *
+   * <pre>
+   * asks for the public keys with these key references
+   * </pre>
    */
-  public static final class Peers extends
+  public static final class GetKeysMessage extends
       com.google.protobuf.GeneratedMessage implements
-      // @@protoc_insertion_point(message_implements:Peers)
-      PeersOrBuilder {
-    // Use Peers.newBuilder() to construct.
-    private Peers(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      // @@protoc_insertion_point(message_implements:GetKeysMessage)
+      GetKeysMessageOrBuilder {
+    // Use GetKeysMessage.newBuilder() to construct.
+    private GetKeysMessage(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
       super(builder);
       this.unknownFields = builder.getUnknownFields();
     }
-    private Peers(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+    private GetKeysMessage(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
 
-    private static final Peers defaultInstance;
-    public static Peers getDefaultInstance() {
+    private static final GetKeysMessage defaultInstance;
+    public static GetKeysMessage getDefaultInstance() {
       return defaultInstance;
     }
 
-    public Peers getDefaultInstanceForType() {
+    public GetKeysMessage getDefaultInstanceForType() {
       return defaultInstance;
     }
 
@@ -6636,7 +7025,7 @@ public final class MessageProto {
         getUnknownFields() {
       return this.unknownFields;
     }
-    private Peers(
+    private GetKeysMessage(
         com.google.protobuf.CodedInputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws com.google.protobuf.InvalidProtocolBufferException {
@@ -6661,10 +7050,10 @@ public final class MessageProto {
             }
             case 10: {
               if (!((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
-                address_ = new java.util.ArrayList<bitverify.network.proto.MessageProto.NetAddress>();
+                keyReferences_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
                 mutable_bitField0_ |= 0x00000001;
               }
-              address_.add(input.readMessage(bitverify.network.proto.MessageProto.NetAddress.PARSER, extensionRegistry));
+              keyReferences_.add(input.readBytes());
               break;
             }
           }
@@ -6676,7 +7065,7 @@ public final class MessageProto {
             e.getMessage()).setUnfinishedMessage(this);
       } finally {
         if (((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
-          address_ = java.util.Collections.unmodifiableList(address_);
+          keyReferences_ = java.util.Collections.unmodifiableList(keyReferences_);
         }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
@@ -6684,62 +7073,1013 @@ public final class MessageProto {
     }
     public static final com.google.protobuf.Descriptors.Descriptor
         getDescriptor() {
-      return bitverify.network.proto.MessageProto.internal_static_Peers_descriptor;
+      return bitverify.network.proto.MessageProto.internal_static_GetKeysMessage_descriptor;
     }
 
     protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
         internalGetFieldAccessorTable() {
-      return bitverify.network.proto.MessageProto.internal_static_Peers_fieldAccessorTable
+      return bitverify.network.proto.MessageProto.internal_static_GetKeysMessage_fieldAccessorTable
           .ensureFieldAccessorsInitialized(
-              bitverify.network.proto.MessageProto.Peers.class, bitverify.network.proto.MessageProto.Peers.Builder.class);
+              bitverify.network.proto.MessageProto.GetKeysMessage.class, bitverify.network.proto.MessageProto.GetKeysMessage.Builder.class);
     }
 
-    public static com.google.protobuf.Parser<Peers> PARSER =
-        new com.google.protobuf.AbstractParser<Peers>() {
-      public Peers parsePartialFrom(
+    public static com.google.protobuf.Parser<GetKeysMessage> PARSER =
+        new com.google.protobuf.AbstractParser<GetKeysMessage>() {
+      public GetKeysMessage parsePartialFrom(
           com.google.protobuf.CodedInputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
           throws com.google.protobuf.InvalidProtocolBufferException {
-        return new Peers(input, extensionRegistry);
+        return new GetKeysMessage(input, extensionRegistry);
       }
     };
 
     @java.lang.Override
-    public com.google.protobuf.Parser<Peers> getParserForType() {
+    public com.google.protobuf.Parser<GetKeysMessage> getParserForType() {
       return PARSER;
     }
 
-    public static final int ADDRESS_FIELD_NUMBER = 1;
-    private java.util.List<bitverify.network.proto.MessageProto.NetAddress> address_;
+    public static final int KEYREFERENCES_FIELD_NUMBER = 1;
+    private java.util.List<com.google.protobuf.ByteString> keyReferences_;
     /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    public java.util.List<bitverify.network.proto.MessageProto.NetAddress> getAddressList() {
-      return address_;
+    public java.util.List<com.google.protobuf.ByteString>
+        getKeyReferencesList() {
+      return keyReferences_;
     }
     /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    public java.util.List<? extends bitverify.network.proto.MessageProto.NetAddressOrBuilder> 
-        getAddressOrBuilderList() {
-      return address_;
+    public int getKeyReferencesCount() {
+      return keyReferences_.size();
     }
     /**
-     * <code>repeated .NetAddress address = 1;</code>
+     * <code>repeated bytes keyReferences = 1;</code>
      */
-    public int getAddressCount() {
-      return address_.size();
+    public com.google.protobuf.ByteString getKeyReferences(int index) {
+      return keyReferences_.get(index);
     }
-    /**
-     * <code>repeated .NetAddress address = 1;</code>
-     */
-    public bitverify.network.proto.MessageProto.NetAddress getAddress(int index) {
-      return address_.get(index);
+
+    private void initFields() {
+      keyReferences_ = java.util.Collections.emptyList();
     }
-    /**
-     * <code>repeated .NetAddress address = 1;</code>
-     */
-    public bitverify.network.proto.MessageProto.NetAddressOrBuilder getAddressOrBuilder(
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized == 1) return true;
+      if (isInitialized == 0) return false;
+
+      memoizedIsInitialized = 1;
+      return true;
+    }
+
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      for (int i = 0; i < keyReferences_.size(); i++) {
+        output.writeBytes(1, keyReferences_.get(i));
+      }
+      getUnknownFields().writeTo(output);
+    }
+
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+
+      size = 0;
+      {
+        int dataSize = 0;
+        for (int i = 0; i < keyReferences_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeBytesSizeNoTag(keyReferences_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getKeyReferencesList().size();
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.GetKeysMessage parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(bitverify.network.proto.MessageProto.GetKeysMessage prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    /**
+     * Protobuf type {@code GetKeysMessage}
+     *
+     * <pre>
+     * asks for the public keys with these key references
+     * </pre>
+     */
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder> implements
+        // @@protoc_insertion_point(builder_implements:GetKeysMessage)
+        bitverify.network.proto.MessageProto.GetKeysMessageOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return bitverify.network.proto.MessageProto.internal_static_GetKeysMessage_descriptor;
+      }
+
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return bitverify.network.proto.MessageProto.internal_static_GetKeysMessage_fieldAccessorTable
+            .ensureFieldAccessorsInitialized(
+                bitverify.network.proto.MessageProto.GetKeysMessage.class, bitverify.network.proto.MessageProto.GetKeysMessage.Builder.class);
+      }
+
+      // Construct using bitverify.network.proto.MessageProto.GetKeysMessage.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+
+      private Builder(
+          com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+
+      public Builder clear() {
+        super.clear();
+        keyReferences_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000001);
+        return this;
+      }
+
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return bitverify.network.proto.MessageProto.internal_static_GetKeysMessage_descriptor;
+      }
+
+      public bitverify.network.proto.MessageProto.GetKeysMessage getDefaultInstanceForType() {
+        return bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance();
+      }
+
+      public bitverify.network.proto.MessageProto.GetKeysMessage build() {
+        bitverify.network.proto.MessageProto.GetKeysMessage result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+
+      public bitverify.network.proto.MessageProto.GetKeysMessage buildPartial() {
+        bitverify.network.proto.MessageProto.GetKeysMessage result = new bitverify.network.proto.MessageProto.GetKeysMessage(this);
+        int from_bitField0_ = bitField0_;
+        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+          keyReferences_ = java.util.Collections.unmodifiableList(keyReferences_);
+          bitField0_ = (bitField0_ & ~0x00000001);
+        }
+        result.keyReferences_ = keyReferences_;
+        onBuilt();
+        return result;
+      }
+
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof bitverify.network.proto.MessageProto.GetKeysMessage) {
+          return mergeFrom((bitverify.network.proto.MessageProto.GetKeysMessage)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+
+      public Builder mergeFrom(bitverify.network.proto.MessageProto.GetKeysMessage other) {
+        if (other == bitverify.network.proto.MessageProto.GetKeysMessage.getDefaultInstance()) return this;
+        if (!other.keyReferences_.isEmpty()) {
+          if (keyReferences_.isEmpty()) {
+            keyReferences_ = other.keyReferences_;
+            bitField0_ = (bitField0_ & ~0x00000001);
+          } else {
+            ensureKeyReferencesIsMutable();
+            keyReferences_.addAll(other.keyReferences_);
+          }
+          onChanged();
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+
+      public final boolean isInitialized() {
+        return true;
+      }
+
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        bitverify.network.proto.MessageProto.GetKeysMessage parsedMessage = null;
+        try {
+          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          parsedMessage = (bitverify.network.proto.MessageProto.GetKeysMessage) e.getUnfinishedMessage();
+          throw e;
+        } finally {
+          if (parsedMessage != null) {
+            mergeFrom(parsedMessage);
+          }
+        }
+        return this;
+      }
+      private int bitField0_;
+
+      private java.util.List<com.google.protobuf.ByteString> keyReferences_ = java.util.Collections.emptyList();
+      private void ensureKeyReferencesIsMutable() {
+        if (!((bitField0_ & 0x00000001) == 0x00000001)) {
+          keyReferences_ = new java.util.ArrayList<com.google.protobuf.ByteString>(keyReferences_);
+          bitField0_ |= 0x00000001;
+         }
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public java.util.List<com.google.protobuf.ByteString>
+          getKeyReferencesList() {
+        return java.util.Collections.unmodifiableList(keyReferences_);
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public int getKeyReferencesCount() {
+        return keyReferences_.size();
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public com.google.protobuf.ByteString getKeyReferences(int index) {
+        return keyReferences_.get(index);
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public Builder setKeyReferences(
+          int index, com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureKeyReferencesIsMutable();
+        keyReferences_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public Builder addKeyReferences(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureKeyReferencesIsMutable();
+        keyReferences_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public Builder addAllKeyReferences(
+          java.lang.Iterable<? extends com.google.protobuf.ByteString> values) {
+        ensureKeyReferencesIsMutable();
+        com.google.protobuf.AbstractMessageLite.Builder.addAll(
+            values, keyReferences_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keyReferences = 1;</code>
+       */
+      public Builder clearKeyReferences() {
+        keyReferences_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000001);
+        onChanged();
+        return this;
+      }
+
+      // @@protoc_insertion_point(builder_scope:GetKeysMessage)
+    }
+
+    static {
+      defaultInstance = new GetKeysMessage(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:GetKeysMessage)
+  }
+
+  public interface KeysMessageOrBuilder extends
+      // @@protoc_insertion_point(interface_extends:KeysMessage)
+      com.google.protobuf.MessageOrBuilder {
+
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    java.util.List<com.google.protobuf.ByteString> getKeysList();
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    int getKeysCount();
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    com.google.protobuf.ByteString getKeys(int index);
+  }
+  /**
+   * Protobuf type {@code KeysMessage}
+   *
+   * <pre>
+   * the requested public keys that the sender has
+   * </pre>
+   */
+  public static final class KeysMessage extends
+      com.google.protobuf.GeneratedMessage implements
+      // @@protoc_insertion_point(message_implements:KeysMessage)
+      KeysMessageOrBuilder {
+    // Use KeysMessage.newBuilder() to construct.
+    private KeysMessage(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      super(builder);
+      this.unknownFields = builder.getUnknownFields();
+    }
+    private KeysMessage(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+
+    private static final KeysMessage defaultInstance;
+    public static KeysMessage getDefaultInstance() {
+      return defaultInstance;
+    }
+
+    public KeysMessage getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+
+    private final com.google.protobuf.UnknownFieldSet unknownFields;
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+        getUnknownFields() {
+      return this.unknownFields;
+    }
+    private KeysMessage(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      initFields();
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+            case 10: {
+              if (!((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
+                keys_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
+                mutable_bitField0_ |= 0x00000001;
+              }
+              keys_.add(input.readBytes());
+              break;
+            }
+          }
+        }
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(this);
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(
+            e.getMessage()).setUnfinishedMessage(this);
+      } finally {
+        if (((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
+          keys_ = java.util.Collections.unmodifiableList(keys_);
+        }
+        this.unknownFields = unknownFields.build();
+        makeExtensionsImmutable();
+      }
+    }
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return bitverify.network.proto.MessageProto.internal_static_KeysMessage_descriptor;
+    }
+
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return bitverify.network.proto.MessageProto.internal_static_KeysMessage_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              bitverify.network.proto.MessageProto.KeysMessage.class, bitverify.network.proto.MessageProto.KeysMessage.Builder.class);
+    }
+
+    public static com.google.protobuf.Parser<KeysMessage> PARSER =
+        new com.google.protobuf.AbstractParser<KeysMessage>() {
+      public KeysMessage parsePartialFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        return new KeysMessage(input, extensionRegistry);
+      }
+    };
+
+    @java.lang.Override
+    public com.google.protobuf.Parser<KeysMessage> getParserForType() {
+      return PARSER;
+    }
+
+    public static final int KEYS_FIELD_NUMBER = 1;
+    private java.util.List<com.google.protobuf.ByteString> keys_;
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    public java.util.List<com.google.protobuf.ByteString>
+        getKeysList() {
+      return keys_;
+    }
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    public int getKeysCount() {
+      return keys_.size();
+    }
+    /**
+     * <code>repeated bytes keys = 1;</code>
+     */
+    public com.google.protobuf.ByteString getKeys(int index) {
+      return keys_.get(index);
+    }
+
+    private void initFields() {
+      keys_ = java.util.Collections.emptyList();
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized == 1) return true;
+      if (isInitialized == 0) return false;
+
+      memoizedIsInitialized = 1;
+      return true;
+    }
+
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      for (int i = 0; i < keys_.size(); i++) {
+        output.writeBytes(1, keys_.get(i));
+      }
+      getUnknownFields().writeTo(output);
+    }
+
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+
+      size = 0;
+      {
+        int dataSize = 0;
+        for (int i = 0; i < keys_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeBytesSizeNoTag(keys_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getKeysList().size();
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input, extensionRegistry);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static bitverify.network.proto.MessageProto.KeysMessage parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(bitverify.network.proto.MessageProto.KeysMessage prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    /**
+     * Protobuf type {@code KeysMessage}
+     *
+     * <pre>
+     * the requested public keys that the sender has
+     * </pre>
+     */
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder> implements
+        // @@protoc_insertion_point(builder_implements:KeysMessage)
+        bitverify.network.proto.MessageProto.KeysMessageOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return bitverify.network.proto.MessageProto.internal_static_KeysMessage_descriptor;
+      }
+
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return bitverify.network.proto.MessageProto.internal_static_KeysMessage_fieldAccessorTable
+            .ensureFieldAccessorsInitialized(
+                bitverify.network.proto.MessageProto.KeysMessage.class, bitverify.network.proto.MessageProto.KeysMessage.Builder.class);
+      }
+
+      // Construct using bitverify.network.proto.MessageProto.KeysMessage.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+
+      private Builder(
+          com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+
+      public Builder clear() {
+        super.clear();
+        keys_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000001);
+        return this;
+      }
+
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return bitverify.network.proto.MessageProto.internal_static_KeysMessage_descriptor;
+      }
+
+      public bitverify.network.proto.MessageProto.KeysMessage getDefaultInstanceForType() {
+        return bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance();
+      }
+
+      public bitverify.network.proto.MessageProto.KeysMessage build() {
+        bitverify.network.proto.MessageProto.KeysMessage result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+
+      public bitverify.network.proto.MessageProto.KeysMessage buildPartial() {
+        bitverify.network.proto.MessageProto.KeysMessage result = new bitverify.network.proto.MessageProto.KeysMessage(this);
+        int from_bitField0_ = bitField0_;
+        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+          keys_ = java.util.Collections.unmodifiableList(keys_);
+          bitField0_ = (bitField0_ & ~0x00000001);
+        }
+        result.keys_ = keys_;
+        onBuilt();
+        return result;
+      }
+
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof bitverify.network.proto.MessageProto.KeysMessage) {
+          return mergeFrom((bitverify.network.proto.MessageProto.KeysMessage)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+
+      public Builder mergeFrom(bitverify.network.proto.MessageProto.KeysMessage other) {
+        if (other == bitverify.network.proto.MessageProto.KeysMessage.getDefaultInstance()) return this;
+        if (!other.keys_.isEmpty()) {
+          if (keys_.isEmpty()) {
+            keys_ = other.keys_;
+            bitField0_ = (bitField0_ & ~0x00000001);
+          } else {
+            ensureKeysIsMutable();
+            keys_.addAll(other.keys_);
+          }
+          onChanged();
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+
+      public final boolean isInitialized() {
+        return true;
+      }
+
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        bitverify.network.proto.MessageProto.KeysMessage parsedMessage = null;
+        try {
+          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          parsedMessage = (bitverify.network.proto.MessageProto.KeysMessage) e.getUnfinishedMessage();
+          throw e;
+        } finally {
+          if (parsedMessage != null) {
+            mergeFrom(parsedMessage);
+          }
+        }
+        return this;
+      }
+      private int bitField0_;
+
+      private java.util.List<com.google.protobuf.ByteString> keys_ = java.util.Collections.emptyList();
+      private void ensureKeysIsMutable() {
+        if (!((bitField0_ & 0x00000001) == 0x00000001)) {
+          keys_ = new java.util.ArrayList<com.google.protobuf.ByteString>(keys_);
+          bitField0_ |= 0x00000001;
+         }
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public java.util.List<com.google.protobuf.ByteString>
+          getKeysList() {
+        return java.util.Collections.unmodifiableList(keys_);
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public int getKeysCount() {
+        return keys_.size();
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public com.google.protobuf.ByteString getKeys(int index) {
+        return keys_.get(index);
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public Builder setKeys(
+          int index, com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureKeysIsMutable();
+        keys_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public Builder addKeys(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureKeysIsMutable();
+        keys_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public Builder addAllKeys(
+          java.lang.Iterable<? extends com.google.protobuf.ByteString> values) {
+        ensureKeysIsMutable();
+        com.google.protobuf.AbstractMessageLite.Builder.addAll(
+            values, keys_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes keys = 1;</code>
+       */
+      public Builder clearKeys() {
+        keys_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000001);
+        onChanged();
+        return this;
+      }
+
+      // @@protoc_insertion_point(builder_scope:KeysMessage)
+    }
+
+    static {
+      defaultInstance = new KeysMessage(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:KeysMessage)
+  }
+
+  public interface PeersOrBuilder extends
+      // @@protoc_insertion_point(interface_extends:Peers)
+      com.google.protobuf.MessageOrBuilder {
+
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    java.util.List<bitverify.network.proto.MessageProto.NetAddress> 
+        getAddressList();
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    bitverify.network.proto.MessageProto.NetAddress getAddress(int index);
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    int getAddressCount();
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    java.util.List<? extends bitverify.network.proto.MessageProto.NetAddressOrBuilder> 
+        getAddressOrBuilderList();
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    bitverify.network.proto.MessageProto.NetAddressOrBuilder getAddressOrBuilder(
+        int index);
+  }
+  /**
+   * Protobuf type {@code Peers}
+   */
+  public static final class Peers extends
+      com.google.protobuf.GeneratedMessage implements
+      // @@protoc_insertion_point(message_implements:Peers)
+      PeersOrBuilder {
+    // Use Peers.newBuilder() to construct.
+    private Peers(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      super(builder);
+      this.unknownFields = builder.getUnknownFields();
+    }
+    private Peers(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+
+    private static final Peers defaultInstance;
+    public static Peers getDefaultInstance() {
+      return defaultInstance;
+    }
+
+    public Peers getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+
+    private final com.google.protobuf.UnknownFieldSet unknownFields;
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+        getUnknownFields() {
+      return this.unknownFields;
+    }
+    private Peers(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      initFields();
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+            case 10: {
+              if (!((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
+                address_ = new java.util.ArrayList<bitverify.network.proto.MessageProto.NetAddress>();
+                mutable_bitField0_ |= 0x00000001;
+              }
+              address_.add(input.readMessage(bitverify.network.proto.MessageProto.NetAddress.PARSER, extensionRegistry));
+              break;
+            }
+          }
+        }
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(this);
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(
+            e.getMessage()).setUnfinishedMessage(this);
+      } finally {
+        if (((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
+          address_ = java.util.Collections.unmodifiableList(address_);
+        }
+        this.unknownFields = unknownFields.build();
+        makeExtensionsImmutable();
+      }
+    }
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return bitverify.network.proto.MessageProto.internal_static_Peers_descriptor;
+    }
+
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return bitverify.network.proto.MessageProto.internal_static_Peers_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              bitverify.network.proto.MessageProto.Peers.class, bitverify.network.proto.MessageProto.Peers.Builder.class);
+    }
+
+    public static com.google.protobuf.Parser<Peers> PARSER =
+        new com.google.protobuf.AbstractParser<Peers>() {
+      public Peers parsePartialFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        return new Peers(input, extensionRegistry);
+      }
+    };
+
+    @java.lang.Override
+    public com.google.protobuf.Parser<Peers> getParserForType() {
+      return PARSER;
+    }
+
+    public static final int ADDRESS_FIELD_NUMBER = 1;
+    private java.util.List<bitverify.network.proto.MessageProto.NetAddress> address_;
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    public java.util.List<bitverify.network.proto.MessageProto.NetAddress> getAddressList() {
+      return address_;
+    }
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    public java.util.List<? extends bitverify.network.proto.MessageProto.NetAddressOrBuilder> 
+        getAddressOrBuilderList() {
+      return address_;
+    }
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    public int getAddressCount() {
+      return address_.size();
+    }
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    public bitverify.network.proto.MessageProto.NetAddress getAddress(int index) {
+      return address_.get(index);
+    }
+    /**
+     * <code>repeated .NetAddress address = 1;</code>
+     */
+    public bitverify.network.proto.MessageProto.NetAddressOrBuilder getAddressOrBuilder(
         int index) {
       return address_.get(index);
     }
@@ -8208,6 +9548,16 @@ public final class MessageProto {
   private static
     com.google.protobuf.GeneratedMessage.FieldAccessorTable
       internal_static_EntryMessage_fieldAccessorTable;
+  private static final com.google.protobuf.Descriptors.Descriptor
+    internal_static_GetKeysMessage_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_GetKeysMessage_fieldAccessorTable;
+  private static final com.google.protobuf.Descriptors.Descriptor
+    internal_static_KeysMessage_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_KeysMessage_fieldAccessorTable;
   private static final com.google.protobuf.Descriptors.Descriptor
     internal_static_Peers_descriptor;
   private static
@@ -8232,7 +9582,7 @@ public final class MessageProto {
       descriptor;
   static {
     java.lang.String[] descriptorData = {
-      "\n\rMessage.proto\"\242\004\n\007Message\022\033\n\004type\030\001 \002(" +
+      "\n\rMessage.proto\"\370\004\n\007Message\022\033\n\004type\030\001 \002(" +
       "\0162\r.Message.Type\022 \n\007headers\030\002 \001(\0132\017.Head" +
       "ersMessage\022\034\n\005block\030\003 \001(\0132\r.BlockMessage" +
       "\022\034\n\005entry\030\004 \001(\0132\r.EntryMessage\022\025\n\005peers\030" +
@@ -8242,22 +9592,26 @@ public final class MessageProto {
       "sMessage\022\"\n\010getBlock\030\n \001(\0132\020.GetBlockMes" +
       "sage\022\037\n\nversionAck\030\013 \001(\0132\013.VersionAck\022,\n" +
       "\rblockNotFound\030\014 \001(\0132\025.BlockNotFoundMess",
-      "age\"\236\001\n\004Type\022\013\n\007HEADERS\020\001\022\t\n\005BLOCK\020\002\022\t\n\005" +
-      "ENTRY\020\003\022\t\n\005PEERS\020\004\022\014\n\010GETPEERS\020\005\022\013\n\007VERS" +
-      "ION\020\006\022\007\n\003ACK\020\007\022\017\n\013GET_HEADERS\020\010\022\r\n\tGET_B" +
-      "LOCK\020\t\022\017\n\013VERSION_ACK\020\n\022\023\n\017BLOCK_NOT_FOU" +
-      "ND\020\013\"\035\n\007Version\022\022\n\nlistenPort\030\001 \002(\005\"\005\n\003A" +
-      "ck\" \n\nVersionAck\022\022\n\nlistenPort\030\001 \002(\005\"!\n\021" +
-      "GetHeadersMessage\022\014\n\004from\030\001 \003(\014\"!\n\016Heade" +
-      "rsMessage\022\017\n\007headers\030\001 \003(\014\"\"\n\017GetBlockMe" +
-      "ssage\022\017\n\007blockID\030\001 \002(\014\"3\n\014BlockMessage\022\022" +
-      "\n\nblockBytes\030\001 \002(\014\022\017\n\007entries\030\002 \003(\014\"\'\n\024B",
-      "lockNotFoundMessage\022\017\n\007blockID\030\001 \002(\014\"\"\n\014" +
-      "EntryMessage\022\022\n\nentryBytes\030\001 \002(\014\"%\n\005Peer" +
-      "s\022\034\n\007address\030\001 \003(\0132\013.NetAddress\",\n\nNetAd" +
-      "dress\022\020\n\010hostName\030\001 \002(\t\022\014\n\004port\030\002 \002(\005\"\n\n" +
-      "\010GetPeersB\'\n\027bitverify.network.protoB\014Me" +
-      "ssageProto"
+      "age\022 \n\007getKeys\030\r \001(\0132\017.GetKeysMessage\022\032\n" +
+      "\004keys\030\016 \001(\0132\014.KeysMessage\"\266\001\n\004Type\022\013\n\007HE" +
+      "ADERS\020\001\022\t\n\005BLOCK\020\002\022\t\n\005ENTRY\020\003\022\t\n\005PEERS\020\004" +
+      "\022\014\n\010GETPEERS\020\005\022\013\n\007VERSION\020\006\022\007\n\003ACK\020\007\022\017\n\013" +
+      "GET_HEADERS\020\010\022\r\n\tGET_BLOCK\020\t\022\017\n\013VERSION_" +
+      "ACK\020\n\022\023\n\017BLOCK_NOT_FOUND\020\013\022\014\n\010GET_KEYS\020\014" +
+      "\022\010\n\004KEYS\020\r\"\035\n\007Version\022\022\n\nlistenPort\030\001 \002(" +
+      "\005\"\005\n\003Ack\" \n\nVersionAck\022\022\n\nlistenPort\030\001 \002" +
+      "(\005\"!\n\021GetHeadersMessage\022\014\n\004from\030\001 \003(\014\"!\n" +
+      "\016HeadersMessage\022\017\n\007headers\030\001 \003(\014\"\"\n\017GetB",
+      "lockMessage\022\017\n\007blockID\030\001 \002(\014\"3\n\014BlockMes" +
+      "sage\022\022\n\nblockBytes\030\001 \002(\014\022\017\n\007entries\030\002 \003(" +
+      "\014\"\'\n\024BlockNotFoundMessage\022\017\n\007blockID\030\001 \002" +
+      "(\014\"\"\n\014EntryMessage\022\022\n\nentryBytes\030\001 \002(\014\"\'" +
+      "\n\016GetKeysMessage\022\025\n\rkeyReferences\030\001 \003(\014\"" +
+      "\033\n\013KeysMessage\022\014\n\004keys\030\001 \003(\014\"%\n\005Peers\022\034\n" +
+      "\007address\030\001 \003(\0132\013.NetAddress\",\n\nNetAddres" +
+      "s\022\020\n\010hostName\030\001 \002(\t\022\014\n\004port\030\002 \002(\005\"\n\n\010Get" +
+      "PeersB\'\n\027bitverify.network.protoB\014Messag" +
+      "eProto"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
@@ -8276,7 +9630,7 @@ public final class MessageProto {
     internal_static_Message_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_Message_descriptor,
-        new java.lang.String[] { "Type", "Headers", "Block", "Entry", "Peers", "GetPeers", "Version", "Ack", "GetHeaders", "GetBlock", "VersionAck", "BlockNotFound", });
+        new java.lang.String[] { "Type", "Headers", "Block", "Entry", "Peers", "GetPeers", "Version", "Ack", "GetHeaders", "GetBlock", "VersionAck", "BlockNotFound", "GetKeys", "Keys", });
     internal_static_Version_descriptor =
       getDescriptor().getMessageTypes().get(1);
     internal_static_Version_fieldAccessorTable = new
@@ -8331,20 +9685,32 @@ public final class MessageProto {
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_EntryMessage_descriptor,
         new java.lang.String[] { "EntryBytes", });
-    internal_static_Peers_descriptor =
+    internal_static_GetKeysMessage_descriptor =
       getDescriptor().getMessageTypes().get(10);
+    internal_static_GetKeysMessage_fieldAccessorTable = new
+      com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+        internal_static_GetKeysMessage_descriptor,
+        new java.lang.String[] { "KeyReferences", });
+    internal_static_KeysMessage_descriptor =
+      getDescriptor().getMessageTypes().get(11);
+    internal_static_KeysMessage_fieldAccessorTable = new
+      com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+        internal_static_KeysMessage_descriptor,
+        new java.lang.String[] { "Keys", });
+    internal_static_Peers_descriptor =
+      getDescriptor().getMessageTypes().get(12);
     internal_static_Peers_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_Peers_descriptor,
         new java.lang.String[] { "Address", });
     internal_static_NetAddress_descriptor =
-      getDescriptor().getMessageTypes().get(11);
+      getDescriptor().getMessageTypes().get(13);
     internal_static_NetAddress_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_NetAddress_descriptor,
         new java.lang.String[] { "HostName", "Port", });
     internal_static_GetPeers_descriptor =
-      getDescriptor().getMessageTypes().get(12);
+      getDescriptor().getMessageTypes().get(14);
     internal_static_GetPeers_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_GetPeers_descriptor,
@@ -22,4 +22,12 @@ public class BlockEntry {
         this.blockID = blockID;
         this.entryID = entryID;
     }
+
+    public byte[] getBlockID() {
+        return blockID;
+    }
+
+    public UUID getEntryID() {
+        return entryID;
+    }
 }
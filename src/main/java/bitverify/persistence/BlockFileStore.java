@@ -0,0 +1,173 @@
+package bitverify.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores blocks as the bytes they are sent to peers in, appended one after another to a series of flat files.
+ * The database only records where each block is, so serving a block doesn't need its entries to be queried and
+ * serialized again.
+ *
+ * Files are named blk00000.dat, blk00001.dat and so on. Blocks are appended to the last file until adding the next
+ * would take it over the maximum size, when a new file is started. Files are never changed once they are full, so
+ * each full file is memory-mapped once, whole, and blocks are read as slices of it. Blocks in the last file are read
+ * from it directly, through a read-only channel of their own: interrupting a reading thread closes the channel it
+ * was reading from, which mustn't be the one blocks are appended through.
+ *
+ * Each block is forced to disk before its location is returned, so the database never records a block the files
+ * lost in a crash. A block appended by a transaction that is then rolled back is left in its file, unreferenced.
+ * Thread safe.
+ */
+class BlockFileStore {
+    static final long DEFAULT_MAX_FILE_SIZE = 128L * 1024 * 1024;
+
+    private final File directory;
+    private final long maxFileSize;
+
+    // the file being appended to
+    private int currentFile;
+    private FileChannel current;
+    private FileChannel currentReader;
+    private long currentSize;
+
+    private final Map<Integer, MappedByteBuffer> fullFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Where a block is stored.
+     */
+    static class Location {
+        final int file;
+        final long offset;
+        final int length;
+
+        Location(int file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Open the block files in a directory, creating it if necessary. New blocks are appended after the ones already
+     * there.
+     * @param maxFileSize the size at which to start a new file. A block bigger than this gets a file of its own.
+     */
+    BlockFileStore(File directory, long maxFileSize) throws IOException {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create block directory " + directory);
+        while (fileFor(currentFile + 1).exists())
+            currentFile++;
+        open(currentFile);
+    }
+
+    /**
+     * Append a block to the last file, and force it to disk.
+     * @param bytes the block's bytes
+     * @return where the block was stored
+     */
+    synchronized Location append(byte[] bytes) throws IOException {
+        if (currentSize > 0 && currentSize + bytes.length > maxFileSize) {
+            current.close();
+            currentReader.close();
+            open(currentFile + 1);
+        }
+        long offset = currentSize;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+            current.write(buffer, offset + buffer.position());
+        current.force(false);
+        currentSize += bytes.length;
+        return new Location(currentFile, offset, bytes.length);
+    }
+
+    /**
+     * Read a block back.
+     * @return a buffer over the block's bytes
+     * @throws IOException if the block isn't all in its file
+     */
+    ByteBuffer read(Location location) throws IOException {
+        if (location.offset < 0 || location.length < 0)
+            throw new IOException("invalid block location " + location.offset + "+" + location.length);
+        MappedByteBuffer file = fullFiles.get(location.file);
+        if (file == null) {
+            // the last file is still growing, so read the block from it rather than mapping it
+            FileChannel reader;
+            while ((reader = readerFor(location.file)) != null) {
+                try {
+                    return readFrom(reader, location);
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    // the file filled up, or another reading thread was interrupted, while we were reading
+                }
+            }
+            file = mapFullFile(location.file);
+        }
+        if (location.offset + location.length > file.capacity())
+            throw new IOException("block at " + location.offset + "+" + location.length + " is past the end of block file " + location.file);
+        ByteBuffer block = file.duplicate();
+        block.position((int) location.offset);
+        block.limit((int) location.offset + location.length);
+        return block.slice();
+    }
+
+    private static ByteBuffer readFrom(FileChannel channel, Location location) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(location.length);
+        while (block.hasRemaining()) {
+            if (channel.read(block, location.offset + block.position()) < 0)
+                throw new IOException("block at " + location.offset + "+" + location.length + " is past the end of block file " + location.file);
+        }
+        block.flip();
+        return block.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a channel to read the last file through, reopened if an interrupted reader closed it,
+     * or null if the file isn't the last one
+     */
+    private synchronized FileChannel readerFor(int fileNumber) throws IOException {
+        if (fileNumber != currentFile)
+            return null;
+        if (!currentReader.isOpen())
+            currentReader = FileChannel.open(fileFor(fileNumber).toPath(), StandardOpenOption.READ);
+        return currentReader;
+    }
+
+    private MappedByteBuffer mapFullFile(int fileNumber) throws IOException {
+        synchronized (this) {
+            // only full files are mapped, the last one would outgrow its mapping
+            if (fileNumber >= currentFile)
+                throw new IOException("block file " + fileNumber + " is not full");
+            MappedByteBuffer file = fullFiles.get(fileNumber);
+            if (file == null) {
+                try (FileChannel channel = FileChannel.open(fileFor(fileNumber).toPath(), StandardOpenOption.READ)) {
+                    file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                fullFiles.put(fileNumber, file);
+            }
+            return file;
+        }
+    }
+
+    private void open(int fileNumber) throws IOException {
+        current = FileChannel.open(fileFor(fileNumber).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        currentReader = FileChannel.open(fileFor(fileNumber).toPath(), StandardOpenOption.READ);
+        currentFile = fileNumber;
+        currentSize = current.size();
+    }
+
+    private File fileFor(int fileNumber) {
+        return new File(directory, String.format("blk%05d.dat", fileNumber));
+    }
+}
@@ -0,0 +1,181 @@
+package bitverify.persistence;
+
+import bitverify.crypto.Hash;
+
+import java.util.Arrays;
+
+/**
+ * An in-memory index of every block in the store, so that whether a block exists, where it is in the block tree and
+ * whether it is on the active chain can be found without a database query.
+ *
+ * Each block is given a slot, in the order blocks are added, and its header fields are kept in parallel primitive
+ * arrays indexed by slot. Slots are found from block IDs with an open-addressed hash table using linear probing.
+ * Block IDs are hashes already, so their last four bytes are used as the hash code (the first bytes are mostly zeros,
+ * because block hashes have to meet a target).
+ *
+ * Blocks are never removed. Thread safe: every method synchronizes on the index, so holding its monitor makes a
+ * series of changes appear to other threads all at once.
+ */
+class BlockIndex {
+    /** No slot: a block that is not in the index, or the parent of the genesis block. */
+    static final int NONE = -1;
+
+    private static final int ID_LENGTH = Hash.HASH_LENGTH;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // slot + 1 for each bucket, or 0 if the bucket is empty. Never more than half full.
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    // the block ID of slot i is at ids[i * ID_LENGTH]
+    private byte[] ids = new byte[INITIAL_CAPACITY * ID_LENGTH];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private long[] heights = new long[INITIAL_CAPACITY];
+    private long[] timeStamps = new long[INITIAL_CAPACITY];
+    private int[] targets = new int[INITIAL_CAPACITY];
+    private boolean[] active = new boolean[INITIAL_CAPACITY];
+    // where the block is in the block files, if it is in them
+    private int[] files = new int[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Add a block to the index.
+     * @param blockID       the block's ID
+     * @param prevBlockHash the ID of the block's parent
+     * @return the block's slot, or its existing slot if it is already in the index
+     */
+    synchronized int add(byte[] blockID, byte[] prevBlockHash, long height, long timeStamp, int target, boolean isActive) {
+        int existing = find(blockID);
+        if (existing != NONE)
+            return existing;
+
+        if (size == parents.length)
+            grow();
+        int slot = size++;
+        System.arraycopy(blockID, 0, ids, slot * ID_LENGTH, ID_LENGTH);
+        parents[slot] = find(prevBlockHash);
+        heights[slot] = height;
+        timeStamps[slot] = timeStamp;
+        targets[slot] = target;
+        active[slot] = isActive;
+        files[slot] = NONE;
+        insertIntoTable(slot);
+        return slot;
+    }
+
+    /**
+     * @return the block's slot, or NONE if it is not in the index
+     */
+    synchronized int find(byte[] blockID) {
+        int mask = table.length - 1;
+        if (blockID.length != ID_LENGTH)
+            return NONE;
+        for (int bucket = bucketOf(blockID, 0) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = table[bucket] - 1;
+            if (idEquals(slot, blockID))
+                return slot;
+        }
+        return NONE;
+    }
+
+    synchronized boolean contains(byte[] blockID) {
+        return find(blockID) != NONE;
+    }
+
+    /**
+     * @return true if the block is in the index and on the active chain
+     */
+    synchronized boolean isActive(byte[] blockID) {
+        int slot = find(blockID);
+        return slot != NONE && active[slot];
+    }
+
+    synchronized boolean isActive(int slot) {
+        return active[slot];
+    }
+
+    synchronized void setActive(int slot, boolean isActive) {
+        active[slot] = isActive;
+    }
+
+    /**
+     * @return the slot of the block's parent, or NONE for the genesis block
+     */
+    synchronized int getParent(int slot) {
+        return parents[slot];
+    }
+
+    synchronized long getHeight(int slot) {
+        return heights[slot];
+    }
+
+    synchronized long getTimeStamp(int slot) {
+        return timeStamps[slot];
+    }
+
+    synchronized int getTarget(int slot) {
+        return targets[slot];
+    }
+
+    synchronized void setLocation(int slot, BlockFileStore.Location location) {
+        files[slot] = location.file;
+        offsets[slot] = location.offset;
+        lengths[slot] = location.length;
+    }
+
+    /**
+     * @return where the block is in the block files, or null if it isn't in them
+     */
+    synchronized BlockFileStore.Location getLocation(int slot) {
+        return files[slot] == NONE ? null : new BlockFileStore.Location(files[slot], offsets[slot], lengths[slot]);
+    }
+
+    synchronized byte[] getBlockID(int slot) {
+        return Arrays.copyOfRange(ids, slot * ID_LENGTH, (slot + 1) * ID_LENGTH);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private boolean idEquals(int slot, byte[] blockID) {
+        int offset = slot * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            if (ids[offset + i] != blockID[i])
+                return false;
+        }
+        return true;
+    }
+
+    // the last four bytes of the block ID starting at offset
+    private static int bucketOf(byte[] ids, int offset) {
+        int i = offset + ID_LENGTH - 4;
+        return (ids[i] & 0xff) << 24 | (ids[i + 1] & 0xff) << 16 | (ids[i + 2] & 0xff) << 8 | (ids[i + 3] & 0xff);
+    }
+
+    private void insertIntoTable(int slot) {
+        int mask = table.length - 1;
+        int bucket = bucketOf(ids, slot * ID_LENGTH) & mask;
+        while (table[bucket] != 0)
+            bucket = (bucket + 1) & mask;
+        table[bucket] = slot + 1;
+    }
+
+    private void grow() {
+        int capacity = parents.length * 2;
+        ids = Arrays.copyOf(ids, capacity * ID_LENGTH);
+        parents = Arrays.copyOf(parents, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        timeStamps = Arrays.copyOf(timeStamps, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        active = Arrays.copyOf(active, capacity);
+        files = Arrays.copyOf(files, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+
+        table = new int[capacity * 2];
+        for (int slot = 0; slot < size; slot++)
+            insertIntoTable(slot);
+    }
+}
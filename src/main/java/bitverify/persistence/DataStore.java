@@ -1,10 +1,13 @@
 package bitverify.persistence;
 
 import bitverify.block.Block;
+import bitverify.block.MerkleProof;
 import bitverify.crypto.Identity;
 import bitverify.entries.Entry;
 
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -31,13 +34,27 @@ public interface DataStore {
      */
     Block getMostRecentBlock() throws SQLException;
 
+    /**
+     * Gets the N most recent blocks on the active blockchain, with their entries.
+     * @param n the number of recent-most blocks to get.
+     * @throws SQLException
+     */
+    List<Block> getNMostRecentBlocks(int n) throws SQLException;
+
     /**
      * Gets the N most recent blocks on the active blockchain.
      * Blocks returned only contain their headers, no entries.
      * @param n the number of recent-most blocks to get.
      * @throws SQLException
      */
-    List<Block> getNMostRecentBlocks(int n) throws SQLException;
+    List<Block> getNMostRecentBlockHeaders(int n) throws SQLException;
+
+    /**
+     * Gets the N most recent blocks, from (including) the given blockID backwards, with their entries.
+     * @param n the number of recent-most blocks to get.
+     * @throws SQLException
+     */
+    List<Block> getNMostRecentBlocks(int n, Block fromBlock) throws SQLException;
 
     /**
      * Gets the N most recent blocks, from (including) the given blockID backwards.
@@ -45,15 +62,23 @@ public interface DataStore {
      * @param n the number of recent-most blocks to get.
      * @throws SQLException
      */
-    List<Block> getNMostRecentBlocks(int n, Block fromBlock) throws SQLException;
+    List<Block> getNMostRecentBlockHeaders(int n, Block fromBlock) throws SQLException;
 
     /**
-     * Get all of the blocks after a certain block or between two blocks, up to a limited number.
+     * Get all of the blocks after a certain block or between two blocks, up to a limited number, with their entries.
      * @param idFrom get blocks after this block ID
      * @param limit  the maximum number of block IDs to get. Provide -1 if there is no limit.
      */
     List<Block> getActiveBlocksAfter(byte[] idFrom, int limit) throws SQLException;
 
+    /**
+     * Get all of the blocks after a certain block or between two blocks, up to a limited number.
+     * Blocks returned only contain their headers, no entries.
+     * @param idFrom get blocks after this block ID
+     * @param limit  the maximum number of block IDs to get. Provide -1 if there is no limit.
+     */
+    List<Block> getActiveBlockHeadersAfter(byte[] idFrom, int limit) throws SQLException;
+
     /**
      * Inserts the given block into the store, unless it is already present or would be an orphan.
      * @param b the block
@@ -72,6 +97,23 @@ public interface DataStore {
      */
     Block getBlock(byte[] blockID) throws SQLException;
 
+    /**
+     * Get a block in the form it is sent to peers: a serialized BlockMessage of its header and entries.
+     * Only blocks stored in block files can be got this way.
+     * @param blockID the block id
+     * @return a read-only buffer over the block, or null if it isn't in the store's block files
+     * @throws SQLException
+     */
+    ByteBuffer getSerializedBlock(byte[] blockID) throws SQLException;
+
+    /**
+     * Get a particular block's header, without its entries.
+     * @param blockID the block id
+     * @return the block, or null if it is not in the store
+     * @throws SQLException
+     */
+    Block getBlockHeader(byte[] blockID) throws SQLException;
+
     /**
      * Get all blocks in the datastore.
      * @throws SQLException
@@ -86,6 +128,15 @@ public interface DataStore {
      */
     boolean isBlockOnActiveChain(byte[] blockID) throws SQLException;
 
+    /**
+     * Create a proof that a confirmed entry is in its block on the active chain, which can be checked against that
+     * block's header alone.
+     * @param e the entry
+     * @return the proof, or null if the entry is not confirmed or its block is a version 1 block with no Merkle entries hash
+     * @throws SQLException
+     */
+    MerkleProof getInclusionProof(Entry e) throws SQLException;
+
     /**
      * Gets the number of entries in the store.
      * @throws SQLException
@@ -106,6 +157,13 @@ public interface DataStore {
      */
     List<Entry> getEntries(byte[] fileHash) throws SQLException;
 
+    /**
+     * Get all entries matching any of the given file hashes, with a single query.
+     * @param fileHashes the file hashes
+     * @throws SQLException
+     */
+    List<Entry> getEntries(Collection<byte[]> fileHashes) throws SQLException;
+
     /**
      * Get all entries that are unconfirmed (not part of a block on the active blockchain).
      * @throws SQLException
@@ -125,15 +183,26 @@ public interface DataStore {
     DatabaseIterator<Entry> getAllEntries() throws SQLException;
 
     /**
-     * Get all entries where one of the string metadata fields partially matches the given query.
-     * Query is split on whitespace, so for example searching for "london bridge" will return
+     * Get all entries where a word in one of the string metadata fields starts with a word of the given query,
+     * ignoring case. Query is split into words, so for example searching for "london bridge" will return
      * any entries containing "london" and any entries containing "bridge".
-     * @param searchQuery the search query
+     * Entries matching more of the query's words come first, then newer entries.
+     * @param searchQuery the search query. An empty query returns every entry.
      * @return all matching entries
      * @throws SQLException
      */
     DatabaseIterator<Entry> searchEntries(String searchQuery) throws SQLException;
 
+    /**
+     * Get one page of the entries searchEntries(searchQuery) would return, without finding the rest.
+     * @param searchQuery the search query. A query with no words returns every entry, newest first.
+     * @param offset      the number of matching entries to skip
+     * @param limit       the maximum number of entries to return
+     * @return the matching entries, best first
+     * @throws SQLException
+     */
+    List<Entry> searchEntries(String searchQuery, int offset, int limit) throws SQLException;
+
     /**
      * Insert an entry into the store, unless it already exists
      * @param e the entry
@@ -142,6 +211,31 @@ public interface DataStore {
      */
     boolean insertEntry(Entry e) throws SQLException;
 
+    /**
+     * Look up a public key in the key dictionary.
+     * @param keyReference the key reference, as created by Asymmetric.getKeyReference
+     * @return the public byte key, or null if it is not in the dictionary
+     * @throws SQLException
+     */
+    byte[] getKey(byte[] keyReference) throws SQLException;
+
+    /**
+     * Look up many public keys in the key dictionary at once.
+     * @param keyReferences the key references, as created by Asymmetric.getKeyReference
+     * @return the public byte keys that are in the dictionary, in no particular order
+     * @throws SQLException
+     */
+    List<byte[]> getKeys(Collection<byte[]> keyReferences) throws SQLException;
+
+    /**
+     * Add a public key to the key dictionary, unless it is already there.
+     * The keys of inserted entries are added automatically when they are known.
+     * @param publicKey the public byte key
+     * @return true if the key was added, false if it was already in the dictionary
+     * @throws SQLException
+     */
+    boolean insertKey(byte[] publicKey) throws SQLException;
+
     /**
      * Get a property's value. Will return null if the property is not stored.
      * @param key the property key
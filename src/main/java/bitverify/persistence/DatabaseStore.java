@@ -2,26 +2,41 @@ package bitverify.persistence;
 
 
 import bitverify.block.Block;
+import bitverify.block.MerkleProof;
 
 import bitverify.crypto.Identity;
 import bitverify.entries.Entry;
 import bitverify.network.BlockID;
+import bitverify.network.proto.MessageProto.BlockMessage;
+import com.google.protobuf.ByteString;
+import com.j256.ormlite.dao.BaseDaoImpl;
 import com.j256.ormlite.dao.CloseableIterator;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
 import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
 import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.stmt.*;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableInfo;
 import com.j256.ormlite.table.TableUtils;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
 
 
 public class DatabaseStore implements DataStore {
 
+    private ConnectionSource connectionSource;
     private TransactionManager t;
 
     private Dao<Entry, UUID> entryDao;
@@ -29,16 +44,45 @@ public class DatabaseStore implements DataStore {
     private Dao<BlockEntry, Void> blockEntryDao;
     private Dao<Property, String> propertyDao;
     private Dao<Identity, Integer> identityDao;
+    private Dao<DictionaryKey, Void> keyDao;
 
-    private PreparedQuery<Entry> entriesForBlockQuery;
+    // every block in the store, so lookups of block IDs don't need a query
+    private final BlockIndex blockIndex = new BlockIndex();
+    // the words in every entry's metadata, so searches don't need to scan the entry table
+    private final EntrySearchIndex searchIndex = new EntrySearchIndex();
 
-    private Block latestBlock;
+    // read without locking, so only replaced once the block it refers to has been committed
+    private volatile Block latestBlock;
+
+    // where blocks are kept as they are sent to peers, or null to keep them only in the database
+    private final BlockFileStore blockFiles;
+
+    // held by every change to the store, so there is one writer at a time. Reads don't take it.
+    private final Object writeMonitor = new Object();
 
     final int DUPLICATE_ERROR_CODE = 23001;
+    final int DUPLICATE_COLUMN_ERROR_CODE = 42121;
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+    private static final int BLOCK_PAGE_SIZE = 500;
 
     public DatabaseStore(String databasePath) throws SQLException {
+        this(databasePath, null);
+    }
+
+    /**
+     * @param databasePath   the JDBC URL of the database
+     * @param blockDirectory where to append the blocks to files in the form they are sent to peers, or null to keep
+     *                       them only in the database
+     */
+    public DatabaseStore(String databasePath, File blockDirectory) throws SQLException {
+        try {
+            blockFiles = blockDirectory == null ? null : new BlockFileStore(blockDirectory, BlockFileStore.DEFAULT_MAX_FILE_SIZE);
+        } catch (IOException e) {
+            throw new SQLException("could not open block files", e);
+        }
 
-        ConnectionSource cs = new JdbcPooledConnectionSource(databasePath);
+        ConnectionSource cs = new JdbcPooledConnectionSource(withMVCC(databasePath));
+        connectionSource = cs;
         t = new TransactionManager(cs);
 
         entryDao = DaoManager.createDao(cs, Entry.class);
@@ -46,11 +90,10 @@ public class DatabaseStore implements DataStore {
         blockEntryDao = DaoManager.createDao(cs, BlockEntry.class);
         propertyDao = DaoManager.createDao(cs, Property.class);
         identityDao = DaoManager.createDao(cs, Identity.class);
+        keyDao = DaoManager.createDao(cs, DictionaryKey.class);
 
         initializeDatabase(cs);
 
-        prepareEntriesForBlockQuery();
-
         String latestBlockIDString = getProperty("latestBlockID");
         if (latestBlockIDString == null) {
             Block g = Block.getGenesisBlock();
@@ -63,6 +106,16 @@ public class DatabaseStore implements DataStore {
         }
     }
 
+    /**
+     * With MVCC, H2 lets queries on other connections go ahead while a write transaction is open, seeing the data as
+     * it was last committed, instead of waiting for the transaction's table locks.
+     */
+    static String withMVCC(String databasePath) {
+        if (databasePath.startsWith("jdbc:h2:") && !databasePath.toUpperCase().contains(";MVCC="))
+            return databasePath + ";MVCC=TRUE";
+        return databasePath;
+    }
+
     private void initializeDatabase(ConnectionSource cs) throws SQLException {
         t.callInTransaction(() -> {
             // create tables
@@ -71,37 +124,117 @@ public class DatabaseStore implements DataStore {
             TableUtils.createTableIfNotExists(cs, BlockEntry.class);
             TableUtils.createTableIfNotExists(cs, Property.class);
             TableUtils.createTableIfNotExists(cs, Identity.class);
+            TableUtils.createTableIfNotExists(cs, DictionaryKey.class);
+            // then bring tables made by older versions up to date
+            schemaMigrator().migrate();
+            loadBlockIndex();
+            loadSearchIndex();
 
             // make sure genesis block is present
             Block g = Block.getGenesisBlock();
             if (!blockExists(g.getBlockID())) {
                 g.setActive(true);
                 blockDao.create(g);
+                blockIndex.add(g.getBlockID(), g.getPrevBlockHash(), g.getHeight(), g.getTimeStamp(), g.getTarget(), true);
             }
             return null;
         });
     }
 
+    /**
+     * The changes made to the schema since tables were first created. Add new ones to the end.
+     */
+    private SchemaMigrator schemaMigrator() {
+        return new SchemaMigrator(propertyDao)
+                .add(1, "add block versions", this::addBlockVersionColumn)
+                .add(2, "index the columns queries look up", this::addQueryIndexes)
+                .add(3, "record where blocks are in the block files", () -> {
+                    addColumn("block", "`blockFile` INTEGER");
+                    addColumn("block", "`blockOffset` BIGINT");
+                    addColumn("block", "`blockLength` INTEGER");
+                })
+                .add(4, "record the key types of identities",
+                        () -> addColumn("identity", "`keyType` INTEGER DEFAULT " + Identity.KEY_TYPE_RSA));
+    }
+
+    private void addQueryIndexes() throws SQLException {
+        // entries are looked up by document hash, singly and in batches
+        entryDao.executeRaw("CREATE INDEX IF NOT EXISTS `entry_docHash_idx` ON `entry` ( `docHash` )");
+        // confirmed and unconfirmed entries are listed
+        entryDao.executeRaw("CREATE INDEX IF NOT EXISTS `entry_confirmed_idx` ON `entry` ( `confirmed` )");
+        // the active chain is counted, sampled and read in height order
+        blockDao.executeRaw("CREATE INDEX IF NOT EXISTS `block_active_height_idx` ON `block` ( `active`, `height` )");
+        // recent blocks are read by height range, and all blocks in height order
+        blockDao.executeRaw("CREATE INDEX IF NOT EXISTS `block_height_timeStamp_idx` ON `block` ( `height`, `timeStamp` )");
+        // inclusion proofs find the blocks containing an entry. Lookups by block use the (blockID, entryID) constraint.
+        blockEntryDao.executeRaw("CREATE INDEX IF NOT EXISTS `blockentry_entryID_idx` ON `blockentry` ( `entryID` )");
+    }
+
+    /**
+     * Databases created before blocks had versions have no version column, and all their blocks are version 1.
+     */
+    private void addBlockVersionColumn() throws SQLException {
+        addColumn("block", "`version` INTEGER DEFAULT " + Block.VERSION_FLAT_ENTRIES);
+    }
+
+    private void addColumn(String table, String columnDefinition) throws SQLException {
+        try {
+            blockDao.executeRaw("ALTER TABLE `" + table + "` ADD COLUMN " + columnDefinition);
+        } catch (SQLException e) {
+            // the column is already there
+            if (!(e.getCause() instanceof SQLException && ((SQLException) e.getCause()).getErrorCode() == DUPLICATE_COLUMN_ERROR_CODE))
+                throw e;
+        }
+    }
+
+    private void loadBlockIndex() throws SQLException {
+        // parents come before their children in height order, so each parent is already indexed
+        GenericRawResults<Object[]> rows = blockDao.queryRaw(
+                "SELECT `blockID`, `prevBlockHash`, `height`, `timeStamp`, `bitsTarget`, `active`, `blockFile`, `blockOffset`, `blockLength` FROM `block` ORDER BY `height`",
+                new DataType[]{DataType.BYTE_ARRAY, DataType.BYTE_ARRAY, DataType.LONG, DataType.LONG, DataType.INTEGER, DataType.BOOLEAN,
+                        DataType.INTEGER_OBJ, DataType.LONG_OBJ, DataType.INTEGER_OBJ});
+        try {
+            for (Object[] row : rows) {
+                // a block without an ID can never be looked up
+                if (row[0] == null)
+                    continue;
+                int slot = blockIndex.add((byte[]) row[0], row[1] == null ? new byte[0] : (byte[]) row[1],
+                        row[2] == null ? 0 : (Long) row[2], row[3] == null ? 0 : (Long) row[3],
+                        row[4] == null ? 0 : (Integer) row[4], row[5] != null && (Boolean) row[5]);
+                // blocks from before there were block files are only in the database
+                if (row[6] != null && row[7] != null && row[8] != null)
+                    blockIndex.setLocation(slot, new BlockFileStore.Location((Integer) row[6], (Long) row[7], (Integer) row[8]));
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    private void loadSearchIndex() throws SQLException {
+        // oldest first, so newer entries rank above older ones
+        GenericRawResults<String[]> rows = entryDao.queryRaw(
+                "SELECT `entryID`, `docName`, `docDescription`, `docGeoLocation`, `docLink` FROM `entry` ORDER BY `entryTimeStamp`");
+        try {
+            for (String[] row : rows) {
+                if (row[0] != null)
+                    searchIndex.add(UUID.fromString(row[0]), row[1], row[2], row[3], row[4]);
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    private static String[] searchableFields(Entry e) {
+        return new String[]{e.getDocName(), e.getDocDescription(), e.getDocGeoLocation(), e.getDocLink()};
+    }
+
     private void setLatestBlock(Block b) throws SQLException {
         latestBlock = b;
         setProperty("latestBlockID",  new BlockID(b.getBlockID()).toString());
     }
 
     public boolean blockExists(byte[] blockID) throws SQLException {
-        return blockDao.queryBuilder()
-                .where()
-                .eq("blockID", blockID)
-                .countOf() > 0;
-    }
-
-    private void prepareEntriesForBlockQuery() throws SQLException {
-        QueryBuilder<BlockEntry, Void> blockEntryQB = blockEntryDao.queryBuilder()
-                .selectColumns("entryID");
-        blockEntryQB.where().eq("blockID", new SelectArg());
-
-        QueryBuilder<Entry, UUID> entryQB = entryDao.queryBuilder();
-        entryQB.where().in("entryID", blockEntryQB);
-        entriesForBlockQuery = entryQB.prepare();
+        return blockIndex.contains(blockID);
     }
 
     public long getBlocksCount() throws SQLException {
@@ -118,15 +251,30 @@ public class DatabaseStore implements DataStore {
                 .orderBy("timeStamp", true)
                 .iterator();
 
+        // read blocks a page at a time, so the entries for a whole page can be loaded at once
         return new DatabaseIterator<Block>(blocks) {
+            private final List<Block> page = new ArrayList<>(BLOCK_PAGE_SIZE);
+            private int next;
+            // the underlying iterator closes itself once it has returned every block
+            private boolean exhausted;
+
             @Override
             public boolean moveNext() throws SQLException {
-                current = ci.nextThrow();
-                if (current != null) {
-                    current.setEntriesList(getEntriesForBlock(current.getBlockID()));
-                    return true;
+                if (next == page.size() && !exhausted) {
+                    page.clear();
+                    next = 0;
+                    while (page.size() < BLOCK_PAGE_SIZE) {
+                        Block b = ci.nextThrow();
+                        if (b == null) {
+                            exhausted = true;
+                            break;
+                        }
+                        page.add(b);
+                    }
+                    setEntriesForBlocks(page);
                 }
-                return false;
+                current = next < page.size() ? page.get(next++) : null;
+                return current != null;
             }
         };
     }
@@ -136,19 +284,52 @@ public class DatabaseStore implements DataStore {
         return latestBlock;
     }
 
+    private List<Entry> getEntriesForBlock(byte[] blockID) throws SQLException {
+        QueryBuilder<BlockEntry, Void> blockEntryQB = blockEntryDao.queryBuilder()
+                .selectColumns("entryID");
+        blockEntryQB.where().eq("blockID", blockID);
+        return entryDao.queryBuilder().where().in("entryID", blockEntryQB).query();
+    }
+
     /**
-     * Must be synchronised since we set the argument value, then query,
-     * and don't want another thread to change the argument in the mean time.
-     * @param blockID
-     * @return
+     * Loads the entries of all the given blocks, with two queries per MAX_IN_CLAUSE_SIZE blocks rather than one per block.
+     * @param blocks blocks with only their headers, whose entries will be set
      * @throws SQLException
      */
-    private synchronized List<Entry> getEntriesForBlock(byte[] blockID) throws SQLException {
-        entriesForBlockQuery.setArgumentHolderValue(0, blockID);
-        return entryDao.query(entriesForBlockQuery);
+    private void setEntriesForBlocks(List<Block> blocks) throws SQLException {
+        Map<ByteBuffer, List<Entry>> entriesByBlock = new HashMap<>();
+        List<byte[]> blockIDs = new ArrayList<>(blocks.size());
+        for (Block b : blocks) {
+            blockIDs.add(b.getBlockID());
+            entriesByBlock.put(ByteBuffer.wrap(b.getBlockID()), new ArrayList<>());
+        }
+
+        for (List<byte[]> batch : batches(blockIDs)) {
+            QueryBuilder<BlockEntry, Void> blockEntryQB = blockEntryDao.queryBuilder()
+                    .selectColumns("entryID");
+            blockEntryQB.where().in("blockID", batch);
+            Map<UUID, Entry> entries = new HashMap<>();
+            for (Entry e : entryDao.queryBuilder().where().in("entryID", blockEntryQB).query())
+                entries.put(e.getEntryID(), e);
+
+            for (BlockEntry be : blockEntryDao.queryBuilder().where().in("blockID", batch).query()) {
+                Entry e = entries.get(be.getEntryID());
+                if (e != null)
+                    entriesByBlock.get(ByteBuffer.wrap(be.getBlockID())).add(e);
+            }
+        }
+
+        for (Block b : blocks)
+            b.setEntriesList(entriesByBlock.get(ByteBuffer.wrap(b.getBlockID())));
+    }
+
+    public List<Block> getNMostRecentBlocks(int n, Block fromBlock) throws SQLException {
+        List<Block> blocks = getNMostRecentBlockHeaders(n, fromBlock);
+        setEntriesForBlocks(blocks);
+        return blocks;
     }
 
-    public synchronized List<Block> getNMostRecentBlocks(int n, Block fromBlock) throws SQLException {
+    public List<Block> getNMostRecentBlockHeaders(int n, Block fromBlock) throws SQLException {
         // Sorted with the recent block at (or near) the header of the block
         // n = 2 means return the most recent block and the one before
         CloseableIterator<Block> initialResults = blockDao.queryBuilder()
@@ -168,7 +349,6 @@ public class DatabaseStore implements DataStore {
                 Block b = initialResults.next();
                 if (Arrays.equals(b.getBlockID(), expectedID)) {
                     output.add(b);
-                    b.setEntriesList(getEntriesForBlock(b.getBlockID()));
                     expectedID = b.getPrevBlockHash();
                 }
             }
@@ -179,13 +359,24 @@ public class DatabaseStore implements DataStore {
         return output;
     }
 
-    public synchronized List<Block> getNMostRecentBlocks(int n) throws SQLException {
+    public List<Block> getNMostRecentBlocks(int n) throws SQLException {
         return getNMostRecentBlocks(n, latestBlock);
     }
 
-    public synchronized List<Block> getActiveBlocksAfter(byte[] idFrom, int limit) throws SQLException {
+    public List<Block> getNMostRecentBlockHeaders(int n) throws SQLException {
+        return getNMostRecentBlockHeaders(n, latestBlock);
+    }
+
+    public List<Block> getActiveBlocksAfter(byte[] idFrom, int limit) throws SQLException {
+        List<Block> blocks = getActiveBlockHeadersAfter(idFrom, limit);
+        if (blocks != null)
+            setEntriesForBlocks(blocks);
+        return blocks;
+    }
+
+    public List<Block> getActiveBlockHeadersAfter(byte[] idFrom, int limit) throws SQLException {
         // try to retrieve the starting block from the database.
-        Block startBlock = getBlock(idFrom);
+        Block startBlock = getBlockHeader(idFrom);
         if (startBlock == null)
             return null;
 
@@ -212,7 +403,6 @@ public class DatabaseStore implements DataStore {
             while (results.hasNext() && limit > 0) {
                 Block b = results.next();
                 if (Arrays.equals(b.getPrevBlockHash(), expectedParentID)) {
-                    b.setEntriesList(getEntriesForBlock(b.getBlockID()));
                     output.add(b);
                     expectedParentID = b.getBlockID();
                 }
@@ -224,13 +414,21 @@ public class DatabaseStore implements DataStore {
         return output;
     }
 
-    public synchronized InsertBlockResult insertBlock(Block b) throws SQLException {
-        return t.callInTransaction(() -> {
+    public InsertBlockResult insertBlock(Block b) throws SQLException {
+        synchronized (writeMonitor) {
+            return insertBlockLocked(b);
+        }
+    }
+
+    private InsertBlockResult insertBlockLocked(Block b) throws SQLException {
+        List<Integer> blocksToActivate = new ArrayList<>();
+        List<Entry> createdEntries = new ArrayList<>();
+        BlockFileStore.Location[] location = new BlockFileStore.Location[1];
+        List<Integer> blocksToDeactivate = new ArrayList<>();
+        InsertBlockResult result = t.callInTransaction(() -> {
             boolean blockIsNewLatest = false;
-            List<Block> blocksToActivate = new ArrayList<>();
-            List<Block> blocksToDeactivate = new ArrayList<>();
 
-            // safe to check early now this method is synchronised
+            // safe to check early since there is only one writer
             if (blockExists(b.getBlockID()))
                 return InsertBlockResult.FAIL_DUPLICATE;
 
@@ -242,8 +440,8 @@ public class DatabaseStore implements DataStore {
 
             } else {
                 // see if this will be the new latest block
-                Block parent = getBlock(b.getPrevBlockHash());
-                if (parent == null) {
+                int parent = blockIndex.find(b.getPrevBlockHash());
+                if (parent == BlockIndex.NONE) {
                     // orphan blocks are not inserted into the database
                     return InsertBlockResult.FAIL_ORPHAN;
 
@@ -251,43 +449,24 @@ public class DatabaseStore implements DataStore {
                     long oldHeight = latestBlock.getHeight();
                     Block oldLatestBlock = latestBlock;
 
-                    long newHeight = parent.getHeight() + 1;
+                    long newHeight = blockIndex.getHeight(parent) + 1;
                     b.setHeight(newHeight);
 
                     if (newHeight > oldHeight || (newHeight == oldHeight && b.getTimeStamp() < oldLatestBlock.getTimeStamp())) {
 
                         blockIsNewLatest = true;
-                        // so determine which blocks to activate/deactivate
-                        CloseableIterator<Block> blocksFromHighest = blockDao.queryBuilder().orderBy("height", false).iterator();
-
-                        Block current = null;
-                        byte[] prevBlockOnOldChain = oldLatestBlock.getBlockID();
-                        byte[] prevBlockOnNewChain = b.getPrevBlockHash();
-
-                        // stop when the parent on both chains is the same block (and so it will remain active)
-                        try {
-                            while (blocksFromHighest.hasNext() && !Arrays.equals(prevBlockOnNewChain, prevBlockOnOldChain)) {
-
-                                current = blocksFromHighest.next();
-                                // current could be:
-                                // 1. a block on the new active chain - activate it
-                                // 2. a block on the old active chain - deactivate it
-                                // 3. otherwise a block on another inactive chain that will remain inactive
-
-                                if (Arrays.equals(current.getBlockID(), prevBlockOnNewChain)) {
-                                    prevBlockOnNewChain = current.getPrevBlockHash();
-                                    current.setEntriesList(getEntriesForBlock(current.getBlockID()));
-                                    blocksToActivate.add(current);
-
-                                } else if (Arrays.equals(current.getBlockID(), prevBlockOnOldChain)) {
-                                    prevBlockOnOldChain = current.getPrevBlockHash();
-                                    current.setEntriesList(getEntriesForBlock(current.getBlockID()));
-                                    blocksToDeactivate.add(current);
-                                }
+                        // so determine which blocks to activate/deactivate, by following the parents of both tips
+                        // back to the block where the chains meet (which will remain active)
+                        int onOldChain = blockIndex.find(oldLatestBlock.getBlockID());
+                        int onNewChain = parent;
+                        while (onOldChain != onNewChain) {
+                            if (blockIndex.getHeight(onOldChain) >= blockIndex.getHeight(onNewChain)) {
+                                blocksToDeactivate.add(onOldChain);
+                                onOldChain = blockIndex.getParent(onOldChain);
+                            } else {
+                                blocksToActivate.add(onNewChain);
+                                onNewChain = blockIndex.getParent(onNewChain);
                             }
-                        } finally {
-                            // must be sure to close the iterator
-                            blocksFromHighest.close();
                         }
                     }
                 }
@@ -297,116 +476,340 @@ public class DatabaseStore implements DataStore {
 
             b.setActive(blockIsNewLatest);
 
-            // deactivate first, in case an entry will get reactivated.
-            for (Block block : blocksToDeactivate) {
-                updateBlockActive(block, false);
-                setBlockEntriesConfirmed(block, false);
-            }
-
-            if (!blockIsNewLatest) {
-                // inserting an inactive block: insert entries as unconfirmed where necessary but don't update them, in case we made them confirmed elsewhere
-                for (Entry e : b.getEntriesList()) {
-                    if (!entryExists(e)) {
-                        e.setConfirmed(false);
-                        insertEntry(e);
-                    }
-                }
-            }
-
-            for (Block block : blocksToActivate) {
-                updateBlockActive(block, true);
-                setBlockEntriesConfirmed(block, true);
+            if (!blocksToDeactivate.isEmpty() || !blocksToActivate.isEmpty()) {
+                List<byte[]> deactivatedIDs = getBlockIDs(blocksToDeactivate);
+                List<byte[]> activatedIDs = getBlockIDs(blocksToActivate);
+                // entries in blocks on both chains stay confirmed
+                Set<UUID> entriesToConfirm = getEntryIDsForBlocks(activatedIDs);
+                Set<UUID> entriesToUnconfirm = getEntryIDsForBlocks(deactivatedIDs);
+                entriesToUnconfirm.removeAll(entriesToConfirm);
+
+                updateBlocksActive(deactivatedIDs, false);
+                updateEntriesConfirmed(entriesToUnconfirm, false);
+                updateBlocksActive(activatedIDs, true);
+                updateEntriesConfirmed(entriesToConfirm, true);
             }
 
-            if (blockIsNewLatest) {
-                // inserting an active block: insert or update entries as confirmed
-                for (Entry e : b.getEntriesList()) {
-                    if (entryExists(e))
-                        updateEntryConfirmed(e, true);
-                    else {
+            // insert the entries we don't have yet, as confirmed if the block is active.
+            // An inactive block leaves entries we already have alone, in case we made them confirmed elsewhere.
+            Set<UUID> existingEntries = getExistingEntryIDs(b.getEntriesList());
+            Set<ByteBuffer> newKeys = new HashSet<>();
+            for (Entry e : b.getEntriesList()) {
+                if (existingEntries.contains(e.getEntryID())) {
+                    if (blockIsNewLatest)
                         e.setConfirmed(true);
-                        entryDao.create(e);
-                    }
+                } else {
+                    e.setConfirmed(blockIsNewLatest);
+                    createdEntries.add(e);
+                    // the entries in a block often share uploaders, so only add each key once
+                    if (e.getUploaderKey() != null)
+                        newKeys.add(ByteBuffer.wrap(e.getUploaderKey()));
+                    if (e.getReceiverKey() != null)
+                        newKeys.add(ByteBuffer.wrap(e.getReceiverKey()));
                 }
             }
+            insertAll(entryDao, createdEntries);
+            insertKeys(newKeys);
 
             // now insert block-entry mappings into link table
-            for (Entry e : b.getEntriesList())
-                blockEntryDao.create(new BlockEntry(b.getBlockID(), e.getEntryID()));
+            insertBlockEntries(b);
+
+            // inserting an active block: confirm the entries we already had too
+            if (blockIsNewLatest && !existingEntries.isEmpty())
+                setBlockEntriesConfirmed(b.getBlockID(), true);
 
             if (blockIsNewLatest)
-                setLatestBlock(b);
+                setProperty("latestBlockID", new BlockID(b.getBlockID()).toString());
 
             // always add block to database
             blockDao.create(b);
 
+            // and append it to the block files, recording where it is
+            if (blockFiles != null) {
+                location[0] = blockFiles.append(serializeForPeers(b));
+                setBlockLocation(b.getBlockID(), location[0]);
+            }
+
             // block was successfully inserted
             return InsertBlockResult.SUCCESS;
         });
+
+        // only change the index and latest block once the changes to the database have been committed,
+        // so readers never see a block that isn't there yet
+        if (result == InsertBlockResult.SUCCESS) {
+            // readers see the whole reorganisation at once
+            synchronized (blockIndex) {
+                for (int slot : blocksToDeactivate)
+                    blockIndex.setActive(slot, false);
+                for (int slot : blocksToActivate)
+                    blockIndex.setActive(slot, true);
+                int slot = blockIndex.add(b.getBlockID(), b.getPrevBlockHash(), b.getHeight(), b.getTimeStamp(), b.getTarget(), b.isActive());
+                if (location[0] != null)
+                    blockIndex.setLocation(slot, location[0]);
+            }
+            if (b.isActive())
+                latestBlock = b;
+            for (Entry e : createdEntries)
+                searchIndex.add(e.getEntryID(), searchableFields(e));
+        }
+        return result;
     }
 
     public boolean isBlockOnActiveChain(byte[] blockID) throws SQLException {
-        Block block = getBlock(blockID);
-        return (block != null && block.isActive());
+        return blockIndex.isActive(blockID);
+    }
+
+    public MerkleProof getInclusionProof(Entry e) throws SQLException {
+        List<BlockEntry> blockEntries = blockEntryDao.queryForEq("entryID", e.getEntryID());
+        for (BlockEntry be : blockEntries) {
+            if (!blockIndex.isActive(be.getBlockID()))
+                continue;
+            Block block = getBlock(be.getBlockID());
+            if (block != null && block.isActive())
+                return block.getInclusionProof(e);
+        }
+        return null;
+    }
+
+    private List<byte[]> getBlockIDs(List<Integer> slots) {
+        List<byte[]> blockIDs = new ArrayList<>(slots.size());
+        for (int slot : slots)
+            blockIDs.add(blockIndex.getBlockID(slot));
+        return blockIDs;
+    }
+
+    /**
+     * Gets the IDs of all the entries in any of the given blocks.
+     */
+    private Set<UUID> getEntryIDsForBlocks(List<byte[]> blockIDs) throws SQLException {
+        Set<UUID> entryIDs = new HashSet<>();
+        for (List<byte[]> batch : batches(blockIDs)) {
+            for (BlockEntry be : blockEntryDao.queryBuilder().where().in("blockID", batch).query())
+                entryIDs.add(be.getEntryID());
+        }
+        return entryIDs;
     }
 
     /**
-     * Sets all of the entries in this block as confirmed or unconfirmed.
+     * Sets the given entries as confirmed or unconfirmed.
      * Not an atomic operation so should call this from a transaction.
-     * @param block the block whose entries will be affected
-     * @param confirmed whether the entries are now confirmed or unconfirmed
-     * @throws SQLException
      */
-    private void setBlockEntriesConfirmed(Block block, boolean confirmed) throws SQLException {
-        for (Entry e : block.getEntriesList()) {
-            updateEntryConfirmed(e, confirmed);
+    private void updateEntriesConfirmed(Collection<UUID> entryIDs, boolean confirmed) throws SQLException {
+        for (List<UUID> batch : batches(new ArrayList<>(entryIDs))) {
+            UpdateBuilder<Entry, UUID> ub = entryDao.updateBuilder();
+            ub.updateColumnValue("confirmed", confirmed);
+            ub.where().in("entryID", batch);
+            ub.update();
         }
     }
 
-    private void updateEntryConfirmed(Entry entry, boolean confirmed) throws SQLException {
-        entry.setConfirmed(confirmed);
+    /**
+     * Sets all of the entries in this block as confirmed or unconfirmed, with a single statement.
+     * @param blockID the block whose entries will be affected
+     * @param confirmed whether the entries are now confirmed or unconfirmed
+     * @throws SQLException
+     */
+    private void setBlockEntriesConfirmed(byte[] blockID, boolean confirmed) throws SQLException {
+        QueryBuilder<BlockEntry, Void> blockEntryQB = blockEntryDao.queryBuilder()
+                .selectColumns("entryID");
+        blockEntryQB.where().eq("blockID", blockID);
+
         UpdateBuilder<Entry, UUID> ub = entryDao.updateBuilder();
         ub.updateColumnValue("confirmed", confirmed);
-        ub.where().eq("entryID", entry.getEntryID());
+        ub.where().in("entryID", blockEntryQB);
         ub.update();
     }
 
-    private void updateBlockActive(Block block, boolean active) throws SQLException {
-        block.setActive(active);
-        UpdateBuilder<Block, Void> ub = blockDao.updateBuilder();
-        ub.updateColumnValue("active", active);
-        ub.where().eq("blockID", block.getBlockID());
-        ub.update();
+    /**
+     * Gets which of the given entries are already in the store.
+     */
+    private Set<UUID> getExistingEntryIDs(List<Entry> entries) throws SQLException {
+        List<UUID> ids = new ArrayList<>(entries.size());
+        for (Entry e : entries)
+            ids.add(e.getEntryID());
+        Set<UUID> existing = new HashSet<>();
+        for (List<UUID> batch : batches(ids)) {
+            for (Entry e : entryDao.queryBuilder().selectColumns("entryID").where().in("entryID", batch).query())
+                existing.add(e.getEntryID());
+        }
+        return existing;
+    }
+
+    /**
+     * Inserts the block-entry mappings for all of a block's entries as one JDBC batch.
+     * Uses the transaction's connection when called from a transaction.
+     */
+    private void insertBlockEntries(Block b) throws SQLException {
+        if (b.getEntriesList().isEmpty())
+            return;
+        DatabaseConnection dc = connectionSource.getReadWriteConnection();
+        try (PreparedStatement ps = ((JdbcDatabaseConnection) dc).getInternalConnection().prepareStatement(
+                "INSERT INTO `blockentry` (`blockID`, `entryID`) VALUES (?, ?)")) {
+            for (Entry e : b.getEntriesList()) {
+                ps.setBytes(1, b.getBlockID());
+                // ORMLite stores UUIDs as strings
+                ps.setString(2, e.getEntryID().toString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            connectionSource.releaseConnection(dc);
+        }
     }
 
-    public synchronized Block getBlock(byte[] blockID) throws SQLException {
-        Block b = blockDao.queryBuilder().limit(1L).where().eq("blockID", blockID).queryForFirst();
+    /**
+     * Inserts rows as one JDBC batch, setting every persisted field the way the DAO's create would.
+     * Uses the transaction's connection when called from a transaction.
+     */
+    private <T> void insertAll(Dao<T, ?> dao, Collection<T> rows) throws SQLException {
+        if (rows.isEmpty())
+            return;
+        TableInfo<T, ?> tableInfo = ((BaseDaoImpl<T, ?>) dao).getTableInfo();
+        List<FieldType> fields = new ArrayList<>();
+        StringJoiner columns = new StringJoiner(", ");
+        StringJoiner values = new StringJoiner(", ");
+        for (FieldType f : tableInfo.getFieldTypes()) {
+            if (f.isGeneratedId() || f.isForeignCollection())
+                continue;
+            fields.add(f);
+            columns.add("`" + f.getColumnName() + "`");
+            values.add("?");
+        }
+        DatabaseConnection dc = connectionSource.getReadWriteConnection();
+        try (PreparedStatement ps = ((JdbcDatabaseConnection) dc).getInternalConnection().prepareStatement(
+                "INSERT INTO `" + tableInfo.getTableName() + "` (" + columns + ") VALUES (" + values + ")")) {
+            for (T row : rows) {
+                for (int i = 0; i < fields.size(); i++)
+                    ps.setObject(i + 1, fields.get(i).extractJavaFieldToSqlArgValue(row));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            connectionSource.releaseConnection(dc);
+        }
+    }
+
+    /**
+     * Adds the keys that aren't in the key dictionary yet, with one query for the ones that are and one batch for the rest.
+     */
+    private void insertKeys(Set<ByteBuffer> publicKeys) throws SQLException {
+        Map<ByteBuffer, DictionaryKey> keys = new HashMap<>();
+        for (ByteBuffer publicKey : publicKeys) {
+            DictionaryKey key = new DictionaryKey(publicKey.array());
+            keys.put(ByteBuffer.wrap(key.getKeyReference()), key);
+        }
+        List<byte[]> references = new ArrayList<>(keys.size());
+        for (ByteBuffer reference : keys.keySet())
+            references.add(reference.array());
+        for (List<byte[]> batch : batches(references)) {
+            // the key table has no ID column, which ORMLite needs in order to select only some columns
+            for (DictionaryKey existing : keyDao.queryBuilder().where().in("keyReference", batch).query())
+                keys.remove(ByteBuffer.wrap(existing.getKeyReference()));
+        }
+        insertAll(keyDao, keys.values());
+    }
+
+    private void updateBlocksActive(List<byte[]> blockIDs, boolean active) throws SQLException {
+        for (List<byte[]> batch : batches(blockIDs)) {
+            UpdateBuilder<Block, Void> ub = blockDao.updateBuilder();
+            ub.updateColumnValue("active", active);
+            ub.where().in("blockID", batch);
+            ub.update();
+        }
+    }
+
+    // splits a list into batches small enough for one IN clause each
+    private static <T> List<List<T>> batches(List<T> list) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += MAX_IN_CLAUSE_SIZE)
+            batches.add(list.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, list.size())));
+        return batches;
+    }
+
+    /**
+     * @return the block as it is sent to peers: its header and its entries in a BlockMessage
+     */
+    private static byte[] serializeForPeers(Block b) {
+        BlockMessage.Builder bmb = BlockMessage.newBuilder()
+                .setBlockBytes(ByteString.copyFrom(b.serializeHeader()));
+        for (Entry e : b.getEntriesList())
+            bmb.addEntries(ByteString.copyFrom(e.serialize()));
+        return bmb.build().toByteArray();
+    }
+
+    private void setBlockLocation(byte[] blockID, BlockFileStore.Location location) throws SQLException {
+        DatabaseConnection dc = connectionSource.getReadWriteConnection();
+        try (PreparedStatement ps = ((JdbcDatabaseConnection) dc).getInternalConnection().prepareStatement(
+                "UPDATE `block` SET `blockFile` = ?, `blockOffset` = ?, `blockLength` = ? WHERE `blockID` = ?")) {
+            ps.setInt(1, location.file);
+            ps.setLong(2, location.offset);
+            ps.setInt(3, location.length);
+            ps.setBytes(4, blockID);
+            ps.executeUpdate();
+        } finally {
+            connectionSource.releaseConnection(dc);
+        }
+    }
+
+    public Block getBlock(byte[] blockID) throws SQLException {
+        Block b = getBlockHeader(blockID);
         if (b != null)
             b.setEntriesList(getEntriesForBlock(blockID));
         return b;
     }
 
-    public synchronized long getEntriesCount() throws SQLException {
+    public ByteBuffer getSerializedBlock(byte[] blockID) throws SQLException {
+        if (blockFiles == null)
+            return null;
+        BlockFileStore.Location location;
+        synchronized (blockIndex) {
+            int slot = blockIndex.find(blockID);
+            if (slot == BlockIndex.NONE)
+                return null;
+            location = blockIndex.getLocation(slot);
+        }
+        if (location == null)
+            return null;
+        try {
+            return blockFiles.read(location);
+        } catch (IOException e) {
+            throw new SQLException("could not read block from block file " + location.file, e);
+        }
+    }
+
+    public Block getBlockHeader(byte[] blockID) throws SQLException {
+        if (!blockIndex.contains(blockID))
+            return null;
+        return blockDao.queryBuilder().limit(1L).where().eq("blockID", blockID).queryForFirst();
+    }
+
+    public long getEntriesCount() throws SQLException {
         return entryDao.countOf();
     }
 
-    public synchronized Entry getEntry(UUID id) throws SQLException {
+    public Entry getEntry(UUID id) throws SQLException {
         return entryDao.queryForId(id);
     }
 
-    public synchronized List<Entry> getEntries(byte[] docHash) throws SQLException {
+    public List<Entry> getEntries(byte[] docHash) throws SQLException {
         return entryDao.queryForEq("docHash", docHash);
     }
 
-    public synchronized List<Entry> getUnconfirmedEntries() throws SQLException {
+    public List<Entry> getEntries(Collection<byte[]> docHashes) throws SQLException {
+        if (docHashes.isEmpty())
+            return new ArrayList<>();
+        return entryDao.queryBuilder().where().in("docHash", docHashes).query();
+    }
+
+    public List<Entry> getUnconfirmedEntries() throws SQLException {
         return entryDao.queryForEq("confirmed", false);
     }
 
-    public synchronized DatabaseIterator<Entry> getConfirmedEntries() throws SQLException {
+    public DatabaseIterator<Entry> getConfirmedEntries() throws SQLException {
         return new DatabaseIterator<>(entryDao.queryBuilder().where().eq("confirmed", true).iterator());
     }
 
-    public synchronized DatabaseIterator<Entry> getAllEntries() throws SQLException {
+    public DatabaseIterator<Entry> getAllEntries() throws SQLException {
         return new DatabaseIterator<>(entryDao.closeableIterator());
     }
 
@@ -414,35 +817,102 @@ public class DatabaseStore implements DataStore {
         if (searchQuery.isEmpty())
             return getAllEntries();
 
-        String[] queries = searchQuery.split("\\s+"); // split on groups of whitespace
-        Where<Entry, UUID> w = entryDao.queryBuilder().where();
-        for (String query : queries) {
-            String likeQuery = "%" + query + "%";
-            w.like("docName", likeQuery);
-            w.like("docDescription", likeQuery);
-            w.like("docGeoLocation", likeQuery);
-            w.like("docLink", likeQuery);
+        List<UUID> ids = searchIndex.search(searchQuery, 0, -1);
+        // load the ranked entries a page at a time
+        return new DatabaseIterator<Entry>(null) {
+            private List<Entry> page = new ArrayList<>();
+            private int loaded;
+            private int next;
+
+            @Override
+            public boolean moveNext() throws SQLException {
+                if (next == page.size() && loaded < ids.size()) {
+                    List<UUID> pageIDs = ids.subList(loaded, Math.min(ids.size(), loaded + BLOCK_PAGE_SIZE));
+                    page = getEntriesInOrder(pageIDs);
+                    loaded += pageIDs.size();
+                    next = 0;
+                }
+                current = next < page.size() ? page.get(next++) : null;
+                return current != null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    public List<Entry> searchEntries(String searchQuery, int offset, int limit) throws SQLException {
+        return getEntriesInOrder(searchIndex.search(searchQuery, offset, limit));
+    }
+
+    // the entries with the given IDs, in the same order
+    private List<Entry> getEntriesInOrder(List<UUID> ids) throws SQLException {
+        Map<UUID, Entry> byID = new HashMap<>();
+        for (List<UUID> batch : batches(ids)) {
+            for (Entry e : entryDao.queryBuilder().where().in("entryID", batch).query())
+                byID.put(e.getEntryID(), e);
+        }
+        List<Entry> ordered = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            Entry e = byID.get(id);
+            if (e != null)
+                ordered.add(e);
         }
-        // OR all of our like clauses together
-        return new DatabaseIterator<>(w.or(queries.length * 4).iterator());
+        return ordered;
     }
 
     public boolean insertEntry(Entry entry) throws SQLException {
-        // by default, entry will be unconfirmed
-        try {
-            entryDao.create(entry);
-            return true;
-        } catch (SQLException e) {
-            // catch duplicate block error
-            if (isDuplicateError(e))
-                return false;
-            else
-                throw e;
+        synchronized (writeMonitor) {
+            // by default, entry will be unconfirmed
+            try {
+                entryDao.create(entry);
+                insertEntryKeys(entry);
+                searchIndex.add(entry.getEntryID(), searchableFields(entry));
+                return true;
+            } catch (SQLException e) {
+                // catch duplicate block error
+                if (isDuplicateError(e))
+                    return false;
+                else
+                    throw e;
+            }
         }
     }
 
-    private boolean entryExists(Entry entry) throws SQLException {
-        return entryDao.idExists(entry.getEntryID());
+    // add the keys an entry refers to to the key dictionary, so we can give them to peers that don't have them
+    private void insertEntryKeys(Entry entry) throws SQLException {
+        if (entry.getUploaderKey() != null)
+            insertKey(entry.getUploaderKey());
+        if (entry.getReceiverKey() != null)
+            insertKey(entry.getReceiverKey());
+    }
+
+    public byte[] getKey(byte[] keyReference) throws SQLException {
+        DictionaryKey key = keyDao.queryBuilder()
+                .where()
+                .eq("keyReference", keyReference)
+                .queryForFirst();
+        return key == null ? null : key.getPublicKey();
+    }
+
+    public List<byte[]> getKeys(Collection<byte[]> keyReferences) throws SQLException {
+        List<byte[]> keys = new ArrayList<>();
+        for (List<byte[]> batch : batches(new ArrayList<>(keyReferences))) {
+            for (DictionaryKey key : keyDao.queryBuilder().where().in("keyReference", batch).query())
+                keys.add(key.getPublicKey());
+        }
+        return keys;
+    }
+
+    public boolean insertKey(byte[] publicKey) throws SQLException {
+        synchronized (writeMonitor) {
+            DictionaryKey key = new DictionaryKey(publicKey);
+            if (getKey(key.getKeyReference()) != null)
+                return false;
+            keyDao.create(key);
+            return true;
+        }
     }
 
     private boolean isDuplicateError(SQLException e) {
@@ -462,7 +932,9 @@ public class DatabaseStore implements DataStore {
     public void setProperty(String key, String value) throws SQLException {
         if (key.length() > 255 || value.length() > 255)
             throw new IllegalArgumentException("Property key and value must be at most 255 characters long");
-        propertyDao.createOrUpdate(new Property(key, value));
+        synchronized (writeMonitor) {
+            propertyDao.createOrUpdate(new Property(key, value));
+        }
     }
 
     public List<Identity> getIdentities() throws SQLException {
@@ -470,11 +942,15 @@ public class DatabaseStore implements DataStore {
     }
 
     public void updateIdentity(Identity identity) throws SQLException {
-        identityDao.update(identity);
+        synchronized (writeMonitor) {
+            identityDao.update(identity);
+        }
     }
 
     public void insertIdentity(Identity identity) throws SQLException {
-        identityDao.create(identity);
+        synchronized (writeMonitor) {
+            identityDao.create(identity);
+        }
     }
 
     public List<byte[]> getActiveBlocksSample(int maxBlockIDs) throws SQLException {
@@ -513,8 +989,12 @@ public class DatabaseStore implements DataStore {
     }
 
     @Override
-    public synchronized void updateEntry(Entry entry) throws SQLException {
-        entryDao.update(entry);
+    public void updateEntry(Entry entry) throws SQLException {
+        synchronized (writeMonitor) {
+            Entry old = entryDao.queryForId(entry.getEntryID());
+            if (entryDao.update(entry) > 0)
+                searchIndex.update(entry.getEntryID(), old == null ? null : searchableFields(old), searchableFields(entry));
+        }
     }
 
     private DatabaseIterator<Block> getActiveBlocks() throws SQLException {
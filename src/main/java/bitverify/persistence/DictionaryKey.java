@@ -0,0 +1,31 @@
+package bitverify.persistence;
+
+import bitverify.crypto.Asymmetric;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+
+/**
+ * A public key in the key dictionary, stored once and looked up by its key reference.
+ * Entries refer to uploader and receiver keys by key reference rather than containing them.
+ */
+public class DictionaryKey {
+    @DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY(" + Asymmetric.KEY_REFERENCE_LENGTH + ")", uniqueIndex = true)
+    private byte[] keyReference;
+    @DatabaseField(dataType = DataType.BYTE_ARRAY, columnDefinition = "VARBINARY")
+    private byte[] publicKey;
+
+    DictionaryKey() {}
+
+    public DictionaryKey(byte[] publicKey) {
+        this.keyReference = Asymmetric.getKeyReference(publicKey);
+        this.publicKey = publicKey;
+    }
+
+    public byte[] getKeyReference() {
+        return keyReference;
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey;
+    }
+}
@@ -0,0 +1,304 @@
+package bitverify.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An in-memory inverted index of the words in entries' string metadata, so entries can be searched without scanning
+ * the entry table.
+ *
+ * Each entry is given an ordinal, in the order entries are added, and each word maps to the sorted ordinals of the
+ * entries containing it. Words are runs of letters and digits, compared ignoring case. A query word matches every
+ * indexed word it is a prefix of, so results can be shown while the user is still typing.
+ *
+ * Results are ranked by how many of the query's words an entry matches, then newest first. Postings are read from
+ * the newest entry backwards, so a search stops as soon as no entry it hasn't reached yet could make the page asked for.
+ *
+ * Entries are never removed. Thread safe.
+ */
+class EntrySearchIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // ordinal + 1 for each bucket, or 0 if the bucket is empty. Never more than half full.
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private long[] idsMost = new long[INITIAL_CAPACITY];
+    private long[] idsLeast = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    /**
+     * The ordinals of the entries containing one word, in increasing order.
+     */
+    private static class Postings {
+        private int[] ordinals = new int[2];
+        private int size;
+
+        private void add(int ordinal) {
+            // entries are usually added in ordinal order
+            if (size == 0 || ordinals[size - 1] < ordinal) {
+                insertAt(size, ordinal);
+            } else {
+                int i = Arrays.binarySearch(ordinals, 0, size, ordinal);
+                if (i < 0)
+                    insertAt(-i - 1, ordinal);
+            }
+        }
+
+        private void insertAt(int i, int ordinal) {
+            if (size == ordinals.length)
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            System.arraycopy(ordinals, i, ordinals, i + 1, size - i);
+            ordinals[i] = ordinal;
+            size++;
+        }
+
+        private void remove(int ordinal) {
+            int i = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (i >= 0) {
+                System.arraycopy(ordinals, i + 1, ordinals, i, size - i - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Reads the entries matching one query word, newest first, once each even if they contain several of the words the
+     * query word is a prefix of.
+     */
+    private static class WordCursor {
+        // how far each postings list has been read
+        private static class Position {
+            private final Postings postings;
+            private int index;
+
+            private Position(Postings postings) {
+                this.postings = postings;
+                index = postings.size - 1;
+            }
+
+            private int ordinal() {
+                return postings.ordinals[index];
+            }
+        }
+
+        // the positions that haven't reached the start of their list, largest ordinal first
+        private final PriorityQueue<Position> positions;
+        private int current;
+
+        private WordCursor(Collection<Postings> matching) {
+            positions = new PriorityQueue<>(Math.max(1, matching.size()),
+                    Comparator.comparingInt(Position::ordinal).reversed());
+            for (Postings p : matching)
+                positions.add(new Position(p));
+            current = positions.isEmpty() ? -1 : positions.peek().ordinal();
+        }
+
+        /**
+         * @return the ordinal of the entry the cursor is at, or -1 once there are none left
+         */
+        private int current() {
+            return current;
+        }
+
+        private void advance() {
+            while (!positions.isEmpty() && positions.peek().ordinal() == current) {
+                Position position = positions.poll();
+                if (--position.index >= 0)
+                    positions.add(position);
+            }
+            current = positions.isEmpty() ? -1 : positions.peek().ordinal();
+        }
+    }
+
+    /**
+     * Add an entry to the index, unless it is already there.
+     * @param entryID the entry's ID
+     * @param fields  the entry's searchable metadata. Null fields are ignored.
+     */
+    synchronized void add(UUID entryID, String... fields) {
+        if (find(entryID) != -1)
+            return;
+        if (size == idsMost.length)
+            grow();
+        int ordinal = size++;
+        idsMost[ordinal] = entryID.getMostSignificantBits();
+        idsLeast[ordinal] = entryID.getLeastSignificantBits();
+        insertIntoTable(ordinal);
+        for (String word : words(fields))
+            postings.computeIfAbsent(word, w -> new Postings()).add(ordinal);
+    }
+
+    /**
+     * Re-index an entry whose metadata has changed. The entry keeps its place in the ranking of newer and older entries.
+     * @param oldFields the metadata the entry was indexed with
+     * @param newFields the entry's metadata now
+     */
+    synchronized void update(UUID entryID, String[] oldFields, String[] newFields) {
+        int ordinal = find(entryID);
+        if (ordinal == -1) {
+            add(entryID, newFields);
+            return;
+        }
+        Set<String> oldWords = words(oldFields);
+        Set<String> newWords = words(newFields);
+        for (String word : oldWords) {
+            if (newWords.contains(word))
+                continue;
+            Postings p = postings.get(word);
+            if (p != null) {
+                p.remove(ordinal);
+                if (p.size == 0)
+                    postings.remove(word);
+            }
+        }
+        for (String word : newWords) {
+            if (!oldWords.contains(word))
+                postings.computeIfAbsent(word, w -> new Postings()).add(ordinal);
+        }
+    }
+
+    /**
+     * Find the entries matching a query, best first.
+     * @param query  words, any of which an entry must contain a word starting with. A query with no words matches
+     *               every entry, newest first.
+     * @param offset the number of results to skip
+     * @param limit  the maximum number of results, or -1 for all of them
+     * @return the IDs of the matching entries
+     */
+    synchronized List<UUID> search(String query, int offset, int limit) {
+        int wanted = limit < 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        List<UUID> results = new ArrayList<>();
+        Set<String> queryWords = words(query);
+
+        if (queryWords.isEmpty()) {
+            for (int rank = offset; rank < wanted && rank < size; rank++)
+                results.add(getEntryID(size - 1 - rank));
+            return results;
+        }
+
+        // the cursors that haven't run out, at the newest entry first
+        PriorityQueue<WordCursor> cursors = new PriorityQueue<>(queryWords.size(),
+                Comparator.comparingInt(WordCursor::current).reversed());
+        for (String word : queryWords) {
+            WordCursor cursor = new WordCursor(postings.subMap(word, word + Character.MAX_VALUE).values());
+            if (cursor.current() != -1)
+                cursors.add(cursor);
+        }
+
+        // byScore.get(s) is the newest entries matching s + 1 of the words, no more than can be on the page
+        List<List<Integer>> byScore = new ArrayList<>(queryWords.size());
+        for (int i = 0; i < queryWords.size(); i++)
+            byScore.add(new ArrayList<>());
+
+        List<WordCursor> atEntry = new ArrayList<>(queryWords.size());
+        while (!cursors.isEmpty()) {
+            // no entry we haven't reached can match more words than there are cursors left, and it would be older
+            // than the entries already found with as many matches, so stop if those fill the page
+            int found = 0;
+            for (int score = cursors.size(); score <= queryWords.size() && found < wanted; score++)
+                found += byScore.get(score - 1).size();
+            if (found >= wanted)
+                break;
+
+            int ordinal = cursors.peek().current();
+            while (!cursors.isEmpty() && cursors.peek().current() == ordinal)
+                atEntry.add(cursors.poll());
+            List<Integer> sameScore = byScore.get(atEntry.size() - 1);
+            if (sameScore.size() < wanted)
+                sameScore.add(ordinal);
+            for (WordCursor cursor : atEntry) {
+                cursor.advance();
+                if (cursor.current() != -1)
+                    cursors.add(cursor);
+            }
+            atEntry.clear();
+        }
+
+        int rank = 0;
+        for (int score = queryWords.size(); score > 0; score--) {
+            for (int ordinal : byScore.get(score - 1)) {
+                if (rank >= wanted)
+                    return results;
+                if (rank++ >= offset)
+                    results.add(getEntryID(ordinal));
+            }
+        }
+        return results;
+    }
+
+    synchronized boolean contains(UUID entryID) {
+        return find(entryID) != -1;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Split text into lower-case words: runs of letters and digits.
+     */
+    static Set<String> words(String... fields) {
+        Set<String> words = new LinkedHashSet<>();
+        if (fields == null)
+            return words;
+        for (String field : fields) {
+            if (field == null)
+                continue;
+            for (String word : field.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty())
+                    words.add(word);
+            }
+        }
+        return Collections.unmodifiableSet(words);
+    }
+
+    private UUID getEntryID(int ordinal) {
+        return new UUID(idsMost[ordinal], idsLeast[ordinal]);
+    }
+
+    private int find(UUID entryID) {
+        long most = entryID.getMostSignificantBits();
+        long least = entryID.getLeastSignificantBits();
+        int mask = table.length - 1;
+        for (int bucket = bucketOf(most, least) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int ordinal = table[bucket] - 1;
+            if (idsMost[ordinal] == most && idsLeast[ordinal] == least)
+                return ordinal;
+        }
+        return -1;
+    }
+
+    private static int bucketOf(long most, long least) {
+        long h = most ^ least;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void insertIntoTable(int ordinal) {
+        int mask = table.length - 1;
+        int bucket = bucketOf(idsMost[ordinal], idsLeast[ordinal]) & mask;
+        while (table[bucket] != 0)
+            bucket = (bucket + 1) & mask;
+        table[bucket] = ordinal + 1;
+    }
+
+    private void grow() {
+        int capacity = idsMost.length * 2;
+        idsMost = Arrays.copyOf(idsMost, capacity);
+        idsLeast = Arrays.copyOf(idsLeast, capacity);
+
+        table = new int[capacity * 2];
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            insertIntoTable(ordinal);
+    }
+}
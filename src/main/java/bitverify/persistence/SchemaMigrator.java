@@ -0,0 +1,104 @@
+package bitverify.persistence;
+
+import com.j256.ormlite.dao.Dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings an existing database up to date with the schema this version expects.
+ *
+ * Each change to the schema is a migration with a version number, and the version of the last migration applied is
+ * kept in the property table. Opening a database applies, in order, the migrations it hasn't had yet.
+ *
+ * H2 commits schema changes as soon as they are made, so a migration can't be rolled back with the rest of a
+ * transaction. The version is recorded after each migration, and migrations should be safe to run again in case the
+ * database was closed between the two.
+ */
+class SchemaMigrator {
+    static final String VERSION_PROPERTY = "schemaVersion";
+
+    /**
+     * One change to the schema.
+     */
+    @FunctionalInterface
+    interface Migration {
+        void apply() throws SQLException;
+    }
+
+    private static class VersionedMigration {
+        private final int version;
+        private final String description;
+        private final Migration migration;
+
+        private VersionedMigration(int version, String description, Migration migration) {
+            this.version = version;
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+    private final Dao<Property, String> propertyDao;
+    private final List<VersionedMigration> migrations = new ArrayList<>();
+
+    /**
+     * @param propertyDao the property table, which must already exist
+     */
+    SchemaMigrator(Dao<Property, String> propertyDao) {
+        this.propertyDao = propertyDao;
+    }
+
+    /**
+     * Add the next migration.
+     * @param version     the version of the schema once it has been applied, greater than that of the last migration
+     * @param description what the migration changes
+     */
+    SchemaMigrator add(int version, String description, Migration migration) {
+        if (version <= getLatestVersion())
+            throw new IllegalArgumentException("migration " + version + " must come after migration " + getLatestVersion());
+        migrations.add(new VersionedMigration(version, description, migration));
+        return this;
+    }
+
+    /**
+     * @return the version the migrations bring the schema up to, or 0 if there are none
+     */
+    int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    /**
+     * @return the version of the database's schema, which is 0 if it has never been migrated
+     */
+    int getVersion() throws SQLException {
+        Property p = propertyDao.queryForId(VERSION_PROPERTY);
+        return p == null ? 0 : Integer.parseInt(p.getValue());
+    }
+
+    /**
+     * Apply the migrations the database hasn't had yet.
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails, or the database was made by a newer version with a schema this one
+     *                      doesn't know about
+     */
+    int migrate() throws SQLException {
+        int version = getVersion();
+        if (version > getLatestVersion())
+            throw new SQLException("database schema version " + version + " is newer than the latest known version " + getLatestVersion());
+
+        int applied = 0;
+        for (VersionedMigration m : migrations) {
+            if (m.version <= version)
+                continue;
+            try {
+                m.migration.apply();
+            } catch (SQLException e) {
+                throw new SQLException("could not migrate database schema to version " + m.version + " (" + m.description + ")", e);
+            }
+            propertyDao.createOrUpdate(new Property(VERSION_PROPERTY, Integer.toString(m.version)));
+            applied++;
+        }
+        return applied;
+    }
+}
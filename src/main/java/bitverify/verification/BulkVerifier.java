@@ -0,0 +1,310 @@
+package bitverify.verification;
+
+import bitverify.crypto.FileHasher;
+import bitverify.entries.Entry;
+import bitverify.persistence.DataStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Checks every file in a directory tree against the entries in a data store.
+ * Files are hashed in parallel while the tree is walked, and their hashes are looked up a batch at a time with one
+ * query per batch. A result is reported for every file as soon as its batch has been looked up, so at most
+ * batchSize files are held in memory at once, however many files there are.
+ */
+public class BulkVerifier {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final DataStore store;
+    private final int threads;
+    private final int batchSize;
+
+    /**
+     * The outcome of checking one file.
+     */
+    public static class FileResult {
+        private final Path file;
+        private final byte[] hash;
+        private final IOException error;
+        private List<Entry> entries = Collections.emptyList();
+
+        private FileResult(Path file, byte[] hash, IOException error) {
+            this.file = file;
+            this.hash = hash;
+            this.error = error;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the file's hash, or null if it couldn't be read
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        /**
+         * @return why the file couldn't be read, or null if it was hashed
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        /**
+         * @return the entries for the file's hash, which is empty if there are none
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public boolean isMatched() {
+            return !entries.isEmpty();
+        }
+
+        /**
+         * @return true if one of the entries for the file is in a block on the active chain
+         */
+        public boolean isConfirmed() {
+            for (Entry e : entries) {
+                if (e.getConfirmed())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Counts of the files checked.
+     */
+    public static class Summary {
+        private long files;
+        private long matched;
+        private long confirmed;
+        private long errors;
+
+        private void add(FileResult result) {
+            files++;
+            if (result.getError() != null)
+                errors++;
+            if (result.isMatched())
+                matched++;
+            if (result.isConfirmed())
+                confirmed++;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        /**
+         * @return the number of files with at least one entry
+         */
+        public long getMatched() {
+            return matched;
+        }
+
+        /**
+         * @return the number of files with at least one confirmed entry
+         */
+        public long getConfirmed() {
+            return confirmed;
+        }
+
+        /**
+         * @return the number of files that were hashed but have no entries
+         */
+        public long getUnmatched() {
+            return files - matched - errors;
+        }
+
+        /**
+         * @return the number of files that couldn't be read
+         */
+        public long getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Create a verifier that hashes on one thread per processor.
+     * @param store the store to look the files' hashes up in
+     */
+    public BulkVerifier(DataStore store) {
+        this(store, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param store     the store to look the files' hashes up in
+     * @param threads   the number of files to hash at once
+     * @param batchSize the number of hashes to look up in each query
+     */
+    public BulkVerifier(DataStore store, int threads, int batchSize) {
+        this.store = store;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Check every regular file under a directory. Symbolic links are not followed.
+     * @param root   the directory, or a single file
+     * @param report given the result for each file, in the order files finish hashing, on the calling thread
+     * @return counts of the files checked
+     * @throws IOException  if the directory can't be walked at all. Files and subdirectories that can't be read are
+     *                      reported as errors instead.
+     * @throws SQLException if a batch of hashes can't be looked up
+     */
+    public Summary verify(Path root, Consumer<FileResult> report) throws IOException, SQLException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Run run = new Run(new ExecutorCompletionService<>(executor), report);
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile())
+                        run.submit(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    run.addResult(new FileResult(file, null, e));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            run.finish();
+            return run.summary;
+        } catch (SQLExceptionWrapper e) {
+            throw e.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // lets a lookup failure escape from the file visitor, which can only throw IOExceptions
+    private static class SQLExceptionWrapper extends RuntimeException {
+        private static final long serialVersionUID = -2915373582541087214L;
+
+        private SQLExceptionWrapper(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    // the state of one call to verify
+    private class Run {
+        private final CompletionService<FileResult> hashed;
+        private final Consumer<FileResult> report;
+        private final Summary summary = new Summary();
+        private final List<FileResult> batch = new ArrayList<>();
+        private int inFlight;
+
+        private Run(CompletionService<FileResult> hashed, Consumer<FileResult> report) {
+            this.hashed = hashed;
+            this.report = report;
+        }
+
+        private void submit(Path file) {
+            // don't let the walk get further ahead of the hashing than one batch
+            if (inFlight + batch.size() >= batchSize)
+                takeHashed();
+            hashed.submit(() -> {
+                try {
+                    return new FileResult(file, FileHasher.hashFile(file.toFile()), null);
+                } catch (IOException e) {
+                    return new FileResult(file, null, e);
+                }
+            });
+            inFlight++;
+        }
+
+        private void takeHashed() {
+            FileResult result;
+            try {
+                result = hashed.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            inFlight--;
+            addResult(result);
+        }
+
+        private void addResult(FileResult result) {
+            batch.add(result);
+            if (batch.size() >= batchSize)
+                lookUpBatch();
+        }
+
+        private void finish() {
+            while (inFlight > 0)
+                takeHashed();
+            lookUpBatch();
+        }
+
+        private void lookUpBatch() {
+            Map<ByteBuffer, FileResult> byHash = new HashMap<>();
+            List<FileResult> duplicates = new ArrayList<>();
+            for (FileResult result : batch) {
+                if (result.hash == null)
+                    continue;
+                if (byHash.putIfAbsent(ByteBuffer.wrap(result.hash), result) != null)
+                    duplicates.add(result);
+            }
+            if (!byHash.isEmpty()) {
+                List<byte[]> hashes = new ArrayList<>();
+                for (ByteBuffer hash : byHash.keySet())
+                    hashes.add(hash.array());
+                List<Entry> entries;
+                try {
+                    entries = store.getEntries(hashes);
+                } catch (SQLException e) {
+                    throw new SQLExceptionWrapper(e);
+                }
+                for (Entry e : entries) {
+                    FileResult result = byHash.get(ByteBuffer.wrap(e.getDocHash()));
+                    if (result.entries.isEmpty())
+                        result.entries = new ArrayList<>();
+                    result.entries.add(e);
+                }
+                // identical files share the entries found for the first of them
+                for (FileResult duplicate : duplicates)
+                    duplicate.entries = byHash.get(ByteBuffer.wrap(duplicate.hash)).entries;
+            }
+            for (FileResult result : batch) {
+                summary.add(result);
+                report.accept(result);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package bitverify.block;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import bitverify.entries.Entry;
+import bitverify.entries.EntryTest;
+
+
+public class BlockTemplateTest {
+
+    @Test
+    public void emptyTemplateMatchesBlock() {
+        Block genesis = Block.getGenesisBlock();
+        BlockTemplate template = new BlockTemplate(Collections.emptyList());
+        Block fromTemplate = template.createBlock(genesis.hashHeader(), 1000, 0x207fffff);
+        Block block = new Block(genesis, 1000, 0x207fffff, 0, new ArrayList<Entry>());
+        assertTrue(block.equals(fromTemplate));
+        assertArrayEquals(block.getEntriesHash(), fromTemplate.getEntriesHash());
+    }
+
+    @Test
+    public void addedEntriesMatchBlock() throws Exception {
+        Block genesis = Block.getGenesisBlock();
+        Entry entry1 = EntryTest.generateEntry1();
+        Entry entry2 = EntryTest.generateEntry2();
+
+        BlockTemplate template = new BlockTemplate(Arrays.asList(entry2));
+        assertFalse(template.hasChanged());
+        assertTrue(template.addEntry(entry1));
+        assertFalse(template.addEntry(entry1));
+        assertTrue(template.hasChanged());
+        assertEquals(2, template.size());
+
+        Block fromTemplate = template.createBlock(genesis.hashHeader(), 1000, 0x207fffff);
+        assertFalse(template.hasChanged());
+
+        List<Entry> entries = new ArrayList<>(Arrays.asList(entry1, entry2));
+        Block block = new Block(genesis, 1000, 0x207fffff, 0, entries);
+        assertArrayEquals(block.getEntriesHash(), fromTemplate.getEntriesHash());
+        assertTrue(block.equals(fromTemplate));
+        assertEquals(block.getEntriesList(), fromTemplate.getEntriesList());
+
+        // a deserialized copy of the header accepts the template's entries
+        Block deserialized = Block.deserialize(fromTemplate.serializeHeader());
+        assertTrue(deserialized.setEntriesList(new ArrayList<>(Arrays.asList(entry2, entry1))));
+    }
+}
@@ -55,6 +55,80 @@ public class BlockTest {
         assertTrue(Block.verifyChain(Arrays.asList(genesis,firstBlock), bus));
     }
 
+    @Test
+    public void versionOneHeaderSerialize() throws Exception{
+        Block genesis = Block.getGenesisBlock();
+        byte[] serialHeader = genesis.serializeHeader();
+        assertEquals(80, serialHeader.length);
+
+        Block deserializedBlock = Block.deserialize(serialHeader);
+        assertEquals(Block.VERSION_FLAT_ENTRIES, deserializedBlock.getVersion());
+        assertTrue(genesis.equals(deserializedBlock));
+    }
+
+    @Test
+    public void versionTwoHeaderSerialize() throws Exception{
+        Block genesis = Block.getGenesisBlock();
+        List<Entry> entries = new ArrayList<>(Arrays.asList(EntryTest.generateEntry1(), EntryTest.generateEntry2()));
+        Block block = new Block(genesis, Integer.MAX_VALUE, 0, entries);
+        byte[] serialHeader = block.serializeHeader();
+        assertEquals(84, serialHeader.length);
+
+        Block deserializedBlock = Block.deserialize(serialHeader);
+        assertEquals(Block.VERSION_MERKLE_ENTRIES, deserializedBlock.getVersion());
+        assertTrue(block.equals(deserializedBlock));
+        assertFalse(deserializedBlock.setEntriesList(new ArrayList<>(Arrays.asList(EntryTest.generateEntry1()))));
+        assertTrue(deserializedBlock.setEntriesList(new ArrayList<>(entries)));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionRejected() throws Exception{
+        Block genesis = Block.getGenesisBlock();
+        byte[] serialHeader = new Block(genesis, Integer.MAX_VALUE, 0, new ArrayList<>()).serializeHeader();
+        serialHeader[serialHeader.length - 1] = 99;
+        Block.deserialize(serialHeader);
+    }
+
+    @Test
+    public void longChainVerified() throws Exception{
+        // long enough for the headers to be hashed in parallel
+        List<Block> chain = new ArrayList<>();
+        Block prev = Block.getGenesisBlock();
+        chain.add(prev);
+        for (int i = 1; i <= Block.PARALLEL_VERIFY_THRESHOLD + 10; i++) {
+            Block b = new Block(prev, Block.GENESIS_TIMESTAMP + i * 1000, 0x207fffff, 0, new ArrayList<>());
+            while (!Miner.blockHashMeetDifficulty(b)) b.incrementNonce();
+            chain.add(b);
+            prev = b;
+        }
+        assertTrue(Block.verifyChain(chain, bus));
+
+        // a header in the middle that no longer meets its target
+        Block broken = chain.get(700);
+        do {
+            broken.incrementNonce();
+        } while (Miner.blockHashMeetDifficulty(broken));
+        assertFalse(Block.verifyChain(chain, bus));
+    }
+
+    @Test
+    public void headerHashCachedUntilChanged() throws Exception{
+        Block genesis = Block.getGenesisBlock();
+        Block block = new Block(genesis, Block.GENESIS_TIMESTAMP + 1000, 0x207fffff, 0, new ArrayList<>());
+        byte[] hash = block.hashHeader();
+        assertSame(hash, block.hashHeader());
+        assertSame(block.serializeHeader(), block.serializeHeader());
+
+        block.incrementNonce();
+        assertFalse(Arrays.equals(hash, block.hashHeader()));
+        assertArrayEquals(Block.deserialize(block.serializeHeader()).hashHeader(), block.hashHeader());
+        block.setNonce(0);
+        assertArrayEquals(hash, block.hashHeader());
+        block.setTimeStamp(Block.GENESIS_TIMESTAMP + 2000);
+        assertArrayEquals(Block.deserialize(block.serializeHeader()).hashHeader(), block.getBlockID());
+        assertEquals(Block.deserialize(block.serializeHeader()).hashCode(), block.hashCode());
+    }
+
     @Test
     public void listTwoValidBlocksVerified() throws Exception{
         Block genesis = Block.getGenesisBlock();
@@ -142,6 +216,23 @@ public class BlockTest {
 
     }
 
+    @Test
+    public void setRepeatedEntryInvalid() throws IOException{
+        Block genesis = Block.getGenesisBlock();
+        Entry entry1 = EntryTest.generateEntry1();
+        Entry entry2 = EntryTest.generateEntry2();
+
+        List<Entry> entries = Arrays.asList(entry1, entry2);
+        int target = Integer.MAX_VALUE;
+        int nonce = 0;
+        Block firstBlock = new Block(genesis,target,nonce,entries);
+        assertEquals(Block.VERSION_MERKLE_ENTRIES, firstBlock.getVersion());
+        byte[] serialBlock = firstBlock.serializeHeader();
+        Block deserializedBlock = Block.deserialize(serialBlock);
+        assertFalse(deserializedBlock.setEntriesList(Arrays.asList(entry1, entry2, entry1)));
+        assertTrue(deserializedBlock.setEntriesList(Arrays.asList(entry1, entry2)));
+    }
+
 
 
 }
@@ -0,0 +1,104 @@
+package bitverify.block;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bitverify.mining.Miner;
+
+
+public class ChainVerifierTest {
+    private static final int TARGET = 0x207fffff;
+
+    private static Block mineNext(Block prev, long timeStamp) {
+        Block b = new Block(prev, timeStamp, TARGET, 0, new ArrayList<>());
+        while (!Miner.blockHashMeetDifficulty(b)) b.incrementNonce();
+        return b;
+    }
+
+    @Test
+    public void validChainAccepted() {
+        Block genesis = Block.getGenesisBlock();
+        ChainVerifier verifier = new ChainVerifier(genesis, null);
+        Block prev = genesis;
+        for (int i = 1; i <= 30; i++) {
+            Block b = mineNext(prev, Block.GENESIS_TIMESTAMP + i * 1000);
+            assertTrue(verifier.add(b));
+            prev = b;
+        }
+        assertTrue(verifier.isValid());
+        assertEquals(30, verifier.getHeadersVerified());
+        assertArrayEquals(prev.hashHeader(), verifier.getLastHash());
+    }
+
+    @Test
+    public void brokenLinkRejectedAndStaysRejected() {
+        Block genesis = Block.getGenesisBlock();
+        ChainVerifier verifier = new ChainVerifier(genesis, null);
+        Block b1 = mineNext(genesis, Block.GENESIS_TIMESTAMP + 1000);
+        Block b2 = mineNext(b1, Block.GENESIS_TIMESTAMP + 2000);
+        // b2 does not follow genesis
+        assertFalse(verifier.add(b2));
+        assertFalse(verifier.isValid());
+        // even a header that would have been valid is rejected after a failure
+        assertFalse(verifier.add(b1));
+        assertEquals(0, verifier.getHeadersVerified());
+    }
+
+    @Test
+    public void timeBeforeMedianRejected() {
+        List<Block> chain = new ArrayList<>();
+        chain.add(Block.getGenesisBlock());
+        for (int i = 1; i <= 10; i++)
+            chain.add(mineNext(chain.get(i - 1), Block.GENESIS_TIMESTAMP + i * 1000));
+        Block last = chain.get(10);
+        // the median of the previous 11 timestamps is GENESIS_TIMESTAMP + 5000
+        assertFalse(replay(chain).add(mineNext(last, Block.GENESIS_TIMESTAMP + 5000)));
+        assertTrue(replay(chain).add(mineNext(last, Block.GENESIS_TIMESTAMP + 5001)));
+    }
+
+    @Test
+    public void slidingMedianMatchesSortedWindow() {
+        final int window = Block.TIME_INVAR_1_MEDIAN_OF_THIS_MANY_PREV_BLOCKS;
+        Random random = new Random(8);
+        List<Block> chain = new ArrayList<>();
+        chain.add(Block.getGenesisBlock());
+        ChainVerifier verifier = replay(chain);
+        for (int i = 1; i <= 200; i++) {
+            // timestamps move forwards on average but often fall back, with plenty of repeats
+            Block prev = chain.get(chain.size() - 1);
+            long timeStamp = Math.max(Block.GENESIS_TIMESTAMP, prev.getTimeStamp() + 1000 * (random.nextInt(7) - 3));
+            boolean expected = true;
+            if (chain.size() >= window) {
+                long[] previous = new long[window];
+                for (int j = 0; j < window; j++)
+                    previous[j] = chain.get(chain.size() - 1 - j).getTimeStamp();
+                Arrays.sort(previous);
+                expected = timeStamp > previous[window / 2];
+            }
+            Block b = mineNext(prev, timeStamp);
+            if (expected) {
+                assertTrue(verifier.add(b));
+                chain.add(b);
+            } else {
+                // check the rejection on a copy, so the verifier can carry on with the next block
+                assertFalse(replay(chain).add(b));
+            }
+        }
+        assertTrue(verifier.isValid());
+        assertEquals(chain.size() - 1, verifier.getHeadersVerified());
+    }
+
+    // a verifier anchored at the first block that has verified the rest
+    private static ChainVerifier replay(List<Block> chain) {
+        ChainVerifier verifier = new ChainVerifier(chain.get(0), null);
+        for (Block b : chain.subList(1, chain.size()))
+            assertTrue(verifier.add(b));
+        return verifier;
+    }
+}
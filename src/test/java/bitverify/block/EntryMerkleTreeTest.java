@@ -0,0 +1,123 @@
+package bitverify.block;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bitverify.crypto.Asymmetric;
+import bitverify.crypto.AsymmetricTest;
+import bitverify.crypto.Hash;
+import bitverify.entries.Entry;
+
+
+public class EntryMerkleTreeTest {
+    private static List<Entry> entries;
+
+    @BeforeClass
+    public static void generateEntries() throws Exception {
+        AsymmetricCipherKeyPair keyPair = Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey2, AsymmetricTest.myPrivKey2);
+        entries = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            entries.add(new Entry(keyPair, Hash.hashString("document " + i), "http://mywebsite.com/file" + i,
+                    "document " + i, "description", "Cambridge", 1455524447 + i));
+        }
+    }
+
+    @Test
+    public void emptyTreeRoot() {
+        EntryMerkleTree tree = new EntryMerkleTree();
+        assertArrayEquals(new byte[Hash.HASH_LENGTH], tree.getRoot());
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void rootIndependentOfInsertOrder() {
+        byte[] root = new EntryMerkleTree(entries).getRoot();
+        List<Entry> shuffled = new ArrayList<>(entries);
+        Random random = new Random(2);
+        for (int i = 0; i < 5; i++) {
+            Collections.shuffle(shuffled, random);
+            EntryMerkleTree tree = new EntryMerkleTree();
+            for (Entry e : shuffled)
+                assertTrue(tree.insert(e));
+            assertArrayEquals(root, tree.getRoot());
+            assertEquals(entries.size(), tree.size());
+        }
+    }
+
+    @Test
+    public void duplicateInsertIgnored() {
+        EntryMerkleTree tree = new EntryMerkleTree(entries.subList(0, 10));
+        byte[] root = tree.getRoot();
+        assertFalse(tree.insert(entries.get(3)));
+        assertArrayEquals(root, tree.getRoot());
+        assertEquals(10, tree.size());
+    }
+
+    @Test
+    public void rootChangesWithEntries() {
+        EntryMerkleTree tree = new EntryMerkleTree(entries.subList(0, 10));
+        byte[] root = tree.getRoot();
+        tree.insert(entries.get(10));
+        assertFalse(Arrays.equals(root, tree.getRoot()));
+    }
+
+    @Test
+    public void proofsVerify() throws IOException {
+        EntryMerkleTree tree = new EntryMerkleTree(entries.subList(0, 30));
+        byte[] root = tree.getRoot();
+        for (Entry e : entries.subList(0, 30)) {
+            MerkleProof proof = tree.getProof(e);
+            assertTrue(proof.verify(e, root));
+            assertTrue(MerkleProof.deserialize(proof.serialize()).verify(e, root));
+            // the proof is for this entry only
+            assertFalse(proof.verify(entries.get(35), root));
+        }
+        assertNull(tree.getProof(entries.get(35)));
+    }
+
+    @Test
+    public void tamperedProofFails() throws IOException {
+        EntryMerkleTree tree = new EntryMerkleTree(entries);
+        byte[] root = tree.getRoot();
+        Entry e = entries.get(7);
+        byte[] serialized = tree.getProof(e).serialize();
+        for (int i = 0; i < serialized.length; i += 13) {
+            byte[] tampered = serialized.clone();
+            tampered[i] ^= 1;
+            MerkleProof proof;
+            try {
+                proof = MerkleProof.deserialize(tampered);
+            } catch (IOException ex) {
+                continue;
+            }
+            assertFalse(proof.verify(e, root));
+        }
+    }
+
+    @Test
+    public void blockInclusionProof() throws IOException {
+        Block genesis = Block.getGenesisBlock();
+        Block block = new Block(genesis, 1000, 0x207fffff, 0, new ArrayList<>(entries.subList(0, 20)));
+        assertEquals(Block.VERSION_MERKLE_ENTRIES, block.getVersion());
+        MerkleProof proof = block.getInclusionProof(entries.get(4));
+        assertTrue(proof.verify(entries.get(4), block.getEntriesHash()));
+        assertNull(block.getInclusionProof(entries.get(25)));
+
+        // a client holding only the header can check the proof
+        Block header = Block.deserialize(block.serializeHeader());
+        assertTrue(MerkleProof.deserialize(proof.serialize()).verify(entries.get(4), header.getEntriesHash()));
+
+        // the genesis block has no Merkle tree of entries
+        assertNull(genesis.getInclusionProof(entries.get(4)));
+    }
+}
@@ -0,0 +1,46 @@
+package bitverify.block;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import bitverify.entries.Entry;
+import bitverify.entries.EntryTest;
+
+
+public class HeaderHasherTest {
+
+    @Test
+    public void genesisHashMatches() {
+        Block genesis = Block.getGenesisBlock();
+        HeaderHasher hasher = new HeaderHasher(genesis);
+        assertArrayEquals(genesis.hashHeader(), hasher.hash(genesis.getNonce()));
+    }
+
+    @Test
+    public void hashMatchesForManyNonces() throws Exception {
+        Entry entry1 = EntryTest.generateEntry1();
+        Block block = new Block(Block.getGenesisBlock(), System.currentTimeMillis(), 0x207fffff, 0, Arrays.asList(entry1));
+        HeaderHasher hasher = new HeaderHasher(block);
+        for (int nonce = -50; nonce < 50; nonce++) {
+            block.setNonce(nonce);
+            assertArrayEquals(block.hashHeader(), hasher.hash(nonce));
+        }
+        block.setNonce(Integer.MAX_VALUE);
+        assertArrayEquals(block.hashHeader(), hasher.hash(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void hashMatchesAfterTimeStampChange() {
+        Block block = new Block(Block.getGenesisBlock(), 1000, 0x207fffff, 0, Collections.emptyList());
+        HeaderHasher hasher = new HeaderHasher(block);
+        long timeStamp = 0x123456789abcL;
+        block.setTimeStamp(timeStamp);
+        block.setNonce(7);
+        hasher.setTimeStamp(timeStamp);
+        assertArrayEquals(block.hashHeader(), hasher.hash(7));
+    }
+}
@@ -2,11 +2,18 @@ package bitverify.crypto;
 
 import static org.junit.Assert.*;
 
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECKeyParameters;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Test;
 
@@ -459,4 +466,90 @@ public class AsymmetricTest {
 		}
 	}
 	
+	@Test
+	public void testByteKeyToKeyCache() throws KeyDecodingException {
+		byte[] pubKey = Asymmetric.stringKeyToByteKey(myPubKey2);
+		AsymmetricKeyParameter first = Asymmetric.byteKeyToKey(pubKey);
+		long hits = Asymmetric.getPublicKeyCacheHits();
+		long misses = Asymmetric.getPublicKeyCacheMisses();
+		
+		// an equal copy of the byte key is found in the cache
+		AsymmetricKeyParameter second = Asymmetric.byteKeyToKey(pubKey.clone());
+		assertSame( first, second );
+		assertEquals( hits + 1, Asymmetric.getPublicKeyCacheHits() );
+		assertEquals( misses, Asymmetric.getPublicKeyCacheMisses() );
+		
+		// changing the caller's array afterwards doesn't change what is cached
+		pubKey[pubKey.length - 1] ^= 1;
+		assertNotEquals( Asymmetric.keyToStringKey(first), Asymmetric.byteKeyToStringKey(pubKey) );
+		pubKey[pubKey.length - 1] ^= 1;
+		assertSame( first, Asymmetric.byteKeyToKey(pubKey) );
+		
+		// private keys are not cached
+		byte[] privKey = Asymmetric.stringKeyToByteKey(myPrivKey2);
+		assertNotSame( Asymmetric.byteKeyToKey(privKey), Asymmetric.byteKeyToKey(privKey) );
+	}
+	
+	@Test
+	public void testECSignHash() throws Exception {
+		AsymmetricCipherKeyPair keyPair = Asymmetric.generateNewECKeyPair();
+		assertTrue( Asymmetric.isECKey(keyPair.getPublic()) );
+		byte[] hash = Hash.hashString("the document");
+		
+		byte[] signature = Asymmetric.signHash(hash, keyPair.getPrivate());
+		assertTrue( signature.length < 80 );
+		// k is derived from the key and hash, so signing again gives the same signature
+		assertArrayEquals( signature, Asymmetric.signHash(hash, keyPair.getPrivate()) );
+		assertTrue( Asymmetric.verifyHashSignature(hash, signature, keyPair.getPublic()) );
+		assertFalse( Asymmetric.verifyHashSignature(Hash.hashString("another document"), signature, keyPair.getPublic()) );
+		assertFalse( Asymmetric.verifyHashSignature(hash, signature, Asymmetric.generateNewECKeyPair().getPublic()) );
+		assertFalse( Asymmetric.verifyHashSignature(hash, Arrays.copyOf(signature, signature.length - 1), keyPair.getPublic()) );
+		
+		// the other valid s for the same r is not accepted
+		ASN1Sequence seq = ASN1Sequence.getInstance(signature);
+		BigInteger n = ((ECKeyParameters) keyPair.getPublic()).getParameters().getN();
+		BigInteger highS = n.subtract(ASN1Integer.getInstance(seq.getObjectAt(1)).getValue());
+		byte[] highSSignature = new DERSequence(new ASN1Encodable[]{ seq.getObjectAt(0), new ASN1Integer(highS) }).getEncoded();
+		assertFalse( Asymmetric.verifyHashSignature(hash, highSSignature, keyPair.getPublic()) );
+		
+		// keys survive being stored as byte keys
+		AsymmetricCipherKeyPair decoded = Asymmetric.getKeyPairFromByteKeys(
+				Asymmetric.keyToByteKey(keyPair.getPublic()), Asymmetric.keyToByteKey(keyPair.getPrivate()));
+		assertTrue( Asymmetric.verifyHashSignature(hash, Asymmetric.signHash(hash, decoded.getPrivate()), decoded.getPublic()) );
+	}
+	
+	@Test
+	public void testECEncrypt() throws Exception {
+		AsymmetricCipherKeyPair keyPair = Asymmetric.generateNewECKeyPair();
+		byte[] data = Symmetric.generateKey();
+		
+		byte[] encrypted = Asymmetric.encryptBytes(data, keyPair.getPublic());
+		assertArrayEquals( data, Asymmetric.decryptBytes(encrypted, keyPair.getPrivate()) );
+		// each encryption uses a new ephemeral key
+		assertFalse( Arrays.equals(encrypted, Asymmetric.encryptBytes(data, keyPair.getPublic())) );
+		
+		AsymmetricKeyParameter otherKey = Asymmetric.generateNewECKeyPair().getPrivate();
+		try {
+			assertFalse( Arrays.equals(data, Asymmetric.decryptBytes(encrypted, otherKey)) );
+		} catch (InvalidCipherTextException e) {
+			// expected, unless the padding happens to be valid
+		}
+		try {
+			Asymmetric.decryptBytes(Arrays.copyOf(encrypted, 10), keyPair.getPrivate());
+			fail();
+		} catch (InvalidCipherTextException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testRSASignHash() throws Exception {
+		AsymmetricCipherKeyPair keyPair = Asymmetric.getKeyPairFromStringKeys(myPubKey2, myPrivKey2);
+		assertFalse( Asymmetric.isECKey(keyPair.getPublic()) );
+		byte[] hash = Hash.hashString("the document");
+		byte[] signature = Asymmetric.signHash(hash, keyPair.getPrivate());
+		assertTrue( Asymmetric.verifyHashSignature(hash, signature, keyPair.getPublic()) );
+		assertFalse( Asymmetric.verifyHashSignature(Hash.hashString("another document"), signature, keyPair.getPublic()) );
+	}
+	
 }
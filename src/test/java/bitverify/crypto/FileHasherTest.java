@@ -0,0 +1,124 @@
+package bitverify.crypto;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FileHasherTest {
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null)
+			file.delete();
+	}
+
+	private File writeFile(int length) throws IOException {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		file = File.createTempFile("filehasher", null);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static byte[] prefixedHash(int prefix, byte[]... parts) {
+		int length = 1;
+		for (byte[] part : parts)
+			length += part.length;
+		byte[] data = new byte[length];
+		data[0] = (byte) prefix;
+		int offset = 1;
+		for (byte[] part : parts) {
+			System.arraycopy(part, 0, data, offset, part.length);
+			offset += part.length;
+		}
+		return Hash.hashBytes(data);
+	}
+
+	@Test
+	public void testHashFileMatchesHashStream() throws IOException {
+		int[] lengths = { 0, 1, 16384, FileHasher.MAP_REGION_SIZE, FileHasher.MAP_REGION_SIZE + 12345 };
+		for (int length : lengths) {
+			byte[] data = Files.readAllBytes(writeFile(length).toPath());
+			assertArrayEquals( Hash.hashStream(new ByteArrayInputStream(data)), FileHasher.hashFile(file) );
+			deleteFile();
+		}
+	}
+
+	@Test
+	public void testTreeHash() throws IOException {
+		int chunk = FileHasher.TREE_CHUNK_SIZE;
+
+		assertArrayEquals( prefixedHash(0), FileHasher.treeHashFile(writeFile(0)) );
+		deleteFile();
+
+		// a single chunk is just the leaf hash
+		byte[] data = Files.readAllBytes(writeFile(1000).toPath());
+		assertArrayEquals( prefixedHash(0, data), FileHasher.treeHashFile(file) );
+		deleteFile();
+
+		// three chunks: the first two are paired and the third is carried up
+		data = Files.readAllBytes(writeFile(2 * chunk + 1).toPath());
+		byte[] leaf0 = prefixedHash(0, Arrays.copyOfRange(data, 0, chunk));
+		byte[] leaf1 = prefixedHash(0, Arrays.copyOfRange(data, chunk, 2 * chunk));
+		byte[] leaf2 = prefixedHash(0, Arrays.copyOfRange(data, 2 * chunk, data.length));
+		byte[] root = prefixedHash(1, prefixedHash(1, leaf0, leaf1), leaf2);
+		assertArrayEquals( root, FileHasher.treeHashFile(file) );
+		assertFalse( Arrays.equals(FileHasher.hashFile(file), root) );
+	}
+
+	@Test
+	public void testTreeHashOverManyRegions() throws IOException {
+		int chunk = FileHasher.TREE_CHUNK_SIZE;
+		byte[] data = Files.readAllBytes(writeFile(2 * FileHasher.MAP_REGION_SIZE + chunk / 2).toPath());
+
+		byte[][] level = new byte[(data.length + chunk - 1) / chunk][];
+		for (int i = 0; i < level.length; i++)
+			level[i] = prefixedHash(0, Arrays.copyOfRange(data, i * chunk, Math.min((i + 1) * chunk, data.length)));
+		while (level.length > 1) {
+			byte[][] next = new byte[(level.length + 1) / 2][];
+			for (int i = 0; i < level.length / 2; i++)
+				next[i] = prefixedHash(1, level[2 * i], level[2 * i + 1]);
+			if (level.length % 2 == 1)
+				next[next.length - 1] = level[level.length - 1];
+			level = next;
+		}
+
+		AtomicLong lastReported = new AtomicLong();
+		byte[] treeHash = FileHasher.treeHashFile(file, (bytesHashed, totalBytes, bytesPerSecond) -> {
+			assertEquals( data.length, totalBytes );
+			lastReported.accumulateAndGet(bytesHashed, Math::max);
+		});
+		assertArrayEquals( level[0], treeHash );
+		assertEquals( data.length, lastReported.get() );
+	}
+
+	@Test
+	public void testProgress() throws IOException {
+		writeFile(FileHasher.MAP_REGION_SIZE * 2 + 1);
+		AtomicLong calls = new AtomicLong();
+		AtomicLong lastReported = new AtomicLong();
+		FileHasher.hashFile(file, (bytesHashed, totalBytes, bytesPerSecond) -> {
+			assertTrue( bytesHashed > lastReported.get() );
+			assertTrue( bytesPerSecond >= 0 );
+			lastReported.set(bytesHashed);
+			calls.incrementAndGet();
+		});
+		assertEquals( 3, calls.get() );
+		assertEquals( file.length(), lastReported.get() );
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingFile() throws IOException {
+		FileHasher.hashFile(new File("this file does not exist"));
+	}
+}
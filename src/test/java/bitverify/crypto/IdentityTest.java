@@ -160,4 +160,13 @@ public class IdentityTest {
 		assertTrue(myID2.getNeedsEncryption());
 	}
 
+	@Test
+	public void testKeyType() throws IOException {
+		assertEquals(Identity.KEY_TYPE_RSA, generateIdentity_unsecure().getKeyType());
+		
+		Identity ecID = new Identity("EC", Asymmetric.generateNewECKeyPair());
+		assertEquals(Identity.KEY_TYPE_EC, ecID.getKeyType());
+		assertEquals(Identity.KEY_TYPE_EC, Identity.deserialize(ecID.serialize()).getKeyType());
+	}
+
 }
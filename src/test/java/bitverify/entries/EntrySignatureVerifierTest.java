@@ -0,0 +1,70 @@
+package bitverify.entries;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class EntrySignatureVerifierTest {
+	private static EntrySignatureVerifier verifier;
+
+	@BeforeClass
+	public static void createVerifier() {
+		verifier = new EntrySignatureVerifier(4);
+	}
+
+	@AfterClass
+	public static void shutdownVerifier() {
+		verifier.shutdown();
+	}
+
+	// a copy of the entry with the same ID but a different entry timestamp, so its signature no longer matches
+	private static Entry tamper(Entry entry) throws IOException {
+		byte[] serialized = entry.serialize().clone();
+		int signatureLength = ByteBuffer.wrap(serialized, 16, 4).getInt();
+		int timeStampOffset = 16 + 4 + signatureLength + 4 + entry.getUploaderID().length + 4 + entry.getReceiverID().length;
+		serialized[timeStampOffset + 7] ^= 1;
+		Entry tampered = Entry.deserialize(serialized);
+		tampered.setUploaderKey(entry.getUploaderKey());
+		return tampered;
+	}
+
+	@Test
+	public void testEmptyBatch() {
+		assertTrue( verifier.verify(Collections.emptyList()).join() );
+	}
+
+	@Test
+	public void testValidBatch() {
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			entries.add(i % 2 == 0 ? EntryTest.generateEntry1() : EntryTest.generateEntry2());
+		assertTrue( verifier.verify(entries).join() );
+	}
+
+	@Test
+	public void testInvalidEntryFailsBatch() throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			entries.add(EntryTest.generateEntry1());
+		entries.add(3, tamper(EntryTest.generateEntry2()));
+		assertFalse( verifier.verify(entries).join() );
+	}
+
+	@Test
+	public void testBatchLargerThanQueue() {
+		// more entries than the pool can queue, so some are verified on the calling thread
+		Entry entry = EntryTest.generateEntry1();
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 3000; i++)
+			entries.add(entry);
+		assertTrue( verifier.verify(entries).join() );
+	}
+}
@@ -2,7 +2,10 @@ package bitverify.entries;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.util.encoders.Hex;
@@ -137,6 +140,98 @@ public class EntryTest {
 		assertTrue( entry2.testEntryHashSignature() );
 	}
 	
+	@Test
+	public void testTamperedEntryNotVerifiedFromCache() throws IOException {
+		Entry entry1 = generateEntry1();
+		byte[] serialized = entry1.serialize();
+		assertTrue( entry1.testEntryHashSignature() );
+		// a second copy of the same entry passes too
+		assertTrue( Entry.deserialize(serialized).testEntryHashSignature() );
+		
+		// same entry ID, but a different timestamp after the signature, uploader and (empty) receiver
+		int signatureLength = ByteBuffer.wrap(serialized, 16, 4).getInt();
+		int timeStampOffset = 16 + 4 + signatureLength + 4 + entry1.getUploaderID().length + 4;
+		byte[] tampered = serialized.clone();
+		tampered[timeStampOffset + 7] ^= 1;
+		Entry tamperedEntry = Entry.deserialize(tampered);
+		assertTrue( tamperedEntry.setUploaderKey(entry1.getUploaderKey()) );
+		assertEquals( entry1.getEntryID(), tamperedEntry.getEntryID() );
+		assertFalse( tamperedEntry.testEntryHashSignature() );
+		
+		// same content, but a corrupted signature
+		tampered = serialized.clone();
+		tampered[16 + 4 + signatureLength - 1] ^= 1;
+		tamperedEntry = Entry.deserialize(tampered);
+		assertTrue( tamperedEntry.setUploaderKey(entry1.getUploaderKey()) );
+		assertFalse( tamperedEntry.testEntryHashSignature() );
+	}
+	
+	@Test
+	public void testEntryRefersToKeys() throws Exception {
+		AsymmetricCipherKeyPair receiverKeyPair = Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey, AsymmetricTest.myPrivKey);
+		byte[] uploaderKey = Asymmetric.stringKeyToByteKey(AsymmetricTest.myPubKey2);
+		byte[] receiverKey = Asymmetric.keyToByteKey(receiverKeyPair.getPublic());
+		Entry entry2 = generateEntry2();
+		assertArrayEquals( Asymmetric.getKeyReference(uploaderKey), entry2.getUploaderID() );
+		assertArrayEquals( Asymmetric.getKeyReference(receiverKey), entry2.getReceiverID() );
+		assertArrayEquals( uploaderKey, entry2.getUploaderKey() );
+		assertArrayEquals( receiverKey, entry2.getReceiverKey() );
+		
+		// a received copy has to be given the uploader's key before its signature can be checked
+		Entry entry2B = Entry.deserialize(entry2.serialize());
+		assertNull( entry2B.getUploaderKey() );
+		assertNull( entry2B.getReceiverKey() );
+		assertFalse( entry2B.testEntryHashSignature() );
+		assertFalse( entry2B.setUploaderKey(receiverKey) );
+		assertTrue( entry2B.setUploaderKey(uploaderKey) );
+		assertTrue( entry2B.testEntryHashSignature() );
+		
+		// the receiver can still recognise and decrypt it
+		assertTrue( entry2B.isThisEntryJustForMe(receiverKeyPair) );
+		entry2B.decrypt(receiverKeyPair);
+		assertEquals( entry2.getDocName(), entry2B.getDocName() );
+	}
+	
+	@Test
+	public void testSerializedFormKept() throws Exception {
+		Entry entry1 = generateEntry1();
+		byte[] serialized = entry1.serialize();
+		assertSame( serialized, entry1.serialize() );
+		
+		Entry entry1B = Entry.deserialize(serialized.clone());
+		assertArrayEquals( serialized, entry1B.serialize() );
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entry1B.serialize(out);
+		assertArrayEquals( serialized, out.toByteArray() );
+		
+		// trailing bytes are not part of the entry
+		byte[] padded = Arrays.copyOf(serialized, serialized.length + 1);
+		assertArrayEquals( serialized, Entry.deserialize(padded).serialize() );
+	}
+	
+	@Test
+	public void testECEntry() throws Exception {
+		AsymmetricCipherKeyPair uploaderKeyPair = Asymmetric.generateNewECKeyPair();
+		Entry entry = new Entry(uploaderKeyPair, Hash.hashString("imitation of some random file"), "http://mywebsite.com/file01.txt",
+				"The Fall of Humanity", "2+2 is sometimes 4", "some random coords near Cambridge", 1455524447);
+		byte[] serialized = entry.serialize();
+		int signatureLength = ByteBuffer.wrap(serialized, 16, 4).getInt();
+		assertTrue( signatureLength < 80 );
+		
+		Entry entryB = Entry.deserialize(serialized);
+		assertTrue( entryB.setUploaderKey(entry.getUploaderKey()) );
+		assertTrue( entryB.testEntryHashSignature() );
+		
+		// entries can be privately shared with EC keys too
+		Entry privateEntry = new Entry(Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey2, AsymmetricTest.myPrivKey2),
+				Asymmetric.keyToByteKey(uploaderKeyPair.getPublic()), Hash.hashString("file"),
+				"", "The Fall of Humanity", "", "", 1455524447);
+		Entry privateEntryB = Entry.deserialize(privateEntry.serialize());
+		privateEntryB.decrypt(uploaderKeyPair);
+		assertEquals( "The Fall of Humanity", privateEntryB.getDocName() );
+	}
+	
 	@Test
 	public void testIsThisEntryJustForMe_keyPair() {
 		Entry entry1, entry2;
@@ -5,15 +5,19 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import com.j256.ormlite.logger.LocalLog;
 import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
 import com.squareup.otto.ThreadEnforcer;
 
 import bitverify.block.Block;
 import bitverify.entries.Entry;
+import bitverify.mining.Miner.BlockFoundEvent;
 import bitverify.persistence.DataStore;
 import bitverify.persistence.DatabaseStore;
 
@@ -328,4 +332,71 @@ public class MinerTest {
 		assertEquals(result2, true);
 	}
 
+	
+	//Test that repeated difficulty checks (answered from the target cache) agree with the first
+	@Test
+	public void testBlockTargetCached() throws IOException, SQLException{
+		System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+		
+		DataStore d = new DatabaseStore("jdbc:h2:mem:bitverifycache");
+		ArrayList<Entry> emptyEntryList = new ArrayList<Entry>();
+		
+		Block b1 = new Block(Block.getGenesisBlock(),100,0x03000004,0,emptyEntryList);
+		Block b2 = new Block(b1,200,0x03000004,0,emptyEntryList);
+		Block b3 = new Block(b2,300,0x03000004,0,emptyEntryList);
+		d.insertBlock(b1);
+		d.insertBlock(b2);
+		d.insertBlock(b3);
+		
+		Bus eventBus = new Bus(ThreadEnforcer.ANY);
+		Miner m = new Miner(eventBus,d,2,200,10);
+		m.stopMining();	//to prevent warning
+		
+		//b4 recalculates the target, which should be 4 * 200/200
+		Block parent = d.getBlock(b3.getBlockID());
+		for (int i=0; i<3; i++){
+			assertEquals(true, Miner.checkBlockDifficulty(d, new Block(parent,400,0x03000004,0,emptyEntryList), parent, eventBus));
+			assertEquals(true, Miner.checkBlockDifficulty(d, new Block(parent,400,0x03000003,0,emptyEntryList), parent, eventBus));
+			assertEquals(false, Miner.checkBlockDifficulty(d, new Block(parent,400,0x03000005,0,emptyEntryList), parent, eventBus));
+		}
+	}
+	
+	//Test that a block is mined when the nonce search is split between several threads
+	@Test
+	public void testMultiThreadedMining() throws IOException, SQLException, InterruptedException{
+		System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+		
+		DataStore d = new DatabaseStore("jdbc:h2:mem:bitverifymining");
+		ArrayList<Entry> emptyEntryList = new ArrayList<Entry>();
+		
+		//A block with the easiest target, so the next block is quick to mine
+		Block b1 = new Block(Block.getGenesisBlock(),System.currentTimeMillis(),0x207fffff,0,emptyEntryList);
+		while (!Miner.blockHashMeetDifficulty(b1)) b1.incrementNonce();
+		d.insertBlock(b1);
+		
+		Bus eventBus = new Bus(ThreadEnforcer.ANY);
+		Miner m = new Miner(eventBus,d,4);
+		
+		CountDownLatch found = new CountDownLatch(1);
+		Block[] mined = new Block[1];
+		eventBus.register(new Object(){
+			@Subscribe
+			public void onBlockFound(BlockFoundEvent e){
+				//More blocks may be found before mining stops, keep the first
+				if (mined[0] == null) mined[0] = e.getBlock();
+				found.countDown();
+			}
+		});
+		
+		Thread miningThread = new Thread(m);
+		miningThread.start();
+		boolean success = found.await(60, TimeUnit.SECONDS);
+		m.stopMining();
+		miningThread.join();
+		
+		assertEquals(true, success);
+		assertArrayEquals(b1.getBlockID(), mined[0].getPrevBlockHash());
+		assertEquals(true, Miner.blockHashMeetDifficulty(mined[0]));
+	}
+
 }
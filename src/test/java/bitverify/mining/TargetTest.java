@@ -0,0 +1,71 @@
+package bitverify.mining;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+public class TargetTest {
+
+	//The unpacked target should be the same number as Miner.unpackTarget gives
+	@Test
+	public void testUnpackMatches(){
+		int input[] = {
+				0x03000001,
+				0x03000004,
+				0x1f3b20fa,
+				0x1d00ffff,
+				0x20ffffff,
+				0x207fffff,
+				0x21000001,
+				0x7fffffff,
+				0x02123456,
+				0x01123456,
+				0x00123456,
+				0xff123456,
+		};
+		for (int i=0; i<input.length; i++){
+			BigInteger expected = new BigInteger(Miner.unpackTarget(input[i]),16);
+			BigInteger actual = new BigInteger(1, new Target(input[i]).toByteArray());
+			assertEquals(expected, actual);
+		}
+	}
+
+	//Comparing hashes against a target should agree with comparing the numbers
+	@Test
+	public void testIsMetByMatches(){
+		Random random = new Random(1);
+		int targets[] = {0x1f3b20fa, 0x1e00ffff, 0x207fffff, 0x03000004};
+		for (int target : targets){
+			BigInteger t = new BigInteger(Miner.unpackTarget(target),16);
+			for (int i=0; i<1000; i++){
+				byte[] hash = new byte[32];
+				random.nextBytes(hash);
+				//Make some of the hashes small enough to be near the target
+				int leadingZeros = random.nextInt(4);
+				for (int j=0; j<leadingZeros; j++) hash[j] = 0;
+				boolean expected = new BigInteger(1, hash).compareTo(t) < 0;
+				assertEquals(expected, new Target(target).isMetBy(hash));
+			}
+		}
+	}
+
+	//A hash equal to the target does not meet it
+	@Test
+	public void testEqualHash(){
+		Target t = new Target(0x1f3b20fa);
+		assertFalse(t.isMetBy(Hex.decode("003b20fa00000000000000000000000000000000000000000000000000000000")));
+		assertTrue(t.isMetBy(Hex.decode("003b20f9ffffffffffffffffffffffffffffffffffffffffffffffffffffffff")));
+	}
+
+	@Test
+	public void testCompare(){
+		assertTrue(new Target(0x03000002).compareTo(new Target(0x03000004)) < 0);
+		assertTrue(new Target(0x06000001).compareTo(new Target(0x03ffffff)) > 0);
+		assertEquals(0, new Target(0x04000100).compareTo(new Target(0x05000001)));
+		assertEquals(new Target(0x20ffffff), new Target(0x21000001));
+	}
+}
@@ -0,0 +1,107 @@
+package bitverify.network;
+
+import bitverify.crypto.Asymmetric;
+import bitverify.crypto.Hash;
+import bitverify.entries.Entry;
+import bitverify.network.proto.MessageProto.GetKeysMessage;
+import bitverify.network.proto.MessageProto.KeysMessage;
+import bitverify.network.proto.MessageProto.Message;
+import bitverify.persistence.DatabaseStore;
+import com.google.protobuf.ByteString;
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PeerHandlerTest {
+    // more uploaders than fit in a single keys message
+    private static final int NUM_UPLOADERS = 1500;
+    private static final int MAX_KEYS_PER_MESSAGE = 1000;
+
+    private ExecutorService executorService;
+    private DatabaseStore dataStore;
+    private Bus bus;
+
+    @Before
+    public void setUp() throws Exception {
+        executorService = Executors.newCachedThreadPool();
+        dataStore = new DatabaseStore("jdbc:h2:mem:peerHandlerTest");
+        bus = new Bus(ThreadEnforcer.ANY);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * A peer that answers GET_KEYS requests itself, sending at most MAX_KEYS_PER_MESSAGE keys per reply
+     * like a real peer does.
+     */
+    private class KeyServingPeer extends PeerHandler {
+        private final Map<ByteBuffer, byte[]> keys;
+        private final List<Integer> requestSizes = new CopyOnWriteArrayList<>();
+
+        KeyServingPeer(Map<ByteBuffer, byte[]> keys) {
+            super(null, executorService, dataStore, bus, 0);
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean send(Message msg) {
+            if (msg.getType() != Message.Type.GET_KEYS)
+                return true;
+            GetKeysMessage request = msg.getGetKeys();
+            requestSizes.add(request.getKeyReferencesCount());
+            KeysMessage.Builder reply = KeysMessage.newBuilder();
+            for (ByteString ref : request.getKeyReferencesList()) {
+                if (reply.getKeysCount() >= MAX_KEYS_PER_MESSAGE)
+                    break;
+                byte[] key = keys.get(ByteBuffer.wrap(ref.toByteArray()));
+                if (key != null)
+                    reply.addKeys(ByteString.copyFrom(key));
+            }
+            executorService.submit(() -> bus.post(new KeysMessageEvent(reply.build(), this)));
+            return true;
+        }
+    }
+
+    @Test
+    public void resolveMoreKeysThanFitInOneMessage() throws Exception {
+        Map<ByteBuffer, byte[]> keys = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < NUM_UPLOADERS; i++) {
+            AsymmetricCipherKeyPair keyPair = Asymmetric.generateNewECKeyPair();
+            byte[] key = Asymmetric.keyToByteKey(keyPair.getPublic());
+            keys.put(ByteBuffer.wrap(Asymmetric.getKeyReference(key)), key);
+            Entry entry = new Entry(keyPair, Hash.hashString("file " + i), "", "file " + i, "", "", i);
+            // entries from the network only carry a reference to their uploader's key
+            entries.add(Entry.deserialize(entry.serialize()));
+        }
+        assertNull(entries.get(0).getUploaderKey());
+
+        KeyServingPeer peer = new KeyServingPeer(keys);
+        assertTrue(peer.resolveUploaderKeys(entries).get(30, TimeUnit.SECONDS));
+
+        int requested = 0;
+        for (int size : peer.requestSizes) {
+            assertTrue(size <= MAX_KEYS_PER_MESSAGE);
+            requested += size;
+        }
+        assertEquals(NUM_UPLOADERS, requested);
+        for (Entry e : entries)
+            assertTrue(e.testEntryHashSignature());
+        assertNotNull(dataStore.getKey(entries.get(NUM_UPLOADERS - 1).getUploaderID()));
+    }
+}
@@ -0,0 +1,138 @@
+package bitverify.persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BlockFileStoreTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("blockfiles");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static byte[] block(int i, int length) {
+        byte[] bytes = new byte[length];
+        for (int j = 0; j < length; j++)
+            bytes[j] = (byte) (i * 31 + j);
+        return bytes;
+    }
+
+    private static void assertBlock(byte[] expected, ByteBuffer actual) {
+        assertTrue(actual.isReadOnly());
+        byte[] bytes = new byte[actual.remaining()];
+        actual.get(bytes);
+        assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    public void appendAndRead() throws IOException {
+        // small files, so blocks go into several
+        BlockFileStore store = new BlockFileStore(directory.resolve("blocks").toFile(), 1000);
+        List<byte[]> blocks = new ArrayList<>();
+        List<BlockFileStore.Location> locations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // including one bigger than a whole file
+            byte[] b = block(i, i == 7 ? 2500 : 100 + i * 10);
+            blocks.add(b);
+            locations.add(store.append(b));
+        }
+        assertEquals(0, locations.get(0).file);
+        assertEquals(0, locations.get(0).offset);
+        assertTrue(locations.get(19).file > 2);
+        for (BlockFileStore.Location l : locations)
+            assertTrue(l.offset + l.length <= 1000 || l.offset == 0);
+
+        for (int i = 0; i < blocks.size(); i++)
+            assertBlock(blocks.get(i), store.read(locations.get(i)));
+
+        // opening the files again carries on appending after the last block
+        BlockFileStore reopened = new BlockFileStore(directory.resolve("blocks").toFile(), 1000);
+        BlockFileStore.Location next = reopened.append(block(20, 10));
+        BlockFileStore.Location last = locations.get(19);
+        assertEquals(last.file, next.file);
+        assertEquals(last.offset + last.length, next.offset);
+        assertBlock(block(20, 10), reopened.read(next));
+        for (int i = 0; i < blocks.size(); i++)
+            assertBlock(blocks.get(i), reopened.read(locations.get(i)));
+    }
+
+    @Test
+    public void locationPastEndOfFile() throws IOException {
+        BlockFileStore store = new BlockFileStore(directory.resolve("blocks").toFile(), 1000);
+        BlockFileStore.Location full = store.append(block(0, 800));
+        BlockFileStore.Location current = store.append(block(1, 800));
+        assertEquals(1, current.file);
+
+        // e.g. the database recorded blocks the files lost in a crash
+        for (BlockFileStore.Location l : new BlockFileStore.Location[]{
+                new BlockFileStore.Location(full.file, full.offset + 1, full.length),
+                new BlockFileStore.Location(current.file, current.offset, current.length + 1),
+                new BlockFileStore.Location(current.file + 1, 0, 10)}) {
+            try {
+                store.read(l);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertBlock(block(0, 800), store.read(full));
+        assertBlock(block(1, 800), store.read(current));
+    }
+
+    @Test
+    public void interruptedRead() throws IOException {
+        BlockFileStore store = new BlockFileStore(directory.resolve("blocks").toFile(), 1000);
+        BlockFileStore.Location first = store.append(block(0, 100));
+
+        Thread.currentThread().interrupt();
+        try {
+            store.read(first);
+            fail();
+        } catch (ClosedByInterruptException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        // blocks can still be appended to the last file, and read from it
+        BlockFileStore.Location second = store.append(block(1, 100));
+        assertEquals(first.file, second.file);
+        assertBlock(block(0, 100), store.read(first));
+        assertBlock(block(1, 100), store.read(second));
+
+        // and once it is full, it is mapped with all its blocks
+        BlockFileStore.Location third = store.append(block(2, 900));
+        assertEquals(first.file + 1, third.file);
+        assertBlock(block(1, 100), store.read(second));
+        assertBlock(block(2, 900), store.read(third));
+    }
+
+    @Test(expected = IOException.class)
+    public void unusableDirectory() throws IOException {
+        File file = directory.resolve("file").toFile();
+        assertTrue(file.createNewFile());
+        new BlockFileStore(file, 1000);
+    }
+}
@@ -0,0 +1,88 @@
+package bitverify.persistence;
+
+import bitverify.block.Block;
+import bitverify.crypto.Hash;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockIndexTest {
+
+    // an ID with leading zero bytes, like a mined block hash
+    private static byte[] id(int i) {
+        byte[] id = Hash.hashBytes(ByteBuffer.allocate(4).putInt(i).array());
+        id[0] = id[1] = id[2] = id[3] = 0;
+        return id;
+    }
+
+    @Test
+    public void addAndFind() {
+        BlockIndex index = new BlockIndex();
+        byte[] genesisParent = new byte[Hash.HASH_LENGTH];
+        // enough blocks for the index to grow a few times
+        int n = 5000;
+        for (int i = 0; i < n; i++)
+            assertEquals(i, index.add(id(i), i == 0 ? genesisParent : id(i - 1), i, 1000L * i, 0x207fffff, i % 2 == 0));
+
+        assertEquals(n, index.size());
+        for (int i = 0; i < n; i++) {
+            int slot = index.find(id(i));
+            assertEquals(i, slot);
+            assertArrayEquals(id(i), index.getBlockID(slot));
+            assertEquals(i == 0 ? BlockIndex.NONE : i - 1, index.getParent(slot));
+            assertEquals(i, index.getHeight(slot));
+            assertEquals(1000L * i, index.getTimeStamp(slot));
+            assertEquals(0x207fffff, index.getTarget(slot));
+            assertEquals(i % 2 == 0, index.isActive(id(i)));
+        }
+        assertFalse(index.contains(id(n)));
+        assertFalse(index.contains(new byte[3]));
+        assertFalse(index.isActive(id(n)));
+
+        // adding again keeps the original slot
+        assertEquals(7, index.add(id(7), id(6), 7, 0, 0, false));
+        assertEquals(n, index.size());
+
+        index.setActive(index.find(id(1)), true);
+        assertTrue(index.isActive(id(1)));
+    }
+
+    @Test
+    public void loadedFromDatabase() throws SQLException {
+        String path = "jdbc:h2:mem:blockindextest;DB_CLOSE_DELAY=-1";
+        DataStore ds = new DatabaseStore(path);
+        List<Block> blocks = new ArrayList<>();
+        Block prev = Block.getGenesisBlock();
+        for (int i = 0; i < 3; i++) {
+            Block b = new Block(prev, Block.GENESIS_TIMESTAMP + 1000 * (i + 1), 0x207fffff, 0, new ArrayList<>());
+            assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b));
+            blocks.add(b);
+            prev = b;
+        }
+        // a fork off the first block, which stays inactive
+        Block fork = new Block(blocks.get(0), Block.GENESIS_TIMESTAMP + 5000, 0x207fffff, 0, new ArrayList<>());
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(fork));
+        assertEquals(InsertBlockResult.FAIL_DUPLICATE, ds.insertBlock(fork));
+
+        DataStore reopened = new DatabaseStore(path);
+        for (Block b : blocks) {
+            assertTrue(reopened.blockExists(b.getBlockID()));
+            assertTrue(reopened.isBlockOnActiveChain(b.getBlockID()));
+        }
+        assertTrue(reopened.blockExists(fork.getBlockID()));
+        assertFalse(reopened.isBlockOnActiveChain(fork.getBlockID()));
+        assertTrue(reopened.isBlockOnActiveChain(Block.getGenesisBlock().getBlockID()));
+        assertEquals(fork, reopened.getBlock(fork.getBlockID()));
+
+        Block orphan = new Block(new Block(fork, Block.GENESIS_TIMESTAMP + 6000, 0x207fffff, 0, new ArrayList<>()),
+                Block.GENESIS_TIMESTAMP + 7000, 0x207fffff, 0, new ArrayList<>());
+        assertFalse(reopened.blockExists(orphan.getBlockID()));
+        assertNull(reopened.getBlock(orphan.getBlockID()));
+        assertEquals(InsertBlockResult.FAIL_ORPHAN, reopened.insertBlock(orphan));
+    }
+}
@@ -1,8 +1,14 @@
 package bitverify.persistence;
 
 import bitverify.block.Block;
+import bitverify.block.MerkleProof;
+import bitverify.crypto.Asymmetric;
+import bitverify.crypto.AsymmetricTest;
+import bitverify.crypto.Hash;
 import bitverify.entries.Entry;
 import bitverify.entries.EntryTest;
+import bitverify.network.proto.MessageProto.BlockMessage;
+import com.google.protobuf.CodedInputStream;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.field.DataType;
@@ -10,15 +16,29 @@ import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
 import com.j256.ormlite.logger.LocalLog;
 import com.j256.ormlite.support.ConnectionSource;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import com.j256.ormlite.table.TableUtils;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Created by Rob on 13/02/2016.
@@ -298,4 +318,366 @@ public class DatabaseStoreTest {
 
     }
 
+    @Test
+    public void TestInclusionProof() throws SQLException {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest4");
+
+        Entry e1 = EntryTest.generateEntry1();
+        Entry e2 = EntryTest.generateEntry2();
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        entries.add(e1);
+        entries.add(e2);
+        Block block = new Block(Block.getGenesisBlock(), 100, 0x03000004, 0, entries);
+        ds.insertBlock(block);
+
+        // the stored block keeps its version, and proofs check against its header
+        Block stored = ds.getBlock(block.getBlockID());
+        assertEquals(Block.VERSION_MERKLE_ENTRIES, stored.getVersion());
+        MerkleProof proof = ds.getInclusionProof(e2);
+        assertTrue(proof.verify(e2, stored.getEntriesHash()));
+
+        // unconfirmed entries have no proof
+        Entry e3 = EntryTest.generateEntry1();
+        ds.insertEntry(e3);
+        assertNull(ds.getInclusionProof(e3));
+    }
+
+    @Test
+    public void TestBlockVersionColumnAdded() throws SQLException {
+        // a database from before blocks had versions
+        String path = "jdbc:h2:mem:bitverifytest5;DB_CLOSE_DELAY=-1";
+        // opened with the settings the store uses, which H2 won't change while the database is open
+        ConnectionSource cs = new JdbcConnectionSource(DatabaseStore.withMVCC(path));
+        TableUtils.createTable(cs, Block.class);
+        Dao<Block, Void> blockDao = DaoManager.createDao(cs, Block.class);
+        blockDao.executeRaw("ALTER TABLE `block` DROP COLUMN `version`");
+        blockDao.executeRaw("INSERT INTO `block` (`prevBlockHash`, `nonce`, `height`) VALUES (X'00', 5, 7)");
+
+        DataStore ds = new DatabaseStore(path);
+        Block genesis = ds.getBlock(Block.getGenesisBlock().getBlockID());
+        assertEquals(Block.VERSION_FLAT_ENTRIES, genesis.getVersion());
+        assertEquals(Block.getGenesisBlock(), genesis);
+
+        // the existing block is read as version 1
+        List<String[]> versions = blockDao.queryRaw("SELECT `version` FROM `block` WHERE `height` = 7").getResults();
+        assertEquals("1", versions.get(0)[0]);
+
+        // opening the database again leaves the column alone
+        new DatabaseStore(path);
+    }
+
+    @Test
+    public void TestKeyDictionary() throws SQLException {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest6");
+
+        // inserting an entry stores the keys it refers to
+        Entry e2 = EntryTest.generateEntry2();
+        assertTrue(ds.insertEntry(e2));
+        assertArrayEquals(e2.getUploaderKey(), ds.getKey(e2.getUploaderID()));
+        assertArrayEquals(e2.getReceiverKey(), ds.getKey(e2.getReceiverID()));
+        assertFalse(ds.insertKey(e2.getUploaderKey()));
+
+        // stored entries only keep the references, which can be resolved from the dictionary
+        Entry stored = ds.getEntry(e2.getEntryID());
+        assertArrayEquals(e2.getUploaderID(), stored.getUploaderID());
+        assertNull(stored.getUploaderKey());
+        assertTrue(stored.setUploaderKey(ds.getKey(stored.getUploaderID())));
+        assertTrue(stored.testEntryHashSignature());
+
+        assertNull(ds.getKey(new byte[e2.getUploaderID().length]));
+
+        // several keys can be looked up at once, leaving out the ones that aren't known
+        List<byte[]> keys = ds.getKeys(Arrays.asList(e2.getUploaderID(), new byte[e2.getUploaderID().length], e2.getReceiverID()));
+        assertEquals(2, keys.size());
+        assertTrue(keys.stream().anyMatch(k -> Arrays.equals(k, e2.getUploaderKey())));
+        assertTrue(keys.stream().anyMatch(k -> Arrays.equals(k, e2.getReceiverKey())));
+        assertTrue(ds.getKeys(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void TestGetEntriesByHashes() throws Exception {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest7");
+        AsymmetricCipherKeyPair keyPair = Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey2, AsymmetricTest.myPrivKey2);
+        Entry e1 = new Entry(keyPair, Hash.hashString("file 1"), "", "file 1", "", "", 1455524447);
+        Entry e2 = new Entry(keyPair, Hash.hashString("file 2"), "", "file 2", "", "", 1455524447);
+        Entry e3 = new Entry(keyPair, Hash.hashString("file 2"), "", "file 2 again", "", "", 1455524447);
+        ds.insertEntry(e1);
+        ds.insertEntry(e2);
+        ds.insertEntry(e3);
+
+        List<byte[]> hashes = new ArrayList<>();
+        assertTrue(ds.getEntries(hashes).isEmpty());
+        hashes.add(e1.getDocHash());
+        hashes.add(new byte[32]);
+        List<Entry> found = ds.getEntries(hashes);
+        assertEquals(1, found.size());
+        assertEquals(e1.getEntryID(), found.get(0).getEntryID());
+
+        hashes.add(e2.getDocHash());
+        assertEquals(3, ds.getEntries(hashes).size());
+    }
+
+    private static Block blockWith(Block prev, long timeStamp, Entry... entries) {
+        List<Entry> list = new ArrayList<>();
+        Collections.addAll(list, entries);
+        return new Block(prev, timeStamp, 0x207fffff, 0, list);
+    }
+
+    private static void assertConfirmed(DataStore ds, boolean confirmed, Entry... entries) throws SQLException {
+        for (Entry e : entries)
+            assertEquals(confirmed, ds.getEntry(e.getEntryID()).getConfirmed());
+    }
+
+    @Test
+    public void TestReorganisation() throws SQLException {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest8");
+        Entry shared = EntryTest.generateEntry1();
+        Entry onA = EntryTest.generateEntry1();
+        Entry onB = EntryTest.generateEntry1();
+
+        Block genesis = Block.getGenesisBlock();
+        Block a1 = blockWith(genesis, 1000, shared);
+        Block a2 = blockWith(a1, 2000, onA);
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(a1));
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(a2));
+        assertConfirmed(ds, true, shared, onA);
+
+        // a longer chain from genesis takes over
+        Block b1 = blockWith(genesis, 1500);
+        Block b2 = blockWith(b1, 2500, shared, onB);
+        Block b3 = blockWith(b2, 3500);
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b1));
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b2));
+        assertTrue(ds.isBlockOnActiveChain(a2.getBlockID()));
+        assertConfirmed(ds, false, onB);
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b3));
+
+        assertEquals(b3, ds.getMostRecentBlock());
+        assertFalse(ds.isBlockOnActiveChain(a1.getBlockID()));
+        assertFalse(ds.isBlockOnActiveChain(a2.getBlockID()));
+        for (Block b : new Block[]{b1, b2, b3})
+            assertTrue(ds.isBlockOnActiveChain(b.getBlockID()));
+        assertConfirmed(ds, true, shared, onB);
+        assertConfirmed(ds, false, onA);
+        assertEquals(4, ds.getActiveBlocksCount());
+
+        // and back again
+        Block a3 = blockWith(a2, 3000);
+        Block a4 = blockWith(a3, 4000);
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(a3));
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(a4));
+        assertEquals(a4, ds.getMostRecentBlock());
+        assertFalse(ds.isBlockOnActiveChain(b2.getBlockID()));
+        assertTrue(ds.isBlockOnActiveChain(a1.getBlockID()));
+        assertConfirmed(ds, true, shared, onA);
+        assertConfirmed(ds, false, onB);
+        assertEquals(5, ds.getActiveBlocksCount());
+    }
+
+    @Test
+    public void TestBlockConfirmsExistingEntries() throws SQLException {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest9");
+        Entry template = EntryTest.generateEntry1();
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // copies of one entry with different IDs, which is all the store needs
+            Entry e = EntryTest.generateEntry1();
+            entries.add(e);
+            // half the entries are already in the store, unconfirmed
+            if (i % 2 == 0)
+                assertTrue(ds.insertEntry(e));
+        }
+        assertEquals(20, ds.getUnconfirmedEntries().size());
+
+        Block fork = new Block(Block.getGenesisBlock(), 1000, 0x207fffff, 0, new ArrayList<>(entries.subList(0, 10)));
+        Block active = new Block(Block.getGenesisBlock(), 500, 0x207fffff, 0, entries);
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(active));
+        // a block on a side chain doesn't unconfirm the entries it shares with the active chain
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(fork));
+
+        assertEquals(40, ds.getEntriesCount());
+        assertEquals(0, ds.getUnconfirmedEntries().size());
+        assertEquals(40, ds.getBlock(active.getBlockID()).getEntriesList().size());
+        assertEquals(10, ds.getBlock(fork.getBlockID()).getEntriesList().size());
+        assertTrue(ds.getBlock(active.getBlockID()).isVerified());
+        assertNotNull(ds.getKey(template.getUploaderID()));
+    }
+
+    @Test
+    public void TestBlocksLoadedWithTheirEntries() throws SQLException {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest10");
+        List<Block> blocks = new ArrayList<>();
+        Block prev = Block.getGenesisBlock();
+        for (int i = 0; i < 5; i++) {
+            // a different number of entries in each block, including none
+            Entry[] entries = new Entry[i];
+            for (int j = 0; j < i; j++)
+                entries[j] = EntryTest.generateEntry1();
+            prev = blockWith(prev, 1000 * (i + 1), entries);
+            assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(prev));
+            blocks.add(prev);
+        }
+
+        List<Block> all = new ArrayList<>();
+        ds.getAllBlocks().forEach(all::add);
+        assertEquals(6, all.size());
+        assertEquals(Block.getGenesisBlock(), all.get(5));
+        for (Block b : all.subList(0, 5)) {
+            assertTrue(b.areEntriesSet());
+            assertTrue(b.isVerified());
+        }
+
+        List<Block> recent = ds.getNMostRecentBlocks(3);
+        assertEquals(3, recent.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(blocks.get(4 - i), recent.get(i));
+            assertEquals(4 - i, recent.get(i).getEntriesList().size());
+            assertTrue(recent.get(i).isVerified());
+        }
+        List<Block> after = ds.getActiveBlocksAfter(blocks.get(1).getBlockID(), -1);
+        assertEquals(3, after.size());
+        for (Block b : after)
+            assertTrue(b.isVerified());
+
+        // the header variants return the same blocks, without loading their entries
+        assertEquals(recent, ds.getNMostRecentBlockHeaders(3));
+        assertEquals(recent, ds.getNMostRecentBlockHeaders(3, blocks.get(4)));
+        assertEquals(after, ds.getActiveBlockHeadersAfter(blocks.get(1).getBlockID(), -1));
+        for (Block b : ds.getNMostRecentBlockHeaders(3))
+            assertFalse(b.areEntriesSet());
+        Block header = ds.getBlockHeader(blocks.get(3).getBlockID());
+        assertEquals(blocks.get(3), header);
+        assertFalse(header.areEntriesSet());
+        assertNull(ds.getBlockHeader(new byte[32]));
+    }
+
+    @Test
+    public void TestReadsDuringWrites() throws Exception {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bitverifytest11");
+        int blocks = 40;
+        Thread writer = new Thread(() -> {
+            try {
+                Block prev = Block.getGenesisBlock();
+                for (int i = 0; i < blocks; i++) {
+                    prev = blockWith(prev, 1000 * (i + 1), EntryTest.generateEntry1(), EntryTest.generateEntry1());
+                    assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(prev));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    long lastHeight = 0;
+                    while (lastHeight < blocks) {
+                        // the latest block is always one that has been committed, with all its entries
+                        Block latest = ds.getMostRecentBlock();
+                        assertTrue(latest.getHeight() >= lastHeight);
+                        lastHeight = latest.getHeight();
+                        Block stored = ds.getBlock(latest.getBlockID());
+                        assertNotNull(stored);
+                        assertTrue(ds.isBlockOnActiveChain(latest.getBlockID()));
+                        if (lastHeight > 0) {
+                            assertEquals(2, stored.getEntriesList().size());
+                            assertConfirmed(ds, true, stored.getEntriesList().toArray(new Entry[2]));
+                        }
+                        assertTrue(ds.getNMostRecentBlockHeaders(1).get(0).getHeight() >= lastHeight);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+
+        for (Thread reader : readers)
+            reader.start();
+        writer.start();
+        writer.join();
+        for (Thread reader : readers)
+            reader.join(60000);
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(blocks + 1, ds.getActiveBlocksCount());
+        assertEquals(blocks * 2, ds.getEntriesCount());
+    }
+
+    @Test
+    public void TestSearchEntries() throws Exception {
+        String path = "jdbc:h2:mem:bitverifytest12;DB_CLOSE_DELAY=-1";
+        DataStore ds = new DatabaseStore(path);
+        AsymmetricCipherKeyPair keyPair = Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey2, AsymmetricTest.myPrivKey2);
+        Entry bridge = new Entry(keyPair, Hash.hashString("1"), "", "London Bridge", "", "London", 1455524447);
+        Entry tower = new Entry(keyPair, Hash.hashString("2"), "", "Tower", "near the bridge", "", 1455524447);
+        Entry paris = new Entry(keyPair, Hash.hashString("3"), "http://example.com/paris", "Paris", "", "", 1455524447);
+        assertTrue(ds.insertEntry(bridge));
+        assertTrue(ds.insertEntry(tower));
+        // entries that arrive in blocks are searchable too
+        assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(blockWith(Block.getGenesisBlock(), 1000, paris, bridge)));
+
+        assertEquals(Collections.singletonList(paris.getEntryID()), entryIDs(ds.searchEntries("exam").toList()));
+        List<UUID> londonBridge = entryIDs(ds.searchEntries("london bri").toList());
+        assertEquals(2, londonBridge.size());
+        assertEquals(bridge.getEntryID(), londonBridge.get(0));
+        assertEquals(tower.getEntryID(), londonBridge.get(1));
+        assertEquals(Collections.singletonList(tower.getEntryID()), entryIDs(ds.searchEntries("london bri", 1, 10)));
+        assertTrue(ds.searchEntries("berlin").toList().isEmpty());
+        assertEquals(3, ds.searchEntries("").toList().size());
+
+        ds.updateEntry(ds.getEntry(tower.getEntryID()));
+        assertEquals(Collections.singletonList(tower.getEntryID()), entryIDs(ds.searchEntries("tow", 0, 10)));
+
+        // the index is rebuilt when the database is opened again
+        DataStore reopened = new DatabaseStore(path);
+        assertEquals(londonBridge, entryIDs(reopened.searchEntries("london bri", 0, 10)));
+    }
+
+    private static List<UUID> entryIDs(List<Entry> entries) {
+        List<UUID> ids = new ArrayList<>();
+        for (Entry e : entries)
+            ids.add(e.getEntryID());
+        return ids;
+    }
+
+    @Test
+    public void TestBlocksStoredInFiles() throws Exception {
+        Path directory = Files.createTempDirectory("blockfiles");
+        try {
+            String path = "jdbc:h2:mem:bitverifytest13;DB_CLOSE_DELAY=-1";
+            DataStore ds = new DatabaseStore(path, directory.toFile());
+            Block b1 = blockWith(Block.getGenesisBlock(), 1000, EntryTest.generateEntry1(), EntryTest.generateEntry1());
+            Block b2 = blockWith(b1, 2000);
+            assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b1));
+            assertEquals(InsertBlockResult.SUCCESS, ds.insertBlock(b2));
+
+            assertStoredAsSent(b1, ds.getSerializedBlock(b1.getBlockID()));
+            assertStoredAsSent(b2, ds.getSerializedBlock(b2.getBlockID()));
+            // the genesis block is only in the database
+            assertNull(ds.getSerializedBlock(Block.getGenesisBlock().getBlockID()));
+            assertNull(ds.getSerializedBlock(new byte[32]));
+
+            // where the blocks are is remembered when the database is opened again
+            DataStore reopened = new DatabaseStore(path, directory.toFile());
+            assertStoredAsSent(b1, reopened.getSerializedBlock(b1.getBlockID()));
+            // and a store without block files still works
+            assertNull(new DatabaseStore(path).getSerializedBlock(b1.getBlockID()));
+            assertEquals(b1, reopened.getBlock(b1.getBlockID()));
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void assertStoredAsSent(Block expected, ByteBuffer stored) throws Exception {
+        assertNotNull(stored);
+        BlockMessage bm = BlockMessage.parseFrom(CodedInputStream.newInstance(stored));
+        assertArrayEquals(expected.serializeHeader(), bm.getBlockBytes().toByteArray());
+        assertEquals(expected.getEntriesList().size(), bm.getEntriesCount());
+        for (int i = 0; i < bm.getEntriesCount(); i++)
+            assertArrayEquals(expected.getEntriesList().get(i).serialize(), bm.getEntries(i).toByteArray());
+    }
+
 }
@@ -0,0 +1,117 @@
+package bitverify.persistence;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class EntrySearchIndexTest {
+
+    private static UUID id(int i) {
+        return new UUID(0, i);
+    }
+
+    @Test
+    public void prefixesOfWordsMatch() {
+        EntrySearchIndex index = new EntrySearchIndex();
+        index.add(id(0), "London Bridge.jpg", "a photo", null, "");
+        index.add(id(1), "Paris", "the-bridge at night", "", "magnet:?xt=urn:btih:ABC123");
+
+        assertEquals(Arrays.asList(id(1), id(0)), index.search("bri", 0, -1));
+        assertEquals(Collections.singletonList(id(0)), index.search("LOND", 0, -1));
+        assertEquals(Collections.singletonList(id(0)), index.search("jpg", 0, -1));
+        assertEquals(Collections.singletonList(id(1)), index.search("abc", 0, -1));
+        // only the starts of words
+        assertTrue(index.search("ondon", 0, -1).isEmpty());
+        assertTrue(index.search("bridges", 0, -1).isEmpty());
+        // no words matches everything, newest first
+        assertEquals(Arrays.asList(id(1), id(0)), index.search(" .. ", 0, -1));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void moreMatchingWordsRankFirst() {
+        EntrySearchIndex index = new EntrySearchIndex();
+        index.add(id(0), "london bridge", null, null, null);
+        index.add(id(1), "london", null, null, null);
+        index.add(id(2), "bridge", null, null, null);
+        index.add(id(3), "tower", null, null, null);
+
+        assertEquals(Arrays.asList(id(0), id(2), id(1)), index.search("london bridge", 0, -1));
+        assertEquals(Arrays.asList(id(2), id(1)), index.search("london bridge", 1, 2));
+        assertEquals(Collections.singletonList(id(0)), index.search("london bridge", 0, 1));
+        assertTrue(index.search("london bridge", 3, 5).isEmpty());
+    }
+
+    @Test
+    public void updateReindexes() {
+        EntrySearchIndex index = new EntrySearchIndex();
+        index.add(id(0), "encrypted", null, null, null);
+        index.add(id(1), "other", null, null, null);
+        index.update(id(0), new String[]{"encrypted", null, null, null}, new String[]{"holiday", "encrypted no more", null, null});
+
+        assertEquals(Collections.singletonList(id(0)), index.search("holiday", 0, -1));
+        assertEquals(Collections.singletonList(id(0)), index.search("encrypted", 0, -1));
+        index.update(id(0), new String[]{"holiday", "encrypted no more", null, null}, new String[]{"holiday", null, null, null});
+        assertTrue(index.search("encrypted", 0, -1).isEmpty());
+        // adding again changes nothing
+        index.add(id(0), "other", null, null, null);
+        assertEquals(Collections.singletonList(id(1)), index.search("other", 0, -1));
+    }
+
+    @Test
+    public void matchesExhaustiveSearch() {
+        String[] vocabulary = {"alpha", "alps", "beta", "bet", "gamma", "delta", "del", "epsilon", "zeta", "eta"};
+        Random random = new Random(1);
+        EntrySearchIndex index = new EntrySearchIndex();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int w = random.nextInt(4); w >= 0; w--)
+                name.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+            names.add(name.toString());
+            index.add(id(i), name.toString());
+        }
+
+        String[] queries = {"al", "alpha beta", "bet del eta", "e", "zeta gamma alps delta", "omega", "beta omega"};
+        for (String query : queries) {
+            List<UUID> expected = exhaustiveSearch(names, query);
+            assertEquals(query, expected, index.search(query, 0, -1));
+            for (int offset : new int[]{0, 7, 100}) {
+                for (int limit : new int[]{1, 10, 250}) {
+                    List<UUID> page = expected.subList(Math.min(offset, expected.size()), Math.min(offset + limit, expected.size()));
+                    assertEquals(query, page, index.search(query, offset, limit));
+                }
+            }
+        }
+    }
+
+    // score every entry: the number of query words one of its words starts with. Best first, then newest first.
+    private static List<UUID> exhaustiveSearch(List<String> names, String query) {
+        Set<String> queryWords = EntrySearchIndex.words(query);
+        List<UUID> results = new ArrayList<>();
+        for (int score = queryWords.size(); score > 0; score--) {
+            for (int i = names.size() - 1; i >= 0; i--) {
+                int matched = 0;
+                for (String q : queryWords) {
+                    for (String word : EntrySearchIndex.words(names.get(i))) {
+                        if (word.startsWith(q)) {
+                            matched++;
+                            break;
+                        }
+                    }
+                }
+                if (matched == score)
+                    results.add(id(i));
+            }
+        }
+        return results;
+    }
+}
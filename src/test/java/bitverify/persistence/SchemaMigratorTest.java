@@ -0,0 +1,127 @@
+package bitverify.persistence;
+
+import bitverify.block.Block;
+import bitverify.entries.Entry;
+import bitverify.entries.EntryTest;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void appliesEachMigrationOnce() throws SQLException {
+        ConnectionSource cs = new JdbcConnectionSource("jdbc:h2:mem:schemamigratortest");
+        TableUtils.createTable(cs, Property.class);
+        Dao<Property, String> propertyDao = DaoManager.createDao(cs, Property.class);
+
+        List<Integer> applied = new ArrayList<>();
+        SchemaMigrator migrator = new SchemaMigrator(propertyDao)
+                .add(1, "first", () -> applied.add(1))
+                .add(2, "second", () -> applied.add(2))
+                .add(5, "third", () -> applied.add(5));
+        assertEquals(0, migrator.getVersion());
+        assertEquals(3, migrator.migrate());
+        assertEquals(Arrays.asList(1, 2, 5), applied);
+        assertEquals(5, migrator.getVersion());
+        assertEquals(0, migrator.migrate());
+
+        // a later version of the program only applies the new migration
+        migrator.add(6, "fourth", () -> applied.add(6));
+        assertEquals(1, migrator.migrate());
+        assertEquals(Arrays.asList(1, 2, 5, 6), applied);
+
+        // a failed migration isn't recorded, so it is tried again next time
+        SchemaMigrator failing = new SchemaMigrator(propertyDao)
+                .add(6, "fourth", () -> { })
+                .add(7, "fails", () -> { throw new SQLException("failed"); });
+        try {
+            failing.migrate();
+            fail();
+        } catch (SQLException expected) {
+        }
+        assertEquals(6, failing.getVersion());
+
+        // an older version of the program can't use the database
+        try {
+            new SchemaMigrator(propertyDao).add(1, "first", () -> { }).migrate();
+            fail();
+        } catch (SQLException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void migrationsMustBeInOrder() {
+        new SchemaMigrator(null).add(2, "second", () -> { }).add(2, "again", () -> { });
+    }
+
+    @Test
+    public void existingDatabaseMigrated() throws SQLException {
+        // a database from before the schema had a version, with one of the indexes already
+        String path = "jdbc:h2:mem:schemamigratortest2;DB_CLOSE_DELAY=-1";
+        ConnectionSource cs = new JdbcConnectionSource(DatabaseStore.withMVCC(path));
+        TableUtils.createTable(cs, Entry.class);
+        TableUtils.createTable(cs, Property.class);
+        Dao<Property, String> propertyDao = DaoManager.createDao(cs, Property.class);
+        propertyDao.executeRaw("CREATE INDEX `entry_docHash_idx` ON `entry` ( `docHash` )");
+
+        new DatabaseStore(path);
+        assertEquals("4", propertyDao.queryForId(SchemaMigrator.VERSION_PROPERTY).getValue());
+        new DatabaseStore(path);
+        assertEquals("4", propertyDao.queryForId(SchemaMigrator.VERSION_PROPERTY).getValue());
+    }
+
+    @Test
+    public void queriesUseIndexes() throws SQLException {
+        String path = "jdbc:h2:mem:schemamigratortest3;DB_CLOSE_DELAY=-1";
+        DataStore ds = new DatabaseStore(path);
+        // enough rows that a scan costs more than an index lookup
+        List<Block> blocks = new ArrayList<>();
+        Block prev = Block.getGenesisBlock();
+        for (int i = 0; i < 50; i++) {
+            List<Entry> entries = new ArrayList<>();
+            entries.add(EntryTest.generateEntry1());
+            prev = new Block(prev, 1000 * (i + 1), 0x207fffff, 0, entries);
+            ds.insertBlock(prev);
+            blocks.add(prev);
+        }
+        for (int i = 0; i < 50; i++)
+            ds.insertEntry(EntryTest.generateEntry1());
+
+        ConnectionSource cs = new JdbcConnectionSource(DatabaseStore.withMVCC(path));
+        Dao<Property, String> dao = DaoManager.createDao(cs, Property.class);
+        String blockID = "X'" + Hex.toHexString(blocks.get(10).getBlockID()) + "'";
+        String entryID = "'" + blocks.get(10).getEntriesList().get(0).getEntryID() + "'";
+
+        assertUsesIndex(dao, "entry_docHash_idx", "SELECT * FROM `entry` WHERE `docHash` IN (X'00', X'01')");
+        assertUsesIndex(dao, "entry_confirmed_idx", "SELECT * FROM `entry` WHERE `confirmed` = FALSE");
+        assertUsesIndex(dao, "block_active_height_idx", "SELECT COUNT(*) FROM `block` WHERE `active` = TRUE");
+        assertUsesIndex(dao, "block_active_height_idx",
+                "SELECT * FROM `block` WHERE `active` = TRUE ORDER BY `height` DESC, `timeStamp`");
+        assertUsesIndex(dao, "block_height_timeStamp_idx",
+                "SELECT * FROM `block` WHERE `height` BETWEEN 20 AND 30 ORDER BY `height` DESC, `timeStamp`");
+        assertUsesIndex(dao, "_idx",
+                "SELECT * FROM `block` WHERE `height` BETWEEN 20 AND 30 AND `active` = TRUE ORDER BY `height`, `timeStamp` DESC");
+        assertUsesIndex(dao, "block_blockID_idx", "SELECT * FROM `block` WHERE `blockID` = " + blockID);
+        assertUsesIndex(dao, "", "SELECT `entryID` FROM `blockentry` WHERE `blockID` = " + blockID);
+        assertUsesIndex(dao, "", "SELECT * FROM `entry` WHERE `entryID` IN (SELECT `entryID` FROM `blockentry` WHERE `blockID` IN (" + blockID + "))");
+        assertUsesIndex(dao, "blockentry_entryID_idx", "SELECT * FROM `blockentry` WHERE `entryID` = " + entryID);
+    }
+
+    private static void assertUsesIndex(Dao<?, ?> dao, String index, String query) throws SQLException {
+        String plan = dao.queryRaw("EXPLAIN " + query).getFirstResult()[0];
+        assertFalse(plan, plan.contains("tableScan"));
+        assertTrue(plan, plan.toLowerCase().contains(index.toLowerCase()));
+    }
+}
@@ -0,0 +1,102 @@
+package bitverify.verification;
+
+import bitverify.block.Block;
+import bitverify.crypto.Asymmetric;
+import bitverify.crypto.AsymmetricTest;
+import bitverify.crypto.Hash;
+import bitverify.entries.Entry;
+import bitverify.persistence.DataStore;
+import bitverify.persistence.DatabaseStore;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkVerifierTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("bulkverifier");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Path writeFile(String name, String contents) throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Entry entryFor(String contents) throws Exception {
+        AsymmetricCipherKeyPair keyPair = Asymmetric.getKeyPairFromStringKeys(AsymmetricTest.myPubKey2, AsymmetricTest.myPrivKey2);
+        return new Entry(keyPair, Hash.hashString(contents), "", contents, "", "", 1455524447);
+    }
+
+    @Test
+    public void verifyDirectory() throws Exception {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bulkverifiertest");
+        // "confirmed" is in a block on the active chain, "unconfirmed" only in the store
+        List<Entry> blockEntries = new ArrayList<>();
+        blockEntries.add(entryFor("confirmed"));
+        ds.insertBlock(new Block(Block.getGenesisBlock(), 100, 0x03000004, 0, blockEntries));
+        ds.insertEntry(entryFor("unconfirmed"));
+
+        Path confirmed = writeFile("a.txt", "confirmed");
+        Path copy = writeFile("sub/copy of a.txt", "confirmed");
+        Path unconfirmed = writeFile("sub/deeper/b.txt", "unconfirmed");
+        List<Path> notFound = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            notFound.add(writeFile("sub/other" + i, "not an entry " + i));
+
+        // batches smaller than the number of files, so several queries are made
+        Map<Path, BulkVerifier.FileResult> results = new HashMap<>();
+        BulkVerifier.Summary summary = new BulkVerifier(ds, 2, 3).verify(directory, result ->
+                assertNull(results.put(result.getFile(), result)));
+
+        assertEquals(10, results.size());
+        assertEquals(10, summary.getFiles());
+        assertEquals(3, summary.getMatched());
+        assertEquals(2, summary.getConfirmed());
+        assertEquals(7, summary.getUnmatched());
+        assertEquals(0, summary.getErrors());
+
+        assertTrue(results.get(confirmed).isConfirmed());
+        assertArrayEquals(Hash.hashString("confirmed"), results.get(confirmed).getHash());
+        assertTrue(results.get(copy).isConfirmed());
+        assertTrue(results.get(unconfirmed).isMatched());
+        assertFalse(results.get(unconfirmed).isConfirmed());
+        assertEquals("unconfirmed", results.get(unconfirmed).getEntries().get(0).getDocName());
+        for (Path p : notFound)
+            assertFalse(results.get(p).isMatched());
+    }
+
+    @Test
+    public void missingDirectoryReportedAsError() throws Exception {
+        DataStore ds = new DatabaseStore("jdbc:h2:mem:bulkverifiertest2");
+        List<BulkVerifier.FileResult> results = new ArrayList<>();
+        BulkVerifier.Summary summary = new BulkVerifier(ds).verify(directory.resolve("missing"), results::add);
+        assertEquals(1, summary.getErrors());
+        assertNotNull(results.get(0).getError());
+        assertFalse(results.get(0).isMatched());
+    }
+}